@@ -8,6 +8,7 @@ import kawigi.editor.*;
 import kawigi.ahmed_aly.CPPProcessor;
 import kawigi.cmd.*;
 import kawigi.problem.*;
+import kawigi.language.EditorLanguage;
 import javax.swing.*;
 
 import com.topcoder.shared.language.*;
@@ -395,7 +396,7 @@ public class KawigiEdit
         // Remove KawigiEdit tags.  Eventually we will probably have reason to
         // replace certain KawigiEdit tags with something interesting on
         // submission.
-        s = s.replaceAll("<%:[a-zA-Z0-9_-]+%>", "");
+        s = EditorLanguage.removeTags(s);
         if (kawigi.properties.PrefFactory.getPrefs().getBoolean(ActID.actAhmedAlyCleaner.preference, false) ) {
             String fil = ProblemContext.getLanguage().getFileName("temp"); 
             if (fil.toLowerCase().trim().endsWith("cpp")) {
@@ -458,6 +459,7 @@ public class KawigiEdit
         Dispatcher.setFileSyncEnabled(true);
         Dispatcher.requestFileSync();
         Dispatcher.hookMainWindow();
+        FileWatcher.update();
     }
 
     /**
@@ -125,8 +125,14 @@ public enum ActID
 	// Saves the code locally (inserting the testing code and all that jazz),
 	// compiles it, and if the compile succeeds, runs it.
 	actRunTests(null, new Integer(KeyEvent.VK_R), "Run Tests", "Compile and Run All Test Cases Locally", "Play?.gif", LocalTestAction.class, true),
+	// Compiles the code and runs the tests several times to get stable
+	// statistics of their running times.
+	actBenchmark(null, new Integer(KeyEvent.VK_B), "Benchmark", "Run All Test Cases Several Times and Show Statistics of Their Running Times", null, LocalTestAction.class, true),
 	// Kills a test or compile process.
 	actKillProcess(null, new Integer(KeyEvent.VK_K), "Kill", "Kill Currently Running Process", "Stop?.gif", LocalTestAction.class, true),
+	// Runs the reference benchmark in every language to find out how local
+	// running times compare to the judge.
+	actCalibrate(null, null, "Calibrate Speed", "Run a reference benchmark in every language and set how local running times map to judge times", null, LocalTestAction.class, true),
 	// Opens some local file into the "Local Code" tab.
 	actOpenLocal(null, new Integer(KeyEvent.VK_O), "Open", "Open a local source file for reference", "Open?.gif", LocalTestAction.class, true),
 	// General config commands:
@@ -142,14 +148,34 @@ public enum ActID
 	actAutoFileSync(null, new Integer(KeyEvent.VK_A), "Synchronization with external file", "Make source code load and save automatically from and to an external file.", null, BooleanSettingAction.class, true, "kawigi.file.sync", false),
 	// Prefer external file sources over sources given from TopCoder server
 	actPreferFileOpen(null, new Integer(KeyEvent.VK_P), "Always prefer external file to TC source", "When opening the problem always load source from file if it exists.", null, BooleanSettingAction.class, true, "kawigi.file.prefer", false),
+	// Reload and run the tests whenever the external file changes
+	actWatchMode(null, new Integer(KeyEvent.VK_W), "Run tests when external file changes", "Watch the solution file and automatically load it and run the tests when another program modifies it.", null, BooleanSettingAction.class, true, "kawigi.file.watch", false),
 	// Prefer external file sources over sources given from TopCoder server
 	actSaveStatement(null, null, "Save problem statement to external file", "When saving source code with testing code to file save text of problem statement too", null, BooleanSettingAction.class, true, "kawigi.file.statement", false),
+	// Read test cases from a data file next to the solution instead of embedding them into the testing code
+	actTestDataFile(null, null, "Read test cases from data file", "Make the testing code read test cases from a file next to the solution instead of having them written in the code. Keeps the code small when there are many or large test cases.", null, BooleanSettingAction.class, true, "kawigi.testing.datafile", false),
 	// Make the log tab the default. Useful if you use an external editor.
 	actLogByDefault(null, new Integer(KeyEvent.VK_L), "Select log tab at initialization", "Makes the log tab replace the editor tab as the default. Useful if you intend to use an external file editor exclusively.", null, BooleanSettingAction.class, true, "kawigi.logbydefault", false),
 	// Always ignore code saved in TopCoder. Useful if you have a habit to change languages.
 	actIgnoreTopCoderCode(null, new Integer(KeyEvent.VK_I), "Always ignore code saved in TopCoder", "Ignore code saved in topcoder, use in conjunction to file synchronization when you have a habit of using multiple languages so that the correct language code is always loaded.", null, BooleanSettingAction.class, true, "kawigi.ignoretopcodercode", false),
 	// Timeout before test processes are automatically killed.
 	actTimeout(null, new Integer(KeyEvent.VK_T), "Process Timeout:", "How long to wait before killing local processes (seconds)", null, NumberSettingAction.class, true, "kawigi.timeout", new int[]{10, 1, 100, 1}),
+	// Part of the time limit after which passed tests are reported as close to it.
+	actTimeWarning(null, null, "Close to time limit at (%):", "Tests running longer than this percent of the time limit are reported as close to it. 100 turns the warning off.", null, NumberSettingAction.class, true, "kawigi.testing.timewarning", new int[]{70, 10, 100, 5}),
+	// Part of the time limit after which a running test is stopped by the watchdog.
+	actTestDeadline(null, null, "Stop a test at (% of limit):", "Tests running longer than this percent of the time limit fail the timeout and testing stops with the results so far.", null, NumberSettingAction.class, true, "kawigi.testing.deadline", new int[]{300, 100, 10000, 50}),
+	// Abbreviation of large values in the output of the tests.
+	actAbbreviate(null, null, "Abbreviate large values in test output", "Print only the first and last elements of large arrays and strings, unless the test fails.", null, BooleanSettingAction.class, true, "kawigi.testing.abbreviate", true),
+	actAbbreviateHead(null, null, "Show first:", "Number of first elements of large arrays (or characters of large strings) printed when values are abbreviated", null, NumberSettingAction.class, true, "kawigi.testing.abbreviate.head", new int[]{10, 0, 1000, 1}),
+	actAbbreviateTail(null, null, "Show last:", "Number of last elements of large arrays (or characters of large strings) printed when values are abbreviated", null, NumberSettingAction.class, true, "kawigi.testing.abbreviate.tail", new int[]{5, 0, 1000, 1}),
+	// How many times Benchmark runs the tests.
+	actBenchmarkRuns(null, null, "Benchmark runs:", "How many times Benchmark runs the tests", null, NumberSettingAction.class, true, "kawigi.testing.benchmark.runs", new int[]{10, 2, 1000, 1}),
+	// Pin the benchmarked program to one CPU.
+	actBenchmarkPin(null, null, "Pin benchmark to one CPU", "Run the program with taskset pinned to one CPU during Benchmark, if taskset is available. Makes running times more stable.", null, BooleanSettingAction.class, true, "kawigi.testing.benchmark.pin", false),
+	// Compile the code in the background after the user stops typing.
+	actBackgroundCompile(null, new Integer(KeyEvent.VK_B), "Compile in background when idle", "Compile a copy of the code in a shadow directory while you are not typing, so Run Tests can skip compilation and errors show up early.", null, BooleanSettingAction.class, true, "kawigi.compile.background", false),
+	// How long the editor has to be idle before compiling in the background.
+	actBackgroundCompileDelay(null, new Integer(KeyEvent.VK_I), "Idle time:", "How long to wait after the last edit before compiling in background (milliseconds)", null, NumberSettingAction.class, true, "kawigi.compile.idledelay", new int[]{1500, 250, 30000, 250}),
 	// Settings on the compile and test output text boxes.
 	actTestFont(null, null, "Test Font:", "Test Font", null, FontSettingAction.class, true, "kawigi.testing.font", new Font("Monospaced", 0, 12)),
 	actTestBackground(null, new Integer(KeyEvent.VK_B), "Background", "Testing pane background", null, ColorSettingAction.class, true, "kawigi.testing.background", Color.white),
@@ -210,6 +236,22 @@ public enum ActID
     actPyFileName(null, null, "File Name:", "File name for Python files - use $PROBLEM$ to substitute for the problem name", null, TextSettingAction.class, true, "kawigi.language.py.filename", "$PROBLEM$.py"),
     actPyCompileCommand(null, null, "Compile Command:", "Compile command for compiling Python files - use $PROBLEM$ to substitute for the problem name. You can leave it empty.", null, TextSettingAction.class, true, "kawigi.language.py.compiler", ""),
     actPyRunCommand(null, null, "Run Command:", "Run command for Python programs - use $PROBLEM$ for the problem name and $CWD$ for the current directory", null, TextSettingAction.class, true, "kawigi.language.py.run", "python $PROBLEM$.py"),
+	// Time limits for the tests in each language, used unless the problem has its own.
+	actJavaTimeLimit(null, null, "Time Limit:", "Time limit for a test in Java (milliseconds). A problem can have its own time limit set in its testing code.", null, NumberSettingAction.class, true, "kawigi.language.java.timelimit", new int[]{2000, 100, 60000, 100}),
+	actCPPTimeLimit(null, null, "Time Limit:", "Time limit for a test in C++ (milliseconds). A problem can have its own time limit set in its testing code.", null, NumberSettingAction.class, true, "kawigi.language.cpp.timelimit", new int[]{2000, 100, 60000, 100}),
+	actCSharpTimeLimit(null, null, "Time Limit:", "Time limit for a test in C# (milliseconds). A problem can have its own time limit set in its testing code.", null, NumberSettingAction.class, true, "kawigi.language.csharp.timelimit", new int[]{2000, 100, 60000, 100}),
+	actVBTimeLimit(null, null, "Time Limit:", "Time limit for a test in VB (milliseconds). A problem can have its own time limit set in its testing code.", null, NumberSettingAction.class, true, "kawigi.language.vb.timelimit", new int[]{2000, 100, 60000, 100}),
+	actPyTimeLimit(null, null, "Time Limit:", "Time limit for a test in Python (milliseconds). A problem can have its own time limit set in its testing code.", null, NumberSettingAction.class, true, "kawigi.language.py.timelimit", new int[]{2000, 100, 60000, 100}),
+	// How long tests would take on the judge compared to this machine, set by speed calibration.
+	actJavaJudgeTime(null, null, "Judge Time (%):", "Estimated running time of Java programs on the judge in percent of local running time. Set by Calibrate Speed, 100 turns the estimation off.", null, NumberSettingAction.class, true, "kawigi.language.java.judgetime", new int[]{100, 1, 1000, 1}),
+	actCPPJudgeTime(null, null, "Judge Time (%):", "Estimated running time of C++ programs on the judge in percent of local running time. Set by Calibrate Speed, 100 turns the estimation off.", null, NumberSettingAction.class, true, "kawigi.language.cpp.judgetime", new int[]{100, 1, 1000, 1}),
+	actCSharpJudgeTime(null, null, "Judge Time (%):", "Estimated running time of C# programs on the judge in percent of local running time. Set by Calibrate Speed, 100 turns the estimation off.", null, NumberSettingAction.class, true, "kawigi.language.csharp.judgetime", new int[]{100, 1, 1000, 1}),
+	actVBJudgeTime(null, null, "Judge Time (%):", "Estimated running time of VB programs on the judge in percent of local running time. Set by Calibrate Speed, 100 turns the estimation off.", null, NumberSettingAction.class, true, "kawigi.language.vb.judgetime", new int[]{100, 1, 1000, 1}),
+	actPyJudgeTime(null, null, "Judge Time (%):", "Estimated running time of Python programs on the judge in percent of local running time. Set by Calibrate Speed, 100 turns the estimation off.", null, NumberSettingAction.class, true, "kawigi.language.py.judgetime", new int[]{100, 1, 1000, 1}),
+	// Java testing code that warms up the JIT compiler before timing the tests.
+	actJavaWarmUp(null, null, "Warm up JIT before timing tests", "Runs each test several times before timing it, and reports cold time, steady-state time and time spent in garbage collection.", null, BooleanSettingAction.class, true, "kawigi.language.java.warmup", false),
+	actJavaWarmUpRuns(null, null, "Warm-up Runs:", "Number of untimed runs of each test in warm-up mode.", null, NumberSettingAction.class, true, "kawigi.language.java.warmupruns", new int[]{10, 1, 1000, 1}),
+	actJavaTimedRuns(null, null, "Timed Runs:", "Number of timed runs of each test in warm-up mode. The time of the test is their average.", null, NumberSettingAction.class, true, "kawigi.language.java.timedruns", new int[]{10, 1, 1000, 1}),
 
     // Special C++ long long substitution parameters
 	actCPPLLType(null, null, "'long long' type:", "Name of type that have to be substituted instead of 'long long'.", null, TextSettingAction.class, true, "kawigi.language.cpp.lltype", "long long"),
@@ -256,20 +298,27 @@ public enum ActID
 	actCtxMenu(KeyStroke.getKeyStroke(KeyEvent.VK_I, InputEvent.CTRL_MASK), new Integer(KeyEvent.VK_I), "Context Menu", "Brings up the context menu", null, EditorAction.class, false),
 	// Inserts the <%:testing-code%> tag.
 	actInsertTestCode(KeyStroke.getKeyStroke(KeyEvent.VK_E, InputEvent.CTRL_MASK), new Integer(KeyEvent.VK_E), "Test Code Tag", "Inserts the KawigiEdit tag for testing code", null, EditorAction.class, false),
+	// Runs only the test case whose "----- test N -----" line the caret is on
+	// in the testing code.
+	actRunThisTest(null, null, "Run This Test", "Compile if needed and run only the test case whose '----- test N -----' line has the caret", null, EditorAction.class, false),
 	// Brings up a dialog for editing test cases.
 	actTestCases(KeyStroke.getKeyStroke(KeyEvent.VK_L, InputEvent.CTRL_MASK), new Integer(KeyEvent.VK_C), "Test Cases", "Calling the test cases editor for 'Run Tests'", null, TestCasesAction.class, true),
 	// Forces Test Cases dialog to update.
 	actUpdateTestCases(null, null, "Update test cases dialog", "Closes the window of test cases editor, next time it is open it will parse test cases again.", null, TestCasesAction.class, true),
 	// Closes the dialog for editing test cases.
 	actCloseTestCases(null, null, "Close", "Closes the window of test cases editor", null, TestCasesAction.class, true),
-	// Edit the single test case.
-	actEditTestCase(null, null, "Edit", "Change this test case", null, TestCasesAction.class, true),
-	// Delete some test case.
-	actDeleteTestCase(null, null, "Delete", "Delete this test case", null, TestCasesAction.class, true),
+	// Edit the test case selected in the test cases editor.
+	actEditTestCase(null, null, "Edit", "Change the selected test case (or double click it)", null, TestCasesAction.class, true),
+	// Delete the test case selected in the test cases editor.
+	actDeleteTestCase(null, null, "Delete", "Delete the selected test case", null, TestCasesAction.class, true),
+	// Run only the test case selected in the test cases editor.
+	actRunTestCase(null, null, "Run", "Compile if needed and run only the selected test case", null, TestCasesAction.class, true),
 	// Add new test case.
 	actAddTestCase(null, null, "Add", "Add new test case", null, TestCasesAction.class, true),
 	// Add all test cases from examples.
 	actAddExTestCases(null, null, "Add from examples", "Add all test cases from examples", null, TestCasesAction.class, true),
+	// Import test cases in bulk from a file or a directory.
+	actImportTestCases(null, null, "Import...", "Import test cases from a file or from a directory of input and answer files", null, TestCasesAction.class, true),
 	// Enable all test cases
 	actEnableAllTestCases(null, null, "Enable all", "Enable all test cases", null, TestCasesAction.class, true),
 	// Disable all test cases
@@ -0,0 +1,287 @@
+package kawigi.cmd;
+import java.awt.event.*;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import javax.swing.*;
+
+import kawigi.language.EditorLanguage;
+import kawigi.problem.ClassDecl;
+import kawigi.properties.PrefFactory;
+
+/**
+ *	Speculatively compiles the solution while the user is idle.
+ *
+ *	When enabled, every edit to the code pane restarts an idle timer.  Once the
+ *	timer runs out, a snapshot of the code (with the testing code inserted) is
+ *	written to a shadow directory under the local directory and compiled there
+ *	on a low priority background thread, so the user's working file is never
+ *	touched.  If the editor still matches the snapshot when Run Tests is
+ *	pressed, TestPipeline runs the already compiled program from the shadow
+ *	directory instead of compiling again.
+ **/
+public class BackgroundCompiler implements ActionListener, Runnable
+{
+	/**
+	 *	Name of the shadow directory, relative to the local directory.
+	 **/
+	public static final String SHADOW_DIR = ".kawigi-shadow";
+
+	private static BackgroundCompiler instance;
+
+	/**
+	 *	Timer that fires once the user stopped typing for long enough.
+	 **/
+	private Timer idleTimer;
+	/**
+	 *	Background thread doing the current compile, if any.
+	 **/
+	private Thread worker;
+	/**
+	 *	Compile process of the current worker, so it can be killed when the
+	 *	snapshot it compiles becomes stale.
+	 **/
+	private Process process;
+	/**
+	 *	Snapshot being compiled by the current worker.
+	 **/
+	private String pendingKey;
+	private String pendingSource;
+	private String pendingCommand;
+	private File pendingFile;
+	/**
+	 *	Snapshot that was last compiled successfully in the shadow directory.
+	 **/
+	private String compiledKey;
+	/**
+	 *	True if the last background compile failed, so the compile tab shows
+	 *	its errors.
+	 **/
+	private boolean lastFailed;
+
+	private BackgroundCompiler()
+	{
+		idleTimer = new Timer(getIdleDelay(), this);
+		idleTimer.setRepeats(false);
+	}
+
+	/**
+	 *	Returns the single BackgroundCompiler instance.
+	 **/
+	private static synchronized BackgroundCompiler getInstance()
+	{
+		if (instance == null)
+			instance = new BackgroundCompiler();
+		return instance;
+	}
+
+	/**
+	 *	Returns true if background compilation is turned on.
+	 **/
+	public static boolean isEnabled()
+	{
+		return PrefFactory.getPrefs().getBoolean(ActID.actBackgroundCompile.preference, false);
+	}
+
+	private static int getIdleDelay()
+	{
+		return PrefFactory.getPrefs().getInt(ActID.actBackgroundCompileDelay.preference, ((int[])ActID.actBackgroundCompileDelay.defaultValue)[0]);
+	}
+
+	/**
+	 *	Returns the shadow directory used for background compiles.
+	 **/
+	public static File getShadowDirectory()
+	{
+		return new File(PrefFactory.getPrefs().getWorkingDirectory(), SHADOW_DIR);
+	}
+
+	/**
+	 *	Called when the user edits the code - restarts the idle timer.
+	 **/
+	public static void sourceCodeChanged()
+	{
+		if (!isEnabled())
+			return;
+		BackgroundCompiler bc = getInstance();
+		bc.idleTimer.setInitialDelay(getIdleDelay());
+		bc.idleTimer.restart();
+	}
+
+	/**
+	 *	Returns the shadow directory if it contains a program compiled from
+	 *	exactly <code>source</code> with the current compile command, otherwise
+	 *	returns null.
+	 **/
+	public static File getCompiledDirectory(String source)
+	{
+		if (!isEnabled() || instance == null)
+			return null;
+		String key = makeKey(source, getCompileCommand());
+		synchronized (instance)
+		{
+			if (instance.worker == null && key.equals(instance.compiledKey))
+				return getShadowDirectory();
+		}
+		return null;
+	}
+
+	/**
+	 *	Returns the compile command for the current problem in the shadow
+	 *	directory, or null if there's nothing to compile.
+	 **/
+	private static String getCompileCommand()
+	{
+		ClassDecl cl = ProblemContext.getCurrentClass();
+		EditorLanguage lang = ProblemContext.getLanguage();
+		if (cl == null || lang == null)
+			return null;
+		return lang.getCompileCommand(cl.getName(), getShadowDirectory().getPath());
+	}
+
+	private static String makeKey(String source, String command)
+	{
+		return ProblemContext.getLanguage() + "\n" + command + "\n" + source;
+	}
+
+	/**
+	 *	Fired by the idle timer on the event dispatch thread - snapshots the code
+	 *	and starts the compile.
+	 **/
+	public void actionPerformed(ActionEvent e)
+	{
+		if (!isEnabled())
+			return;
+		String command = getCompileCommand();
+		if (command == null || command.trim().length() == 0)
+			return;
+		String source = LocalTestAction.getSolutionSource();
+		String key = makeKey(source, command);
+		synchronized (this)
+		{
+			if (key.equals(compiledKey) || key.equals(pendingKey))
+				return;
+			if (worker != null)
+			{
+				// The running compile is stale, stop it and try again once it
+				// has finished.
+				if (process != null)
+					process.destroy();
+				idleTimer.restart();
+				return;
+			}
+			compiledKey = null;
+			pendingKey = key;
+			pendingSource = source;
+			pendingCommand = command;
+			pendingFile = new File(getShadowDirectory(), ProblemContext.getLanguage().getFileName(ProblemContext.getCurrentClass().getName()));
+			worker = new Thread(this, "KawigiEdit background compile");
+			worker.setDaemon(true);
+			worker.setPriority(Thread.MIN_PRIORITY);
+			worker.start();
+		}
+	}
+
+	/**
+	 *	Writes the snapshot to the shadow directory and compiles it.
+	 **/
+	public void run()
+	{
+		String key, source, command;
+		File file;
+		synchronized (this)
+		{
+			key = pendingKey;
+			source = pendingSource;
+			command = pendingCommand;
+			file = pendingFile;
+		}
+		StringBuilder output = new StringBuilder();
+		int exitVal = -1;
+		try
+		{
+			File dir = file.getParentFile();
+			if (!dir.isDirectory() && !dir.mkdirs())
+				throw new IOException("Can't create " + dir.getPath());
+			Writer out = new BufferedWriter(new FileWriter(file));
+			out.write(source);
+			out.close();
+
+			List<String> args = new ArrayList<String>();
+			// Compilers are CPU hungry, keep them from making the editor or a
+			// running test sluggish.
+			if (File.separatorChar == '/')
+			{
+				args.add("nice");
+				args.add("-n");
+				args.add("10");
+			}
+			StringTokenizer st = new StringTokenizer(command);
+			while (st.hasMoreTokens())
+				args.add(st.nextToken());
+			ProcessBuilder pb = new ProcessBuilder(args);
+			pb.directory(dir);
+			pb.redirectErrorStream(true);
+			Process p;
+			synchronized (this)
+			{
+				p = process = pb.start();
+			}
+			Reader in = new InputStreamReader(p.getInputStream());
+			char[] buf = new char[4096];
+			int len;
+			while ((len = in.read(buf)) != -1)
+				output.append(buf, 0, len);
+			in.close();
+			exitVal = p.waitFor();
+		}
+		catch (IOException ex)
+		{
+			output.append(ex.toString()).append('\n');
+		}
+		catch (InterruptedException ex)
+		{
+		}
+		finished(key, exitVal, output.toString());
+	}
+
+	/**
+	 *	Records the result of a background compile and reports errors to the
+	 *	compile tab.
+	 **/
+	private void finished(final String key, int exitVal, final String output)
+	{
+		final boolean failed = exitVal != 0;
+		synchronized (this)
+		{
+			worker = null;
+			process = null;
+			pendingKey = pendingSource = pendingCommand = null;
+			pendingFile = null;
+			if (!failed)
+				compiledKey = key;
+		}
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				// Only the result for the code that is still in the editor is
+				// worth showing.
+				if (!key.equals(makeKey(LocalTestAction.getSolutionSource(), getCompileCommand())))
+					return;
+				boolean recovered = lastFailed && !failed;
+				lastFailed = failed;
+				kawigi.widget.SimpleOutputComponent comc = Dispatcher.getCompileComponent();
+				if (comc == null || (!failed && !recovered))
+					return;
+				comc.clear();
+				if (failed)
+				{
+					comc.print(output);
+					comc.println("Background compile failed");
+				}
+				else
+					comc.println("Background compile succeeded");
+			}
+		});
+	}
+}
@@ -0,0 +1,227 @@
+package kawigi.cmd;
+import java.io.*;
+import java.util.*;
+import java.util.Timer;
+import javax.swing.*;
+
+import kawigi.language.EditorLanguage;
+import kawigi.language.LanguageFactory;
+import kawigi.properties.PrefFactory;
+import kawigi.properties.PrefProxy;
+
+/**
+ *	Calibrates the speed of this machine against the judge.
+ *
+ *	For every language a bundled benchmark program is compiled and run with
+ *	the user's commands in a scratch directory under the local directory.
+ *	The time it takes is compared to the time it takes on the judge, and the
+ *	ratio is stored as the Judge Time setting of the language, which the
+ *	testing code uses to estimate judge times from the local ones.  Languages
+ *	that can't be compiled or run here are reported and left alone.
+ *
+ *	Like Run Tests, everything is done on a background thread and only the
+ *	results are handed back to Swing.
+ **/
+public class Calibration implements Runnable
+{
+	/**
+	 *	Name of the scratch directory, relative to the local directory.
+	 **/
+	public static final String BENCHMARK_DIR = ".kawigi-benchmark";
+	/**
+	 *	Name of the benchmark class (and file) in every language.
+	 **/
+	private static final String CLASS_NAME = "KawigiEditBenchmark";
+	/**
+	 *	The line the benchmark prints its time in seconds on.
+	 **/
+	private static final String RESULT_PREFIX = "KawigiEdit benchmark: ";
+	/**
+	 *	Commands that take longer than this (milliseconds) are killed.
+	 **/
+	private static final long COMMAND_TIMEOUT = 60000;
+
+	/**
+	 *	The calibration in progress, if any.
+	 **/
+	private static Calibration current;
+
+	/**
+	 *	Returns true if a calibration is in progress.
+	 **/
+	public static synchronized boolean isRunning()
+	{
+		return current != null;
+	}
+
+	/**
+	 *	Starts the calibration unless it's already in progress.
+	 **/
+	public static void start()
+	{
+		Calibration c = new Calibration();
+		synchronized (Calibration.class)
+		{
+			if (current != null)
+				return;
+			current = c;
+		}
+		Dispatcher.logln("Calibrating speed, this takes a while...");
+		Thread t = new Thread(c, "KawigiEdit calibration");
+		t.setDaemon(true);
+		t.start();
+		Dispatcher.getGlobalDispatcher().UIRefresh();
+	}
+
+	/**
+	 *	Calibrates all languages.
+	 **/
+	public void run()
+	{
+		File dir = new File(PrefFactory.getPrefs().getWorkingDirectory(), BENCHMARK_DIR);
+		try
+		{
+			for (EditorLanguage lang : LanguageFactory.getLanguages())
+			{
+				Dispatcher.setStatus("Calibrating " + lang + "...");
+				calibrate(lang, dir);
+			}
+			PrefFactory.getPrefs().commit();
+		}
+		finally
+		{
+			synchronized (Calibration.class)
+			{
+				current = null;
+			}
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					Dispatcher.setStatus("Calibration finished");
+					SettingAction.updateTestCode();
+					Dispatcher.getGlobalDispatcher().UIRefresh();
+				}
+			});
+		}
+	}
+
+	/**
+	 *	Compiles and runs the benchmark of one language and stores its judge
+	 *	time.
+	 **/
+	private void calibrate(EditorLanguage lang, File dir)
+	{
+		StringBuilder output = new StringBuilder();
+		try
+		{
+			if (!dir.isDirectory() && !dir.mkdirs())
+				throw new IOException("Can't create " + dir.getPath());
+			Writer out = new BufferedWriter(new FileWriter(new File(dir, lang.getFileName(CLASS_NAME))));
+			try
+			{
+				out.write(lang.getBenchmarkSource());
+			}
+			finally
+			{
+				out.close();
+			}
+			String compileCommand = lang.getCompileCommand(CLASS_NAME, dir.getPath());
+			if (!compileCommand.equals("") && execute(compileCommand, dir, output) != 0)
+			{
+				log(lang + ": can't compile the benchmark, skipped:\n" + output);
+				return;
+			}
+			output.setLength(0);
+			int excode = execute(lang.getRunCommand(CLASS_NAME, dir.getPath()), dir, output);
+			int ind = output.indexOf(RESULT_PREFIX);
+			if (excode != 0 || ind < 0)
+			{
+				log(lang + ": the benchmark failed, skipped:\n" + output);
+				return;
+			}
+			int end = output.indexOf("\n", ind);
+			double seconds = Double.parseDouble(output.substring(ind + RESULT_PREFIX.length(), end < 0 ? output.length() : end).trim());
+			int percent = (int)Math.round(lang.getBenchmarkJudgeMillis() / (seconds * 10));
+			percent = Math.max(1, Math.min(1000, percent));
+			store(lang, percent);
+			log(lang + ": benchmark took " + seconds + " seconds here, about "
+					+ lang.getBenchmarkJudgeMillis() / 1000.0 + " seconds on the judge. Judge time set to " + percent + "%.");
+		}
+		catch (NumberFormatException ex)
+		{
+			log(lang + ": can't read the benchmark result, skipped:\n" + output);
+		}
+		catch (IOException ex)
+		{
+			log(lang + ": " + ex + ", skipped");
+		}
+		catch (InterruptedException ex)
+		{
+		}
+	}
+
+	/**
+	 *	Stores the judge time of the language.  If the configuration dialog is
+	 *	open, the setting is also shown there so that OK doesn't overwrite it
+	 *	with the old value.
+	 **/
+	private static void store(EditorLanguage lang, final int percent)
+	{
+		final String pref = lang.getPropertyCategory() + ".judgetime";
+		PrefProxy prefs = PrefFactory.getPrefs();
+		prefs.setInt(pref, percent);
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if (!SettingAction.delayNotify())
+					return;
+				for (ActID id : ActID.values())
+					if (pref.equals(id.preference))
+						Dispatcher.getGlobalDispatcher().getAction(id).putValue(DefaultAction.SPINNER_VALUE, percent);
+			}
+		});
+	}
+
+	/**
+	 *	Runs a command in the directory and waits until it's done, collecting
+	 *	its output.  Returns its exit code.
+	 **/
+	private static int execute(String command, File dir, StringBuilder output) throws IOException, InterruptedException
+	{
+		List<String> args = new ArrayList<String>();
+		StringTokenizer st = new StringTokenizer(command);
+		while (st.hasMoreTokens())
+			args.add(st.nextToken());
+		ProcessBuilder pb = new ProcessBuilder(args);
+		pb.directory(dir);
+		pb.redirectErrorStream(true);
+		final Process p = pb.start();
+		Timer killer = new Timer(true);
+		killer.schedule(new TimerTask() {
+			public void run() {
+				p.destroy();
+			}
+		}, COMMAND_TIMEOUT);
+		try
+		{
+			Reader in = new InputStreamReader(p.getInputStream());
+			char[] buf = new char[4096];
+			int len;
+			while ((len = in.read(buf)) != -1)
+				output.append(buf, 0, len);
+			in.close();
+			return p.waitFor();
+		}
+		finally
+		{
+			killer.cancel();
+		}
+	}
+
+	private static void log(final String msg)
+	{
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				Dispatcher.logln(msg);
+			}
+		});
+	}
+}
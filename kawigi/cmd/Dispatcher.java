@@ -63,6 +63,10 @@ public class Dispatcher implements FocusListener, WindowListener, HierarchyListe
 	 *	Global reference to the problem timer.
 	 **/
 	private static ProblemTimer timer;
+	/**
+	 *	Label for short status messages, like the verdict of the last test run.
+	 **/
+	private static JLabel statusLabel;
 	/**
 	 *	Community file chooser.
 	 **/
@@ -361,6 +365,33 @@ public class Dispatcher implements FocusListener, WindowListener, HierarchyListe
 		tabs = tabbedPane;
 	}
 
+	/**
+	 *	Sets the label that shows short status messages.
+	 **/
+	public static void setStatusLabel(JLabel label)
+	{
+		statusLabel = label;
+	}
+
+	/**
+	 *	Shows a short status message (if there is a status label).
+	 *
+	 *	This may be called from any thread.
+	 **/
+	public static void setStatus(final String text)
+	{
+		if (statusLabel == null)
+			return;
+		if (SwingUtilities.isEventDispatchThread())
+			statusLabel.setText(text);
+		else
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					statusLabel.setText(text);
+				}
+			});
+	}
+
 	/**
 	 *	Sets the problem timer control that's normally on the left side of the
 	 *	window.
@@ -47,6 +47,8 @@ public class EditorAction extends DefaultAction
 				return context.canUndo();
 			case actRedo:
 				return context.canRedo();
+			case actRunThisTest:
+				return getTestNumber() >= 0 && !TestPipeline.isRunning();
 			default:
 				return true;
 		}
@@ -246,6 +248,36 @@ public class EditorAction extends DefaultAction
 				context.replaceSelection(EditorLanguage.sTestingCodeTag);
 				break;
 			}
+			case actRunThisTest:
+			{
+				int test = getTestNumber();
+				if (test >= 0)
+					TestPipeline.startTest(test);
+				break;
+			}
+		}
+	}
+
+	/**
+	 *	Returns the number of the test case whose "----- test N -----" line
+	 *	has the caret if this is the testing code, or -1.
+	 **/
+	private int getTestNumber()
+	{
+		EditorLanguage lang = ProblemContext.getLanguage();
+		if (lang == null || context != Dispatcher.getTestCodePane())
+			return -1;
+		// Only the line with the caret is needed, not the whole testing code
+		Element root = context.getDocument().getDefaultRootElement();
+		Element line = root.getElement(root.getElementIndex(context.getCaretPosition()));
+		try
+		{
+			String text = context.getDocument().getText(line.getStartOffset(), line.getEndOffset() - line.getStartOffset());
+			return lang.getTestNumberAt(text, 0);
+		}
+		catch (BadLocationException ex)
+		{
+			return -1;
 		}
 	}
 }
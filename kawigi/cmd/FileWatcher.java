@@ -0,0 +1,158 @@
+package kawigi.cmd;
+import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import javax.swing.*;
+
+import kawigi.problem.ClassDecl;
+import kawigi.properties.PrefFactory;
+
+/**
+ *	Watch mode: re-runs the tests whenever the solution file is changed by
+ *	another program.
+ *
+ *	The local directory is registered with a WatchService on a daemon thread.
+ *	Changes to the solution file are debounced (editors tend to write a file
+ *	several times when saving it), and then the file is loaded and the tests
+ *	are run through the same commands as the Load and Run Tests buttons.  The
+ *	verdict of the run shows up in the status area.
+ **/
+public class FileWatcher implements Runnable, ActionListener
+{
+	/**
+	 *	How long to wait after the last change before reacting to it.
+	 **/
+	private static final int DEBOUNCE_DELAY = 500;
+
+	private static FileWatcher current;
+
+	/**
+	 *	Solution file being watched.
+	 **/
+	private File file;
+	private WatchService service;
+	private Thread thread;
+	/**
+	 *	Fires on the event dispatch thread once writes to the file calm down.
+	 **/
+	private Timer debounce;
+
+	private FileWatcher(File file) throws IOException
+	{
+		this.file = file;
+		service = FileSystems.getDefault().newWatchService();
+		file.getParentFile().toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		debounce = new Timer(DEBOUNCE_DELAY, this);
+		debounce.setRepeats(false);
+		thread = new Thread(this, "KawigiEdit file watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 *	Starts, restarts or stops watching according to the current settings and
+	 *	problem.  Should be called whenever either of those changes.
+	 **/
+	public static synchronized void update()
+	{
+		File f = null;
+		ClassDecl cl = ProblemContext.getCurrentClass();
+		if (PrefFactory.getPrefs().getBoolean(ActID.actWatchMode.preference, false) && cl != null && ProblemContext.getLanguage() != null)
+			f = new File(PrefFactory.getPrefs().getWorkingDirectory(), ProblemContext.getLanguage().getFileName(cl.getName())).getAbsoluteFile();
+		if (current != null && current.file.equals(f))
+			return;
+		if (current != null)
+		{
+			current.stop();
+			current = null;
+		}
+		if (f != null)
+		{
+			try
+			{
+				current = new FileWatcher(f);
+				Dispatcher.logln("Watching " + f.getPath());
+			}
+			catch (IOException ex)
+			{
+				Dispatcher.logln("Can't watch " + f.getPath() + ": " + ex);
+			}
+		}
+	}
+
+	/**
+	 *	Stops the watcher thread.
+	 **/
+	private void stop()
+	{
+		debounce.stop();
+		try
+		{
+			service.close();
+		}
+		catch (IOException ex)
+		{
+		}
+	}
+
+	/**
+	 *	Waits for file system events and restarts the debounce timer for those
+	 *	that concern the solution file.
+	 **/
+	public void run()
+	{
+		try
+		{
+			while (true)
+			{
+				WatchKey key = service.take();
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents())
+				{
+					Object name = event.context();
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW || (name instanceof Path && name.toString().equals(file.getName())))
+						changed = true;
+				}
+				if (changed)
+					debounce.restart();
+				if (!key.reset())
+					break;
+			}
+		}
+		catch (InterruptedException ex)
+		{
+		}
+		catch (ClosedWatchServiceException ex)
+		{
+		}
+	}
+
+	/**
+	 *	Called on the event dispatch thread once the file settled down - loads
+	 *	it and runs the tests.
+	 **/
+	public void actionPerformed(ActionEvent e)
+	{
+		synchronized (FileWatcher.class)
+		{
+			if (current != this)
+				return;
+		}
+		// Our own saves don't count as changes.
+		if (!file.exists() || file.lastModified() <= LocalTestAction.getLastSaveTime())
+			return;
+		if (LocalTestAction.isProcessRunning())
+		{
+			// Try again when the current run is over.
+			debounce.restart();
+			return;
+		}
+		Dispatcher.logln("Watch: " + file.getName() + " changed");
+		Dispatcher.getGlobalDispatcher().runCommand(ActID.actLoad);
+		// If the load was refused (for instance because of unsaved changes in
+		// the editor), running the tests would overwrite the file.
+		if (file.lastModified() <= LocalTestAction.getLastSaveTime())
+			Dispatcher.getGlobalDispatcher().runCommand(ActID.actRunTests);
+	}
+}
@@ -11,7 +11,8 @@ import kawigi.problem.*;
 import kawigi.properties.PrefFactory;
 import kawigi.properties.PrefProxy;
 import kawigi.util.AppEnvironment;
-import kawigi.util.ProcessContainer;
+import kawigi.util.FileLoader;
+import kawigi.util.FileSaver;
 import kawigi.util.StringsUtil;
 
 /**
@@ -22,16 +23,18 @@ import kawigi.util.StringsUtil;
 @SuppressWarnings("serial")
 public class LocalTestAction extends DefaultAction
 {
-	/**
-	 *	Global process - we only allow one process to be running from KawigiEdit
-	 *	at a time, so we don't go crazy messing things up on people's machines.
-	 **/
-	private static ProcessContainer proc;
-	
 	/**
 	 * Last time when file was saved
 	 */
-	private static long lastSaveTime;
+	private static volatile long lastSaveTime;
+	/**
+	 * Writes the solution file, skipping writes that wouldn't change it.
+	 */
+	private static FileSaver saver = new FileSaver();
+	/**
+	 * Writes the test data file when the testing code reads test cases from it.
+	 */
+	private static FileSaver dataSaver = new FileSaver();
 	private static boolean isLoadFileAsked;
 	private static boolean isInLoadSaveAction = false;
 	private static LocalTestAction saveInstance;
@@ -55,6 +58,8 @@ public class LocalTestAction extends DefaultAction
 	 **/
 	public boolean isEnabled()
 	{
+		if (cmdid == ActID.actCalibrate)
+			return !Calibration.isRunning();
 		if (ProblemContext.getCurrentClass() == null)
 		{
 			// In standalone, we can always generate code (because we ask for
@@ -64,7 +69,7 @@ public class LocalTestAction extends DefaultAction
 			return (cmdid == ActID.actGenerateCode && AppEnvironment.getEnvironment() != AppEnvironment.PluginMode) || cmdid == ActID.actOpenLocal;
 		}
         if (cmdid == ActID.actKillProcess) {
-			return proc != null && !proc.isDone();
+			return TestPipeline.isRunning();
         }
 		return true;
 	}
@@ -86,6 +91,8 @@ public class LocalTestAction extends DefaultAction
 				}
 				generateStubCode();
 				Dispatcher.sourceCodeChanged();
+				// The problem may have changed, so watch its solution file
+				FileWatcher.update();
 				break;
 			case actSaveLocal:
 				saveLocal();
@@ -94,22 +101,16 @@ public class LocalTestAction extends DefaultAction
 				loadFromLocal();
 				break;
 			case actRunTests:
-				saveLocal();
-				compileLocal();
+				TestPipeline.start();
+				break;
+			case actBenchmark:
+				TestPipeline.startBenchmark();
+				break;
+			case actCalibrate:
+				Calibration.start();
 				break;
 			case actKillProcess:
-				if (proc != null && !proc.isDone())
-					proc.kill();
-				// On occasion, we don't actually successfully kill the process,
-				// and trying again probably won't help.  This leaves the user
-				// in a state where they can't do any local compilation and
-				// testing until they close down the arena and open it and log
-				// back in again, hardly a state you want to be in for a match,
-				// regardless of how rare it might be.  In this case, we've done
-				// due diligence to kill the process but the OS or the program
-				// the user wrote won't let us, so we just nullify the proc so
-				// that the user can continue to work anyways.
-				proc = null;
+				TestPipeline.cancelCurrent();
 				break;
 			case actOpenLocal:
 				if (Dispatcher.getFileChooser().showOpenDialog(Dispatcher.getTabbedPane()) == JFileChooser.APPROVE_OPTION)
@@ -117,12 +118,7 @@ public class LocalTestAction extends DefaultAction
 					File f = Dispatcher.getFileChooser().getSelectedFile();
 					try
 					{
-						BufferedReader inFile = new BufferedReader(new FileReader(f));
-						String text = "";
-						String line;
-						while ((line = inFile.readLine()) != null)
-							text += line + "\n";
-						inFile.close();
+						String text = FileLoader.load(f);
 						String filename = f.getName();
 						EditorLanguage lang = LanguageFactory.getLanguage(filename.substring(filename.lastIndexOf('.')+1));
 						CodePane localCodePane = Dispatcher.getLocalCodePane();
@@ -164,11 +160,18 @@ public class LocalTestAction extends DefaultAction
 	 *	Parses the text between "BEGIN KAWIGIEDIT TESTING" and "END KAWIGIEDIT TESTING"
 	 *  into test cases, inserts this code into TestPane and inserts into the code tag <%:testing-code%>.
 	 **/
-	protected void restoreTesting(StringBuilder text, ClassDecl cl, EditorLanguage lang)
+	protected void restoreTesting(StringBuilder text, ClassDecl cl, EditorLanguage lang, File dir) throws IOException
 	{
 		StringBuilder tests = new StringBuilder(1000);
 		cl.removeAllTests();
+		TestCasesAction.clearResults();
 		lang.extractTestCases(text, cl, tests);
+		if (EditorLanguage.readsTestData(tests))
+		{
+			File data = new File(dir, TestDataFile.getFileName(cl.getName()));
+			if (data.exists() && TestDataFile.read(FileLoader.loadBytes(data), cl) < 0)
+				Dispatcher.logln("Test cases in " + data.getAbsolutePath() + " are malformed");
+		}
 		Dispatcher.getTestCodePane().setText(tests.toString());
 	}
 
@@ -195,7 +198,17 @@ public class LocalTestAction extends DefaultAction
 		}
 	}
 
-	private static File getSaveFileObj()
+	/**
+	 *	Returns the code from the editor with the testing code inserted, as it
+	 *	is saved to the local file.
+	 **/
+	static String getSolutionSource()
+	{
+		String source = Dispatcher.getCodePane().getText();
+		return source.replace(EditorLanguage.sTestingCodeTag, Dispatcher.getTestCodePane().getText());
+	}
+
+	static File getSaveFileObj()
 	{
 		PrefProxy prefs = PrefFactory.getPrefs();
 		ClassDecl cl = ProblemContext.getCurrentClass();
@@ -205,6 +218,42 @@ public class LocalTestAction extends DefaultAction
 		String filename = ProblemContext.getLanguage().getFileName(cl.getName());
 		return new File(prefs.getWorkingDirectory(), filename);
 	}
+
+	/**
+	 *	Returns the test cases in the format of the test data file, or null if
+	 *	the testing code has them written in it and doesn't need the file.
+	 *
+	 *	@throws		NumberFormatException if some test case has a malformed number
+	 **/
+	static byte[] getTestData()
+	{
+		ClassDecl cl = ProblemContext.getCurrentClass();
+		if (cl == null || !EditorLanguage.readsTestData(Dispatcher.getTestCodePane().getText()))
+			return null;
+		return TestDataFile.write(cl);
+	}
+
+	/**
+	 *	Returns the test data file of the current problem in the given directory.
+	 **/
+	static File getTestDataFileObj(File dir)
+	{
+		ClassDecl cl = ProblemContext.getCurrentClass();
+		if (cl == null)
+			return null;
+		return new File(dir, TestDataFile.getFileName(cl.getName()));
+	}
+
+	/**
+	 *	Writes the test data file (unless it already has this data).  May be
+	 *	called from any thread.
+	 *
+	 *	@return		true if the file was actually written
+	 **/
+	static boolean writeTestData(File f, byte[] data) throws IOException
+	{
+		return dataSaver.save(f, data);
+	}
 	
     /**
 	 *	Saves the current problem to the local test directory.
@@ -217,38 +266,28 @@ public class LocalTestAction extends DefaultAction
             if (f == null) {
                 return;
             }
-            boolean existed = f.exists();
-            long fileTime = f.lastModified();
-            if (existed && fileTime > getLastSaveTime()) {
-                int sel = JOptionPane.showConfirmDialog(Dispatcher.getWindow(),
-                    "The file on disk was changed by external program.\nAre you sure you want to save it?",
-                    "Saving solution code", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
-                if (sel == JOptionPane.NO_OPTION) {
-                    return;
-                }
+            if (!confirmSave(f)) {
+                return;
+            }
+            String source = StringsUtil.toSystemLines(getSolutionSource());
+            byte[] data = null;
+            try {
+                data = getTestData();
+            } catch (NumberFormatException ex) {
+                Dispatcher.logln("Test data file not saved: " + ex.getMessage());
             }
-            String source = Dispatcher.getCodePane().getText();
-            source = source.replace(EditorLanguage.sTestingCodeTag, Dispatcher.getTestCodePane().getText());
             try {
-                PrintWriter out = new PrintWriter(new FileWriter(f));
-                String[] sourceArray = source.split(StringsUtil.sCRLFregex);
-                for (String aSourceArray : sourceArray) {
-                    out.println(aSourceArray);
+                if (data != null) {
+                    File df = getTestDataFileObj(f.getParentFile());
+                    if (writeTestData(df, data)) {
+                        Dispatcher.logln("Saved "+df.getAbsolutePath());
+                    }
+                }
+                boolean written = writeSolution(f, source);
+                if (written) {
+                    Dispatcher.logln("Saved "+f.getAbsolutePath());
+                    Dispatcher.getGlobalDispatcher().runCommand(ActID.actUpdateTestCases);
                 }
-                out.flush();
-                out.close();
-                // We use currentTimeMillis instead of f.lastModified because 
-                // f.lastModified does not have a guaranteed precision. (Different
-                // file systems / Operating systems ) 
-                // synchronization needs to compare lastSaveTime against 
-                // last edit time, which is a variable that uses currentTimeMillis();
-                // For example, in Linux with ext4, lastModified time was rounded
-                // to 1000 miliseconds. If the real  save time was 17499 and the
-                // last edit time was 17200. KawigiEdit would think that edit
-                // time is higher because modifiedTime would give 17000.
-                lastSaveTime = System.currentTimeMillis();
-                Dispatcher.logln("Saved "+f.getAbsolutePath());
-                Dispatcher.getGlobalDispatcher().runCommand(ActID.actUpdateTestCases);
             } catch (IOException ex) {
                 saveInstance.reportError(ex, false);
             }
@@ -257,11 +296,108 @@ public class LocalTestAction extends DefaultAction
         }
     }
 
+    /**
+	 *	If the file on disk was changed by an external program since we last
+	 *	saved it, asks the user if it should be overwritten.
+	 *
+	 *	@return		false if the user doesn't want to save
+     **/
+    static boolean confirmSave(File f)
+    {
+        if (!f.exists() || f.lastModified() <= getLastSaveTime()) {
+            return true;
+        }
+        boolean wasInLoadSave = isInLoadSaveAction;
+        isInLoadSaveAction = true;
+        try {
+            int sel = JOptionPane.showConfirmDialog(Dispatcher.getWindow(),
+                "The file on disk was changed by external program.\nAre you sure you want to save it?",
+                "Saving solution code", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+            return sel != JOptionPane.NO_OPTION;
+        } finally {
+            isInLoadSaveAction = wasInLoadSave;
+        }
+    }
+
+    /**
+	 *	Writes the code to the solution file (unless the file already has it)
+	 *	and remembers the time of saving.  May be called from any thread.
+	 *
+	 *	@return		true if the file was actually written
+     **/
+    static synchronized boolean writeSolution(File f, String text) throws IOException
+    {
+        boolean written = saver.save(f, text);
+        // We use currentTimeMillis instead of f.lastModified because 
+        // f.lastModified does not have a guaranteed precision. (Different
+        // file systems / Operating systems ) 
+        // synchronization needs to compare lastSaveTime against 
+        // last edit time, which is a variable that uses currentTimeMillis();
+        // For example, in Linux with ext4, lastModified time was rounded
+        // to 1000 miliseconds. If the real  save time was 17499 and the
+        // last edit time was 17200. KawigiEdit would think that edit
+        // time is higher because modifiedTime would give 17000.
+        lastSaveTime = System.currentTimeMillis();
+        return written;
+    }
+
+    /**
+	 *	Saves the current problem to the local test directory in background.
+	 *
+	 *	Used by file synchronization, which may ask for saves very often - the
+	 *	code is only written when no newer request came for a moment, and only
+	 *	if it differs from what's in the file.
+     **/
+    private static void saveLocalLater()
+    {
+        File f = getSaveFileObj();
+        if (f == null) {
+            return;
+        }
+        byte[] testData = null;
+        try {
+            testData = getTestData();
+        } catch (NumberFormatException ex) {
+            Dispatcher.logln("Test data file not saved: " + ex.getMessage());
+        }
+        final byte[] data = testData;
+        final File df = getTestDataFileObj(f.getParentFile());
+        saver.saveLater(f, StringsUtil.toSystemLines(getSolutionSource()), new FileSaver.Callback() {
+            public void saved(final File f, final boolean written) {
+                if (data != null) {
+                    try {
+                        writeTestData(df, data);
+                    } catch (IOException ex) {
+                        failed(df, ex);
+                    }
+                }
+                // See writeSolution() on why currentTimeMillis is used.
+                lastSaveTime = System.currentTimeMillis();
+                if (written) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            Dispatcher.logln("Saved "+f.getAbsolutePath());
+                            Dispatcher.getGlobalDispatcher().runCommand(ActID.actUpdateTestCases);
+                        }
+                    });
+                }
+            }
+            public void failed(File f, final IOException ex) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        saveInstance.reportError(ex, false);
+                    }
+                });
+            }
+        });
+    }
+
 
 	public static synchronized void loadFromLocal()
 	{
 		isInLoadSaveAction = true;
 		try {
+			saver.flush();
 			File f = getSaveFileObj();
 			if (f == null || !f.exists())
 				return;
@@ -277,16 +413,13 @@ public class LocalTestAction extends DefaultAction
 			}
 			
 			try {
-				BufferedReader in = new BufferedReader(new FileReader(f));
-				String line;
-				StringBuilder text = new StringBuilder(in.readLine());
-				
-				while ((line = in.readLine()) != null) {
-					text.append('\n').append(line);
+				StringBuilder text = new StringBuilder(FileLoader.load(f));
+				// The file ends with a line break that isn't part of the code.
+				if (text.length() > 0 && text.charAt(text.length() - 1) == '\n') {
+					text.setLength(text.length() - 1);
 				}
-				in.close();
 				loadInstance.removeCutting(text);
-				loadInstance.restoreTesting(text, ProblemContext.getCurrentClass(), ProblemContext.getLanguage());
+				loadInstance.restoreTesting(text, ProblemContext.getCurrentClass(), ProblemContext.getLanguage(), f.getParentFile());
 	
 				CodePane pane = Dispatcher.getCodePane();
 				int caret_pos = pane.getCaretPosition();
@@ -309,6 +442,15 @@ public class LocalTestAction extends DefaultAction
 	}
 
 	
+	/**
+	 * Returns true if a compile or test process started by KawigiEdit is still
+	 * running.
+	 */
+	public static boolean isProcessRunning()
+	{
+		return TestPipeline.isRunning();
+	}
+
 	/**
 	 * Get last time when external file was saved
 	 * 
@@ -325,125 +467,12 @@ public class LocalTestAction extends DefaultAction
 		isLoadFileAsked = false;
 	}
 	
-    /**
-	 *	Compiles the saved code for this problem.
-     **/
-	public void compileLocal()
-	{
-		try
-		{
-            JTabbedPane tabb = Dispatcher.getTabbedPane();
-            kawigi.widget.SimpleOutputComponent comc, logc, toTab;
-            comc = Dispatcher.getCompileComponent();
-            logc = Dispatcher.getLogComponent();
-            toTab = null;
-			if (proc == null || proc.isDone()) {
-                String command = ProblemContext.getLanguage().getCompileCommand(ProblemContext.getCurrentClass().getName(), PrefFactory.getPrefs().getWorkingDirectory().getPath());
-				if ( command.equals("")) {
-				    // No compile command, skip to run command:
-				    proc = null;
-                    runLocal();
-                } else {
-                    Dispatcher.logln("Run: "+command);
-                    Process p = Runtime.getRuntime().exec(command, null, PrefFactory.getPrefs().getWorkingDirectory());
-                    proc = new ProcessContainer(p, comc, false,
-                                    new Runnable() {
-                                        public void run() {
-                                            runLocal();
-                                        }
-                                    });
-                    proc.start();
-                    toTab = comc;
-                }
-			} else {
-			    String err = "Error: Can't compile while another process is running";
-			    if (comc != null) {
-			        toTab = comc;
-			        comc.println(err);
-			    } else {
-			        toTab = logc;
-			        Dispatcher.logln("Error: Can't compile while another process is running");
-			    }
-			}
-			if (tabb != null && toTab != null) {
-			    tabb.setSelectedComponent(toTab);
-			}
-		}
-		catch (Exception ex)
-		{
-			reportError(ex, false);
-		}
-	}
-
-	/**
-	 * Run test program if compilation was successful
-	 */
-	public void runLocal()
-	{
-		try {
-		    int excode = 0;
-            final JTabbedPane tabb = Dispatcher.getTabbedPane();
-            final kawigi.widget.SimpleOutputComponent outc, comc, logc;
-            kawigi.widget.SimpleOutputComponent toTab = null;
-            outc = Dispatcher.getOutputComponent();
-            comc = Dispatcher.getCompileComponent();
-            logc = Dispatcher.getLogComponent();
-
-
-            if (proc != null) {
-			    excode = proc.endVal();
-			    Dispatcher.logln("Compile command finished (exit code = "+proc.endVal()+").");
-			    if (excode != 0) {
-			        if (logc != null) {
-			            toTab = logc;
-			        }
-			    }
-            }
-
-			if (excode == 0) {
-                if (comc != null) {
-				    comc.println("Compiling finished");
-                }
-				toTab = ( (outc == null)? comc : outc );
-				if (proc == null || proc.isDone()) {
-				    String command = ProblemContext.getLanguage().getRunCommand(ProblemContext.getCurrentClass().getName(), PrefFactory.getPrefs().getWorkingDirectory().getPath());
-				    Dispatcher.logln("Run: "+command);
-					Process p = Runtime.getRuntime().exec(command, null, PrefFactory.getPrefs().getWorkingDirectory());
-					proc = new ProcessContainer(p, ((outc == null) ? comc : outc), false, new Runnable() {
-                                        public void run() {
-                                            if (proc != null) {
-                                                int ex = proc.endVal();
-                                                Dispatcher.logln("Run command finished (exit code = "+ex+").");
-                                                if ( ex != 0 && tabb != null && comc == null && outc == null && logc != null) {
-                                                    tabb.setSelectedComponent(logc);
-                                                }
-                                            }
-                                        }
-                                    });
-					proc.start();
-				} else {
-				    String err = "Error: Can't start new process while another is running.";
-				    toTab = ( (outc == null) ? comc : outc);
-				    toTab = ( (toTab == null) ? logc : toTab);
-				}
-			} else if (comc != null) {
-			    toTab = comc;
-				comc.println("Compiling errors");
-			}
-			if ( (toTab != null) && (tabb != null) ) {
-			    tabb.setSelectedComponent(toTab);
-			}
-		} catch (Exception ex) {
-			reportError(ex, false);
-		}
-	}
-
 	/**
 	 * Do auto-synchronization of the program text with external file
 	 */
     public static synchronized void requestFileSync()
     {
-		if (isInLoadSaveAction) {
+		if (isInLoadSaveAction || saver.isPending()) {
 			return;
 		}
         boolean needSync = PrefFactory.getPrefs().getBoolean(ActID.actAutoFileSync.preference, false);
@@ -508,7 +537,7 @@ public class LocalTestAction extends DefaultAction
         }
         
         if (needSave) {
-            saveInstance.saveLocal();
+            saveLocalLater();
         } else if (needLoad) {
             loadInstance.loadFromLocal();
         }
@@ -2,6 +2,8 @@ package kawigi.cmd;
 import kawigi.properties.*;
 import kawigi.widget.*;
 import kawigi.editor.*;
+import kawigi.language.EditorLanguage;
+import kawigi.problem.ClassDecl;
 import javax.swing.*;
 import java.awt.event.*;
 
@@ -148,5 +150,32 @@ public class SettingAction extends DefaultAction
 			Dispatcher.getCodePane().resetPrefs();
 		if (Dispatcher.getLocalCodeEditorPanel() != null)
 			Dispatcher.getLocalCodePane().resetPrefs();
+		updateTestCode();
+		FileWatcher.update();
+	}
+
+	/**
+	 *	Regenerates the testing code if settings it depends on have changed:
+	 *	if it has to move test cases into or out of the test data file, or if
+	 *	the time limit or judge time changed, or if it's not generated in the
+	 *	testing mode of the language (like Java warm-up).
+	 **/
+	static void updateTestCode()
+	{
+		ClassDecl cl = ProblemContext.getCurrentClass();
+		EditorLanguage lang = ProblemContext.getLanguage();
+		if (cl != null && lang != null && Dispatcher.getTestCodePane() != null)
+		{
+			String testCode = Dispatcher.getTestCodePane().getText();
+			// Time limit set by hand in the testing code is the problem's own
+			EditorLanguage.readTimeLimit(testCode, cl);
+			if (EditorLanguage.readsTestData(testCode) != EditorLanguage.isTestDataMode()
+					|| !lang.isTimeLimitCurrent(testCode, cl)
+					|| !lang.isHarnessModeCurrent(testCode))
+			{
+				Dispatcher.getTestCodePane().setText(lang.getTestCode(cl));
+				Dispatcher.sourceCodeChanged();
+			}
+		}
 	}
 }
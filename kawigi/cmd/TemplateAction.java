@@ -53,27 +53,12 @@ public class TemplateAction extends DefaultAction
 					location = chooser.getSelectedFile();
 					if (location.exists())
 					{
-						BufferedReader inFile = null;
 						try
 						{
-							inFile = new BufferedReader(new FileReader(location));
-							String stuff = "";
-							String line;
-							while ((line = inFile.readLine()) != null)
-								stuff += line + "\n";
-							Dispatcher.getTemplateCodePane().setText(stuff);
-							inFile.close();
+							Dispatcher.getTemplateCodePane().setText(FileLoader.load(location));
 						}
 						catch (IOException ex)
 						{
-							if (inFile != null)
-								try
-								{
-									inFile.close();
-								}
-								catch (IOException ex2)
-								{
-								}
 						}
 					}
 				}
@@ -92,28 +77,13 @@ public class TemplateAction extends DefaultAction
 					InputStream stream = getClass().getClassLoader().getResourceAsStream("rc/templates/" + language);
 					if (stream != null)
 					{
-						BufferedReader in = null;
 						try
 						{
-							in = new BufferedReader(new InputStreamReader(stream));
-							String stuff = "";
-							String line;
-							while ((line = in.readLine()) != null)
-								stuff += line + "\n";
-							Dispatcher.getTemplateCodePane().setText(stuff);
-							in.close();
+							Dispatcher.getTemplateCodePane().setText(FileLoader.load(stream));
 						}
 						catch (IOException ex)
 						{
 							System.err.println("IOException");
-							if (in != null)
-								try
-								{
-									in.close();
-								}
-								catch (IOException ex2)
-								{
-								}
 						}
 					}
 					else
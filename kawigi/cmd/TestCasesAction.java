@@ -1,6 +1,8 @@
 package kawigi.cmd;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.*;
 import java.awt.*;
 import java.awt.event.*;
@@ -30,29 +32,21 @@ public final class TestCasesAction extends DefaultAction
      **/
     private static JDialog mainDlg;
     /**
-     * Panel to the left of main dialog for placing test cases names / check boxes.
+     * Table of test cases in main dialog.
      **/
-    private static GridPanel checksPan;
-	/**
-	 * Panel in the middle of main dialog for placing "Edit" buttons.
-	 */
-    private static GridPanel editsPan;
-	/**
-	 * Panel to the right of main dialog for placing "Delete" buttons.
-	 */
-    private static GridPanel delsPan;
-	/**
-	 * All checkboxes with test cases names in main dialog.
-	 */
-    private static final ArrayList<JCheckBox> enabledCheckBoxes = new ArrayList<JCheckBox>();
-	/**
-	 * All "Edit" buttons in main dialog.
-	 */
-    private static final ArrayList<JButton> editButs = new ArrayList<JButton>();
-	/**
-	 * All "Delete" buttons in main dialog.
-	 */
-    private static final ArrayList<JButton> delButs = new ArrayList<JButton>();
+    private static JTable casesTable;
+    /**
+     * Model of the table of test cases, it takes everything from class declaration.
+     **/
+    private static TestCasesTableModel casesModel;
+    /**
+     * Results of the last run of the tests, or null.
+     **/
+    private static TestVerdict lastResults;
+    /**
+     * Class declaration the results of the last run are for.
+     **/
+    private static ClassDecl lastResultsClass;
 
 	/**
 	 * Dialog for single test case editing.
@@ -127,10 +121,6 @@ public final class TestCasesAction extends DefaultAction
      * @see actionPerformed(ActionEvent)
      **/
     private static boolean cannotRunUpdate = false;
-    /**
-     * Flag that is enabled when doing bulk changes to test enabled checkBoxes:
-     */
-    private static boolean ignoreTestCheckboxEvent = false;
 
     /**
      * Constructs a new TestCasesAction for the given ActID.
@@ -193,6 +183,9 @@ public final class TestCasesAction extends DefaultAction
 		case actAddExTestCases:
 			addExampleTestCases();
 			break;
+		case actImportTestCases:
+			importTestCases();
+			break;
 		case actEnableAllTestCases:
 			enableAllTestCases();
 			break;
@@ -203,10 +196,14 @@ public final class TestCasesAction extends DefaultAction
 	        addTestCase();
 	        break;
 		case actEditTestCase:
-			editTestCase(findObjIndex(editButs, e.getSource()));
+			editTestCase(casesTable.getSelectedRow());
 			break;
 		case actDeleteTestCase:
-			deleteTestCase(findObjIndex(delButs, e.getSource()));
+			deleteTestCase(casesTable.getSelectedRow());
+			break;
+		case actRunTestCase:
+			if (0 <= casesTable.getSelectedRow())
+				TestPipeline.startTest(casesTable.getSelectedRow());
 			break;
         case actCancelCaseParams:
 	        hideCaseDialog();
@@ -238,6 +235,10 @@ public final class TestCasesAction extends DefaultAction
 	            findObjIndex(editFields, thisField) == testCase.getParameters().length)
 	    {
 	        return testCase.isWithAnswer();
+	    } else if (ActID.actImportTestCases == cmdid) {
+	        return null != ProblemContext.getCurrentClass() && !TestImport.isRunning();
+	    } else if (ActID.actRunTestCase == cmdid) {
+	        return null != ProblemContext.getCurrentClass() && !TestPipeline.isRunning();
 	    } else {
 	        return null != ProblemContext.getCurrentClass();
 	    }
@@ -327,19 +328,198 @@ public final class TestCasesAction extends DefaultAction
     }
 	 
 	/**
-	 * Changes the whole code in TestPanel after some changes in test cases.
+	 * Changes the code in TestPanel after changes in any test cases.
 	 **/
 	private static void updateTestPanel()
+	{
+	    updateTestPanel(0, cl.countTests() - 1, -1);
+	}
+
+	/**
+	 * Changes the code in TestPanel after some changes in test cases. Only the
+	 * code of test cases from <code>first</code> to <code>last</code> (in the
+	 * new numbering) is regenerated, the rest of the code stays as it is.
+	 * Code of test cases added at the end is inserted, and code of the deleted
+	 * test case and of test cases that no longer exist is removed. If the
+	 * code in TestPanel isn't made of test cases as expected, it is replaced
+	 * as a whole.
+	 *
+	 * @param first     First test case that changed
+	 * @param last      Last test case that changed
+	 * @param removed   Test case that was deleted, or -1
+	 **/
+	private static void updateTestPanel(int first, int last, int removed)
 	{
 	    EditorLanguage lang = ProblemContext.getLanguage();
 	    CodePane testCodePane = Dispatcher.getTestCodePane();
-	    testCodePane.setText(lang.getTestCode(cl));
+	    if (!patchTestPanel(lang, testCodePane, first, last, removed)) {
+	        EditorLanguage.readTimeLimit(testCodePane.getText(), cl);
+	        testCodePane.setText(lang.getTestCode(cl));
+	    }
 	    Dispatcher.sourceCodeChanged();
 	    cannotRunUpdate = true;
 	    Dispatcher.requestFileSync();
 	    cannotRunUpdate = false;
 	}
 
+	/**
+	 * Does the work of <code>updateTestPanel</code> with minimal edits of the
+	 * code in TestPanel, so that the caret and the undo history stay.
+	 *
+	 * @param lang          Language of the code
+	 * @param testCodePane  TestPanel
+	 * @param first         First test case that changed
+	 * @param last          Last test case that changed
+	 * @param removed       Test case that was deleted, or -1
+	 * @return              <code>false</code> if the code should be replaced
+	 *                      as a whole
+	 **/
+	private static boolean patchTestPanel(EditorLanguage lang, CodePane testCodePane,
+	                                      int first, int last, int removed)
+	{
+	    Document doc = testCodePane.getDocument();
+	    String code;
+	    try {
+	        code = doc.getText(0, doc.getLength());
+	    }
+	    catch (BadLocationException e) {
+	        return false;
+	    }
+	    if (EditorLanguage.readsTestData(code))
+	        // Test cases are read from the test data file, not from the code
+	        return EditorLanguage.isTestDataMode();
+	    int[] blocks = lang.findTestBlocks(code);
+	    int oldCount = blocks.length / 2;
+	    int count = cl.countTests();
+	    if (0 == oldCount || 0 == count || oldCount <= removed)
+	        return false;
+
+	    // All test cases are generated with the same indentation, and may have
+	    // something around the lines found by findTestBlocks (C++ braces, the
+	    // empty line after). Find it out on the code of one test case.
+	    int ind = blocks[0];
+	    while (code.length() > ind && (' ' == code.charAt(ind) || '\t' == code.charAt(ind)))
+	        ++ind;
+	    String indent = code.substring(blocks[0], ind);
+	    String[] newBlocks = new String[count];
+	    int sample = Math.max(0, Math.min(first, count - 1));
+	    newBlocks[sample] = toDocLines(lang.getTestBlock(cl, sample, indent));
+	    int[] sampleBlocks = lang.findTestBlocks(newBlocks[sample]);
+	    if (2 != sampleBlocks.length)
+	        return false;
+	    String prefix = newBlocks[sample].substring(0, sampleBlocks[0]);
+	    String suffix = newBlocks[sample].substring(sampleBlocks[1]);
+
+	    ArrayList<int[]> ranges = new ArrayList<int[]>();
+	    ArrayList<String> texts = new ArrayList<String>();
+	    int end = 0;
+	    for (int i = 0; oldCount > i; ++i) {
+	        int start = blocks[2 * i] - prefix.length();
+	        end = blocks[2 * i + 1] + suffix.length();
+	        if (0 > start || code.length() < end || !code.startsWith(prefix, start)
+	                || !code.startsWith(suffix, end - suffix.length()))
+	            return false;
+	        int num = (0 <= removed && removed < i)? i - 1: i;
+	        if (removed == i || count <= num) {
+	            ranges.add(new int[] {start, end});
+	            texts.add("");
+	        }
+	        else if (first <= num && last >= num) {
+	            if (null == newBlocks[num])
+	                newBlocks[num] = toDocLines(lang.getTestBlock(cl, num, indent));
+	            addLineEdits(code, start, end, newBlocks[num], ranges, texts);
+	        }
+	    }
+	    // Test cases added at the end go after the last one
+	    int added = oldCount - (0 <= removed? 1: 0);
+	    if (count > added) {
+	        StringBuilder sb = new StringBuilder();
+	        for (int i = added; count > i; ++i)
+	            sb.append(null != newBlocks[i]? newBlocks[i]: toDocLines(lang.getTestBlock(cl, i, indent)));
+	        ranges.add(new int[] {end, end});
+	        texts.add(sb.toString());
+	    }
+
+	    int[] starts = new int[ranges.size()];
+	    int[] ends = new int[ranges.size()];
+	    for (int i = 0; ranges.size() > i; ++i) {
+	        starts[i] = ranges.get(i)[0];
+	        ends[i] = ranges.get(i)[1];
+	    }
+	    try {
+	        testCodePane.replaceRanges(starts, ends, texts.toArray(new String[texts.size()]));
+	    }
+	    catch (BadLocationException e) {
+	        return false;
+	    }
+	    return true;
+	}
+
+	/**
+	 * Adds edits turning the code of one test case in TestPanel into its new
+	 * code. If the number of lines is the same (like when only values or test
+	 * number change), only the changed parts of changed lines are replaced.
+	 *
+	 * @param code      Code in TestPanel
+	 * @param start     Beginning of the code of the test case in TestPanel
+	 * @param end       End of the code of the test case in TestPanel
+	 * @param newCode   New code of the test case
+	 * @param ranges    List to add ranges of replaced code to
+	 * @param texts     List to add replacements of the ranges to
+	 **/
+	private static void addLineEdits(String code, int start, int end, String newCode,
+	                                 ArrayList<int[]> ranges, ArrayList<String> texts)
+	{
+	    String[] oldLines = code.substring(start, end).split("\n", -1);
+	    String[] newLines = newCode.split("\n", -1);
+	    if (oldLines.length != newLines.length) {
+	        addEdit(start, code.substring(start, end), newCode, ranges, texts);
+	        return;
+	    }
+	    for (int i = 0; oldLines.length > i; ++i) {
+	        if (!oldLines[i].equals(newLines[i]))
+	            addEdit(start, oldLines[i], newLines[i], ranges, texts);
+	        start += oldLines[i].length() + 1;
+	    }
+	}
+
+	/**
+	 * Adds an edit turning <code>oldText</code> into <code>newText</code>
+	 * that keeps their common beginning and end.
+	 *
+	 * @param start     Position of <code>oldText</code> in TestPanel
+	 * @param oldText   Text in TestPanel
+	 * @param newText   Text it must become
+	 * @param ranges    List to add range of replaced text to
+	 * @param texts     List to add replacement of the range to
+	 **/
+	private static void addEdit(int start, String oldText, String newText,
+	                            ArrayList<int[]> ranges, ArrayList<String> texts)
+	{
+	    int len = Math.min(oldText.length(), newText.length());
+	    int pre = 0;
+	    while (len > pre && oldText.charAt(pre) == newText.charAt(pre))
+	        ++pre;
+	    int post = 0;
+	    while (len - pre > post && oldText.charAt(oldText.length() - 1 - post)
+	                == newText.charAt(newText.length() - 1 - post))
+	        ++post;
+	    ranges.add(new int[] {start + pre, start + oldText.length() - post});
+	    texts.add(newText.substring(pre, newText.length() - post));
+	}
+
+	/**
+	 * Converts line breaks of generated code to the ones of the documents of
+	 * code panes.
+	 *
+	 * @param code      Generated code
+	 * @return          Code with '\n' line breaks
+	 **/
+	private static String toDocLines(String code)
+	{
+	    return code.replace("\r\n", "\n");
+	}
+
 	/**
 	 * Changes default label colors if editor is in plugin mode.
 	 *
@@ -394,6 +574,8 @@ public final class TestCasesAction extends DefaultAction
 		{
 			mainDlg.dispose();
 			mainDlg = null;
+			casesTable = null;
+			casesModel = null;
 		}
 		// Clean test case info dialog and all structures related to it
 		if (null != caseDlg)
@@ -414,109 +596,14 @@ public final class TestCasesAction extends DefaultAction
 	}
 
 	/**
-	 * Adds check box with test case number at the bottom of dialog for single
-	 * test case editing
-	 *
-	 * @see     #createMainDialog()
-	 */
-	private static void addTestCaseCheckBox()
-	{
-	    boolean en = true;
-	    int ts = enabledCheckBoxes.size();
-	    if (ts < cl.countTests()) {
-	        if ( cl.getTest(ts).isDisabled() ) {
-	            en = false;
-	        }
-	    }
-	    
-		JCheckBox chk = new JCheckBox("Test " + ts, en);
-		adjustCBoxProps(chk);
-		checksPan.add(chk);
-		chk.addItemListener(
-				new ItemListener() {
-					public void itemStateChanged(ItemEvent e) {
-						saveTestCasesEnabled();
-					}
-				}
-		);
-
-		enabledCheckBoxes.add(chk);
-	}
-
-	/**
-	 * Adds "Edit" button at the bottom of dialog for single
-	 * test case editing
-	 *
-	 * @see     #createMainDialog()
+	 * Shows the current test cases of class declaration in main dialog.
+	 * Only the table model is told about the change, the table itself
+	 * repaints only the visible rows.
 	 */
-	private static void addEditTestCaseButton()
+	private static void updateMainDlgControls()
 	{
-		Action act = Dispatcher.getGlobalDispatcher().getAction(ActID.actEditTestCase);
-		JButton but = new JButton(act);
-		editsPan.add(but);
-		editButs.add(but);
-	}
-
-	/**
-	 * Adds "Delete" button at the bottom of dialog for single
-	 * test case editing
-	 *
-	 * @see     #createMainDialog()
-	 */
-	private static void addDelTestCaseButton()
-	{
-		Action act = Dispatcher.getGlobalDispatcher().getAction(ActID.actDeleteTestCase);
-		JButton but = new JButton(act);
-		delsPan.add(but);
-		delButs.add(but);
-	}
-
-	/**
-	 * Adjusts number of labels and buttons in main dialog to number of test cases
-	 * in class declaration.
-	 *
-	 * @param doRepack          Flags if repacking of main dialog is necessary
-	 */
-	private static void updateMainDlgControls(boolean doRepack)
-	{
-		// Check Boxes:
-		checksPan.setGridDimensions(cl.countTests() + ",1");
-		while (cl.countTests() > enabledCheckBoxes.size()) {
-			addTestCaseCheckBox();
-		}
-		for (int i = enabledCheckBoxes.size() - 1; cl.countTests() <= i; --i) {
-			checksPan.remove(enabledCheckBoxes.get(i));
-			enabledCheckBoxes.remove(i);
-		}
-		ignoreTestCheckboxEvent = true;
-		for (int i = 0; i < cl.countTests(); i++) {
-		    enabledCheckBoxes.get(i).setSelected( ! cl.getTest(i).isDisabled() );
-		}
-		ignoreTestCheckboxEvent = false;
-
-		// Edit buttons
-		editsPan.setGridDimensions(cl.countTests() + ",1");
-		while (cl.countTests() > editButs.size()) {
-			addEditTestCaseButton();
-		}
-		for (int i = editButs.size() - 1; cl.countTests() <= i; --i) {
-			editsPan.remove(editButs.get(i));
-			editButs.remove(i);
-		}
-
-		// Delete buttons
-		delsPan.setGridDimensions(cl.countTests() + ",1");
-		while (cl.countTests() > delButs.size())
-			addDelTestCaseButton();
-		for (int i = delButs.size() - 1; cl.countTests() <= i; --i)
-		{
-			delsPan.remove(delButs.get(i));
-			delButs.remove(i);
-		}
-
-		if (doRepack) {
-			mainDlg.pack();
-		}
+		if (null != casesModel)
+			casesModel.fireTableDataChanged();
 	}
 
 	/**
@@ -533,41 +620,67 @@ public final class TestCasesAction extends DefaultAction
 
 		// Main window elements
 		VerticalPanel mainPan = new VerticalPanel();
-		GridPanel casesPan = new GridPanel();
-		casesPan.setGridDimensions("1,3");
-
-		// All panels for labels and buttons
-		checksPan = new GridPanel();
-		// some beautifullness :)
-		checksPan.setBorder(BorderFactory.createEmptyBorder(0, 5, 0, 10));
-		enabledCheckBoxes.clear();
-		editsPan = new GridPanel();
-		editButs.clear();
-		delsPan = new GridPanel();
-		delButs.clear();
-
-		// update labels and buttons
-		updateMainDlgControls(false);
-
-		// and add them to overall panel
-		casesPan.add(checksPan);
-		casesPan.add(editsPan);
-		casesPan.add(delsPan);
-
-		// We finished with main buttons
-		mainPan.add(casesPan);
+
+		// Table with a row for each test case. It's the same size for any
+		// number of test cases and paints only rows that are visible.
+		casesModel = new TestCasesTableModel(cl);
+		if (cl == lastResultsClass)
+			casesModel.setResults(lastResults);
+		casesModel.addTableModelListener(
+				new TableModelListener() {
+					public void tableChanged(TableModelEvent e) {
+						// change code in TestPanel (only of the test cases toggled)
+						if (TableModelEvent.UPDATE == e.getType()
+								&& TestCasesTableModel.ENABLED_COLUMN == e.getColumn())
+							updateTestPanel(e.getFirstRow(), e.getLastRow(), -1);
+					}
+				}
+		);
+		casesTable = new JTable(casesModel);
+		casesTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		casesTable.setAutoResizeMode(JTable.AUTO_RESIZE_LAST_COLUMN);
+		int[] widths = {40, 50, 150, 80, 400};
+		for (int i = 0; widths.length > i; ++i)
+			casesTable.getColumnModel().getColumn(i).setPreferredWidth(widths[i]);
+		casesTable.setPreferredScrollableViewportSize(
+				new Dimension(720, 15 * casesTable.getRowHeight()));
+		casesTable.addMouseListener(
+				new MouseAdapter() {
+					public void mouseClicked(MouseEvent e) {
+						// Double click opens the test case like the "Edit" button
+						int row = casesTable.rowAtPoint(e.getPoint());
+						if (2 == e.getClickCount() && 0 <= row
+								&& TestCasesTableModel.ENABLED_COLUMN != casesTable.columnAtPoint(e.getPoint()))
+							editTestCase(row);
+					}
+				}
+		);
+		if (AppEnvironment.PluginMode == AppEnvironment.getEnvironment()) {
+			casesTable.setForeground(Color.WHITE);
+			casesTable.setBackground(Color.DARK_GRAY);
+		}
+		mainPan.add(new JScrollPane(casesTable));
 
 		// Now bottom buttons "Add" and "Add examples"
 		GridPanel downPan = new GridPanel();
 		downPan.setGridDimensions("2,1");
 		GridPanel downUpPan = new GridPanel();
-		downUpPan.setGridDimensions("2,2");
+		downUpPan.setGridDimensions("4,2");
 		Action act = disp.getAction(ActID.actAddTestCase);
 		JButton addBut = new JButton(act);
 		downUpPan.add(addBut);
+		act = disp.getAction(ActID.actEditTestCase);
+		JButton editBut = new JButton(act);
+		downUpPan.add(editBut);
+		act = disp.getAction(ActID.actDeleteTestCase);
+		JButton delBut = new JButton(act);
+		downUpPan.add(delBut);
 		act = disp.getAction(ActID.actAddExTestCases);
 		JButton addExBut = new JButton(act);
 		downUpPan.add(addExBut);
+		act = disp.getAction(ActID.actImportTestCases);
+		JButton importBut = new JButton(act);
+		downUpPan.add(importBut);
 
 		act = disp.getAction(ActID.actDisableAllTestCases);
 		JButton disAllBut = new JButton(act);
@@ -577,6 +690,10 @@ public final class TestCasesAction extends DefaultAction
 		JButton enAllBut = new JButton(act);
 		downUpPan.add(enAllBut);
 
+		act = disp.getAction(ActID.actRunTestCase);
+		JButton runBut = new JButton(act);
+		downUpPan.add(runBut);
+
 		downPan.add(downUpPan);
 		JPanel downDownPan = new JPanel();
 		act = disp.getAction(ActID.actCloseTestCases);
@@ -838,36 +955,27 @@ public final class TestCasesAction extends DefaultAction
 	 */
 	private static void saveCaseParams()
 	{
+		int changed = caseNum;
 		if (-1 == caseNum) {
 		    // here we add test case
 		    cl.addTest(testCase);
+		    changed = cl.countTests() - 1;
 			// update and repack dialog
-			updateMainDlgControls(true);
+			updateMainDlgControls();
 		} else {
 		    // here we only change Test and thats all
 		    cl.setTest(caseNum, testCase);
+		    // the result of the last run was for the old test
+		    if (null != getResults())
+		        getResults().forgetTest(caseNum);
+		    updateMainDlgControls();
 		}
 
 		// do not forget to change code in TestPanel
-		updateTestPanel();
+		updateTestPanel(changed, changed, -1);
 		hideCaseDialog();
 	}
 	
-	/**
-	 * Saves the contents of test case checkboxes so that test cases are enabled
-	 * or disabled depending on what they say.
-	 */
-	private static void saveTestCasesEnabled()
-	{
-	    if (!ignoreTestCheckboxEvent) {
-            for (int i=0; i<enabledCheckBoxes.size(); i++) {
-                cl.getTest(i).setDisabled( ! enabledCheckBoxes.get(i).isSelected() );
-            }
-            // change code in TestPanel:
-            updateTestPanel();
-        }
-	}
-
 	/**
 	 * Opens dialog for adding new test case.
 	 */
@@ -918,10 +1026,13 @@ public final class TestCasesAction extends DefaultAction
 			return;
 
 		cl.removeTest(caseToDel);
+		if (null != getResults())
+		    getResults().removeTest(caseToDel);
 		// after changing testcases list we need to change TestPanel
+		// (test cases after the deleted one are renumbered)
 		// and change the appearance of the main dialog
-		updateTestPanel();
-		updateMainDlgControls(true);
+		updateTestPanel(caseToDel, cl.countTests() - 1, caseToDel);
+		updateMainDlgControls();
 	}
 
 	/**
@@ -932,29 +1043,63 @@ public final class TestCasesAction extends DefaultAction
 		// Parse the problem statement once again to find the example tests.
 		ClassDecl newClass = ClassDeclFactory.reparseClassDecl();
 
-		// For each test already in problem class, check if it came from examples.
-		for (int i = 0; cl.countTests() > i; ++i) {
-		    boolean found = false;
-		    for (int j = 0; newClass.countTests() > j; ++j) {
-		        if (newClass.getTest(j).equals(cl.getTest(i))) {
-		            found = true;
-		            break;
-		        }
-		    }
-			// if not exists then add it to new class
-		    if (!found) {
-		        newClass.addTest(cl.getTest(i));
-		    }
-		}
+		// Add each test already in problem class to new class unless it
+		// came from examples (new class finds it by content at once).
+		newClass.addNewTests(cl);
 
-		// Now move all tests from new class to now set
+		// Now move all tests from new class to now set, they may be in
+		// a different order, so results of the last run are dropped
 		cl.removeAllTests();
+		clearResults();
 		for (int i = 0; newClass.countTests() > i; ++i)
 		    cl.addTest(newClass.getTest(i));
 
 		// refilling TestPanel and recreating main dialog to show all test cases
 		updateTestPanel();
-		updateMainDlgControls(true);
+		updateMainDlgControls();
+	}
+
+	/**
+	 * Asks for a file or a directory with test cases and starts importing
+	 * them in background.
+	 *
+	 * @see     TestImport
+	 */
+	private static void importTestCases()
+	{
+		JFileChooser chooser = Dispatcher.getFileChooser();
+		int mode = chooser.getFileSelectionMode();
+		chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+		int res = chooser.showDialog(mainDlg, "Import");
+		chooser.setFileSelectionMode(mode);
+		if (JFileChooser.APPROVE_OPTION == res) {
+			File f = chooser.getSelectedFile();
+			TestImport.start(f, cl);
+		}
+	}
+
+	/**
+	 * Adds a batch of imported test cases that are not in class declaration
+	 * yet, shows them in main dialog and appends their code in TestPanel.
+	 *
+	 * @param target    Class declaration the test cases are imported to
+	 * @param tests     Test cases to add
+	 * @return          Number of test cases added, or -1 if the class
+	 *                  declaration changed and the import should stop
+	 */
+	static int addImportedTests(ClassDecl target, List<Test> tests)
+	{
+		if (cl != target)
+			return -1;
+		int first = cl.countTests();
+		for (Test t : tests)
+			cl.addNewTest(t);
+		if (cl.countTests() > first) {
+			if (null != casesModel)
+				casesModel.fireTableRowsInserted(first, cl.countTests() - 1);
+			updateTestPanel(first, cl.countTests() - 1, -1);
+		}
+		return cl.countTests() - first;
 	}
 
 	/**
@@ -962,14 +1107,7 @@ public final class TestCasesAction extends DefaultAction
 	 */
     private static void enableAllTestCases()
     {
-        ignoreTestCheckboxEvent = true;
-	    for (int i=0; i<enabledCheckBoxes.size(); i++) {
-	        enabledCheckBoxes.get(i).setSelected(true);
-	        cl.getTest(i).setDisabled(false);
-	    }
-	    ignoreTestCheckboxEvent = false;
-	    // change code in TestPanel:
-	    updateTestPanel();
+        setAllTestCasesDisabled(false);
     }
 
 	/**
@@ -977,15 +1115,70 @@ public final class TestCasesAction extends DefaultAction
 	 */
     private static void disableAllTestCases()
     {
-        ignoreTestCheckboxEvent = true;
-	    for (int i=0; i<enabledCheckBoxes.size(); i++) {
-	        enabledCheckBoxes.get(i).setSelected(false);
-	        cl.getTest(i).setDisabled(true);
-	    }
-	    ignoreTestCheckboxEvent = false;
-	    // change code in TestPanel:
-	    updateTestPanel();        
+        setAllTestCasesDisabled(true);
     }
+
+	/**
+	 * Enables or disables all test cases and changes the code of those that
+	 * were toggled in TestPanel.
+	 *
+	 * @param disabled      If test cases should be disabled
+	 */
+	private static void setAllTestCasesDisabled(boolean disabled)
+	{
+		int first = cl.countTests(), last = -1;
+		for (int i = 0; cl.countTests() > i; ++i) {
+			if (cl.getTest(i).isDisabled() != disabled) {
+				cl.getTest(i).setDisabled(disabled);
+				first = Math.min(first, i);
+				last = i;
+			}
+		}
+		updateMainDlgControls();
+		if (0 <= last)
+			updateTestPanel(first, last, -1);
+	}
+
+	/**
+	 * Shows the results of the last run of the tests in main dialog. Results
+	 * belong to the current class declaration and are shown only with it.
+	 *
+	 * @param results       Verdicts and times of the tests
+	 * @param merge         true to keep the results of the tests that weren't
+	 *                      run from the last run for the same class
+	 */
+	static void showResults(TestVerdict results, boolean merge)
+	{
+		if (merge && null != lastResults && lastResultsClass == ProblemContext.getCurrentClass())
+			results.keepResults(lastResults);
+		lastResults = results;
+		lastResultsClass = ProblemContext.getCurrentClass();
+		if (null != casesModel && cl == lastResultsClass)
+			casesModel.setResults(results);
+	}
+
+	/**
+	 * Drops the results of the last run, after the test cases were replaced
+	 * and the results no longer belong to them.
+	 */
+	static void clearResults()
+	{
+		lastResults = null;
+		lastResultsClass = null;
+		if (null != casesModel)
+			casesModel.setResults(null);
+	}
+
+	/**
+	 * Returns the results of the last run if they are for the test cases
+	 * being edited, or null.
+	 *
+	 * @return      Verdicts and times of the tests
+	 */
+	private static TestVerdict getResults()
+	{
+		return (cl == lastResultsClass)? lastResults: null;
+	}
 	
 	/**
 	 * Sets value of parameter in test case. Takes care about parameter numbers -
@@ -1009,6 +1202,7 @@ public final class TestCasesAction extends DefaultAction
 		// value can be erased by itself
 		if (holder != value) {
 			StringsUtil.reset(holder, value);
+			testCase.valuesChanged();
 		}
 	}
 
@@ -0,0 +1,160 @@
+package kawigi.cmd;
+import javax.swing.table.AbstractTableModel;
+
+import kawigi.problem.ClassDecl;
+import kawigi.problem.Test;
+import kawigi.util.TestVerdict;
+
+/**
+ *	Table of the test cases of a problem for the test cases editor, one row
+ *	per test case with its enabled flag, number, result of the last run and
+ *	the beginning of its input.
+ *
+ *	Everything is taken from the ClassDecl when a row is painted, so only the
+ *	rows that are visible cost anything, however many test cases there are.
+ **/
+@SuppressWarnings("serial")
+public class TestCasesTableModel extends AbstractTableModel
+{
+	public static final int ENABLED_COLUMN = 0;
+	public static final int TEST_COLUMN = 1;
+	public static final int VERDICT_COLUMN = 2;
+	public static final int TIME_COLUMN = 3;
+	public static final int INPUT_COLUMN = 4;
+	private static final String[] COLUMN_NAMES = {"On", "Test", "Verdict", "Time", "Input"};
+	/**
+	 *	Longest preview of the input shown in the table.
+	 **/
+	private static final int PREVIEW_LENGTH = 200;
+
+	/**
+	 *	Problem whose test cases are shown.
+	 **/
+	private ClassDecl cl;
+	/**
+	 *	Results of the last run of these test cases, or null.
+	 **/
+	private TestVerdict results;
+
+	/**
+	 *	Creates the table of test cases of <code>cl</code>.
+	 **/
+	public TestCasesTableModel(ClassDecl cl)
+	{
+		this.cl = cl;
+	}
+
+	/**
+	 *	Sets the results of the last run to show (null for none).
+	 **/
+	public void setResults(TestVerdict results)
+	{
+		this.results = results;
+		if (getRowCount() > 0)
+			fireTableRowsUpdated(0, getRowCount() - 1);
+	}
+
+	public int getRowCount()
+	{
+		return cl.countTests();
+	}
+
+	public int getColumnCount()
+	{
+		return COLUMN_NAMES.length;
+	}
+
+	public String getColumnName(int column)
+	{
+		return COLUMN_NAMES[column];
+	}
+
+	public Class<?> getColumnClass(int column)
+	{
+		return column == ENABLED_COLUMN ? Boolean.class : column == TEST_COLUMN ? Integer.class : String.class;
+	}
+
+	/**
+	 *	Only the enabled flag can be changed right in the table.
+	 **/
+	public boolean isCellEditable(int row, int column)
+	{
+		return column == ENABLED_COLUMN;
+	}
+
+	public Object getValueAt(int row, int column)
+	{
+		switch (column)
+		{
+			case ENABLED_COLUMN:
+				return !cl.getTest(row).isDisabled();
+			case TEST_COLUMN:
+				return row;
+			case VERDICT_COLUMN:
+			{
+				String v = (results == null) ? null : results.getVerdict(row);
+				return (v == null) ? "" : v;
+			}
+			case TIME_COLUMN:
+			{
+				double t = (results == null) ? -1 : results.getTime(row);
+				return (t < 0) ? "" : String.format("%.3f s", t);
+			}
+			default:
+				return getPreview(cl.getTest(row));
+		}
+	}
+
+	/**
+	 *	Enables or disables the test case.  Listeners get the update of the
+	 *	enabled column, so that they can change the testing code.
+	 **/
+	public void setValueAt(Object value, int row, int column)
+	{
+		if (column != ENABLED_COLUMN)
+			return;
+		boolean disabled = !((Boolean)value).booleanValue();
+		if (cl.getTest(row).isDisabled() == disabled)
+			return;
+		cl.getTest(row).setDisabled(disabled);
+		fireTableCellUpdated(row, column);
+	}
+
+	/**
+	 *	Returns the beginning of the parameters and the answer of the test
+	 *	case, in one line.
+	 **/
+	private static String getPreview(Test t)
+	{
+		StringBuilder sb = new StringBuilder();
+		StringBuilder[] params = t.getParameters();
+		for (int i=0; i<params.length && sb.length() < PREVIEW_LENGTH; i++)
+		{
+			if (i > 0)
+				sb.append(" | ");
+			append(sb, params[i]);
+		}
+		if (t.isWithAnswer() && sb.length() < PREVIEW_LENGTH)
+			append(sb.append(" -> "), t.getAnswer());
+		if (sb.length() > PREVIEW_LENGTH)
+		{
+			sb.setLength(PREVIEW_LENGTH);
+			sb.append("...");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 *	Appends no more of the value than fits in the preview, with line
+	 *	breaks replaced by spaces.
+	 **/
+	private static void append(StringBuilder sb, CharSequence val)
+	{
+		int end = Math.min(val.length(), PREVIEW_LENGTH + 1 - sb.length());
+		for (int i=0; i<end; i++)
+		{
+			char c = val.charAt(i);
+			sb.append((c == '\n' || c == '\r') ? ' ' : c);
+		}
+	}
+}
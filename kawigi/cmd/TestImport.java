@@ -0,0 +1,307 @@
+package kawigi.cmd;
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.util.*;
+import javax.swing.*;
+
+import kawigi.problem.ClassDecl;
+import kawigi.problem.Test;
+import kawigi.problem.TestReader;
+
+/**
+ *	Imports test cases in bulk from files.
+ *
+ *	Test cases are taken either from one file where they are separated by
+ *	empty lines, or from a directory where every "name.in" file has the
+ *	parameters of one test case and "name.out" (or "name.ans") next to it has
+ *	its answer.  The format of values is described in TestReader.
+ *
+ *	Files are read and checked on a background thread, and test cases are
+ *	handed to the test cases editor in batches, so that tens of thousands of
+ *	them are never in memory at once and Swing stays responsive.  Malformed
+ *	test cases are reported to the log and skipped, test cases that are
+ *	already in the problem are skipped silently.
+ **/
+public class TestImport implements Runnable
+{
+	/**
+	 *	Extension of input files in a directory.
+	 **/
+	public static final String INPUT_EXTENSION = ".in";
+	/**
+	 *	Extensions of answer files in a directory, in the order of preference.
+	 **/
+	public static final String[] ANSWER_EXTENSIONS = {".out", ".ans"};
+	/**
+	 *	Number of test cases handed to Swing at once.
+	 **/
+	private static final int BATCH_SIZE = 500;
+	/**
+	 *	Number of errors that are reported one by one.
+	 **/
+	private static final int MAX_ERRORS_SHOWN = 10;
+
+	/**
+	 *	The import in progress, if any.
+	 **/
+	private static TestImport current;
+
+	/**
+	 *	File or directory to import from.
+	 **/
+	private File source;
+	/**
+	 *	Problem to import to.
+	 **/
+	private ClassDecl target;
+	/**
+	 *	Test cases read and not yet handed to Swing.
+	 **/
+	private List<Test> batch = new ArrayList<Test>();
+	/**
+	 *	Counters for the progress and the final report.
+	 **/
+	private int read, added, errors;
+	/**
+	 *	Set when the problem changed and the import has to stop.
+	 **/
+	private boolean cancelled;
+
+	private TestImport(File source, ClassDecl target)
+	{
+		this.source = source;
+		this.target = target;
+	}
+
+	/**
+	 *	Returns true if an import is in progress.
+	 **/
+	public static synchronized boolean isRunning()
+	{
+		return current != null;
+	}
+
+	/**
+	 *	Starts importing test cases from the file or directory to the problem
+	 *	unless an import is already in progress.
+	 **/
+	public static void start(File source, ClassDecl target)
+	{
+		TestImport imp = new TestImport(source, target);
+		synchronized (TestImport.class)
+		{
+			if (current != null)
+				return;
+			current = imp;
+		}
+		Dispatcher.logln("Importing test cases from " + source.getPath() + "...");
+		Thread t = new Thread(imp, "KawigiEdit test import");
+		t.setDaemon(true);
+		t.start();
+		Dispatcher.getGlobalDispatcher().UIRefresh();
+	}
+
+	/**
+	 *	Reads all test cases.
+	 **/
+	public void run()
+	{
+		try
+		{
+			if (source.isDirectory())
+				readDirectory();
+			else
+				readFile();
+			flush();
+		}
+		catch (IOException ex)
+		{
+			log("Import of test cases failed: " + ex);
+		}
+		catch (InterruptedException ex)
+		{
+			cancelled = true;
+		}
+		finally
+		{
+			synchronized (TestImport.class)
+			{
+				current = null;
+			}
+			final String report = (cancelled ? "Import of test cases stopped: " : "Imported test cases: ")
+					+ read + " read, " + added + " added, " + (read - added) + " already there, " + errors + " malformed";
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					Dispatcher.logln(report);
+					Dispatcher.setStatus(report);
+					Dispatcher.getGlobalDispatcher().UIRefresh();
+				}
+			});
+		}
+	}
+
+	/**
+	 *	Reads test cases separated by empty lines from the source file.
+	 **/
+	private void readFile() throws IOException, InterruptedException
+	{
+		TestReader in = new TestReader(TestReader.open(source), source.getPath(), target.getMethod());
+		try
+		{
+			while (!cancelled)
+			{
+				Test t;
+				try
+				{
+					t = in.readTest();
+				}
+				catch (IllegalArgumentException ex)
+				{
+					error(ex.getMessage());
+					continue;
+				}
+				if (t == null)
+					break;
+				add(t);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 *	Reads test cases from pairs of input and answer files in the source
+	 *	directory, in the order of file names.
+	 **/
+	private void readDirectory() throws IOException, InterruptedException
+	{
+		String[] names = source.list();
+		if (names == null)
+			throw new IOException("Can't list " + source.getPath());
+		Arrays.sort(names, new Comparator<String>() {
+			public int compare(String a, String b) {
+				return compareNames(a, b);
+			}
+		});
+		for (int i=0; i<names.length && !cancelled; i++)
+		{
+			if (!names[i].endsWith(INPUT_EXTENSION))
+				continue;
+			File input = new File(source, names[i]);
+			String base = names[i].substring(0, names[i].length() - INPUT_EXTENSION.length());
+			File answer = null;
+			for (String ext : ANSWER_EXTENSIONS)
+				if (answer == null && new File(source, base + ext).isFile())
+					answer = new File(source, base + ext);
+			try
+			{
+				add(TestReader.readTest(input, answer, target.getMethod()));
+			}
+			catch (IllegalArgumentException ex)
+			{
+				error(ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 *	Compares file names so that numbers in them go in numeric order
+	 *	("2.in" before "10.in").
+	 **/
+	private static int compareNames(String a, String b)
+	{
+		int i = 0, j = 0;
+		while (i < a.length() && j < b.length())
+		{
+			char c = a.charAt(i), d = b.charAt(j);
+			if (Character.isDigit(c) && Character.isDigit(d))
+			{
+				int si = i, sj = j;
+				while (i < a.length() && Character.isDigit(a.charAt(i)))
+					i++;
+				while (j < b.length() && Character.isDigit(b.charAt(j)))
+					j++;
+				String x = a.substring(si, i).replaceFirst("^0+(?=.)", "");
+				String y = b.substring(sj, j).replaceFirst("^0+(?=.)", "");
+				if (x.length() != y.length())
+					return x.length() - y.length();
+				int res = x.compareTo(y);
+				if (res != 0)
+					return res;
+			}
+			else
+			{
+				if (c != d)
+					return c - d;
+				i++;
+				j++;
+			}
+		}
+		return (a.length() - i) - (b.length() - j);
+	}
+
+	/**
+	 *	Adds the test case to the current batch, handing the batch to Swing
+	 *	when it's full.
+	 **/
+	private void add(Test t) throws InterruptedException
+	{
+		batch.add(t);
+		read++;
+		if (batch.size() >= BATCH_SIZE)
+			flush();
+	}
+
+	/**
+	 *	Hands the current batch to the test cases editor and waits until it's
+	 *	added, so that batches don't pile up in memory.
+	 **/
+	private void flush() throws InterruptedException
+	{
+		if (batch.isEmpty())
+			return;
+		final List<Test> tests = batch;
+		batch = new ArrayList<Test>();
+		final int[] res = new int[1];
+		try
+		{
+			SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+					res[0] = TestCasesAction.addImportedTests(target, tests);
+				}
+			});
+		}
+		catch (InvocationTargetException ex)
+		{
+			throw new RuntimeException(ex.getCause());
+		}
+		if (res[0] < 0)
+			cancelled = true;
+		else
+			added += res[0];
+		Dispatcher.setStatus("Importing test cases: " + read + " read, " + added + " added...");
+	}
+
+	/**
+	 *	Counts a malformed test case and reports it if there weren't too many.
+	 **/
+	private void error(String msg)
+	{
+		errors++;
+		if (errors <= MAX_ERRORS_SHOWN)
+			log("Skipped malformed test case: " + msg);
+		else if (errors == MAX_ERRORS_SHOWN + 1)
+			log("More malformed test cases are skipped without notice");
+	}
+
+	private static void log(final String msg)
+	{
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				Dispatcher.logln(msg);
+			}
+		});
+	}
+}
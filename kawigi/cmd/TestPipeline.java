@@ -0,0 +1,535 @@
+package kawigi.cmd;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import javax.swing.*;
+
+import kawigi.problem.ClassDecl;
+import kawigi.language.EditorLanguage;
+import kawigi.properties.PrefFactory;
+import kawigi.util.ConsoleDisplay;
+import kawigi.util.ProcessContainer;
+import kawigi.util.StringsUtil;
+import kawigi.util.TestTimings;
+import kawigi.util.TestVerdict;
+import kawigi.widget.SimpleOutputComponent;
+
+/**
+ *	The Run Tests command, done in stages so the UI never waits for it.
+ *
+ *	Only the first stage (snapshot) runs on the event dispatch thread: it asks
+ *	the user anything that needs asking and copies everything the other
+ *	stages need out of the UI.  Save, compile, run and collect then run on a
+ *	background thread, and only their results (log lines, status, selected
+ *	tab) are handed back to Swing.  Every stage reports its progress in the
+ *	status area and its duration in the log, and the whole pipeline can be
+ *	cancelled at any point with the Kill button.
+ *
+ *	The same pipeline does Benchmark, which runs the program several times
+ *	and reports statistics of the running times instead of the verdicts, and
+ *	runs a single test case: the testing code takes the number of the test
+ *	case to run as its command line argument.
+ **/
+public class TestPipeline implements Runnable
+{
+	/**
+	 *	The pipeline currently in progress - we only allow one at a time, for
+	 *	the same reason we only ever ran one process at a time.
+	 **/
+	private static TestPipeline current;
+
+	private volatile boolean cancelled;
+	/**
+	 *	Number of times to run the program for Benchmark, 0 for Run Tests.
+	 **/
+	private int runs;
+	/**
+	 *	Number of the only test case to run, or -1 to run all of them.
+	 **/
+	private int onlyTest = -1;
+	/**
+	 *	Process of the current stage, if it has one.
+	 **/
+	private ProcessContainer proc;
+	/**
+	 *	Released when the process of the current stage is done or cancelled.
+	 **/
+	private CountDownLatch procFinished;
+
+	// Snapshot of everything the background stages need:
+	private File saveFile;
+	private String text;
+	/**
+	 *	Test cases for the test data file, or null if the code doesn't read it.
+	 **/
+	private byte[] testData;
+	private File testDataFile, shadowTestDataFile;
+	private File workDir;
+	private File compiledDir;
+	private String compileCommand;
+	private String runCommand;
+	private SimpleOutputComponent outc, comc, logc;
+	private JTabbedPane tabb;
+
+	/**
+	 *	Durations of the stages that were done, for the log.
+	 **/
+	private StringBuilder timings = new StringBuilder();
+	private long stageStart;
+
+	/**
+	 *	Returns true if a Run Tests pipeline is in progress.
+	 **/
+	public static synchronized boolean isRunning()
+	{
+		return current != null;
+	}
+
+	/**
+	 *	Cancels the pipeline in progress, killing its process if it has one.
+	 *
+	 *	On occasion the process can't be killed, and trying again probably
+	 *	won't help.  The pipeline then stops waiting for it and ignores the
+	 *	rest of its output, so that it finishes right away and the user can
+	 *	continue to work anyways.
+	 **/
+	public static synchronized void cancelCurrent()
+	{
+		if (current != null)
+			current.cancel();
+	}
+
+	/**
+	 *	Starts Run Tests - must be called on the event dispatch thread.
+	 **/
+	public static void start()
+	{
+		start(new TestPipeline());
+	}
+
+	/**
+	 *	Starts Benchmark - must be called on the event dispatch thread.
+	 **/
+	public static void startBenchmark()
+	{
+		TestPipeline p = new TestPipeline();
+		p.runs = PrefFactory.getPrefs().getInt(ActID.actBenchmarkRuns.preference, 10);
+		start(p);
+	}
+
+	/**
+	 *	Starts Run Tests for one test case only - must be called on the event
+	 *	dispatch thread.
+	 **/
+	public static void startTest(int test)
+	{
+		TestPipeline p = new TestPipeline();
+		p.onlyTest = test;
+		start(p);
+	}
+
+	private static void start(TestPipeline p)
+	{
+		synchronized (TestPipeline.class)
+		{
+			if (current != null)
+			{
+				String err = "Error: Can't compile while another process is running";
+				if (Dispatcher.getCompileComponent() != null)
+				{
+					Dispatcher.getCompileComponent().println(err);
+					if (Dispatcher.getTabbedPane() != null)
+						Dispatcher.getTabbedPane().setSelectedComponent(Dispatcher.getCompileComponent());
+				}
+				else
+					Dispatcher.logln(err);
+				return;
+			}
+			current = p;
+		}
+		if (!p.snapshot())
+		{
+			synchronized (TestPipeline.class)
+			{
+				if (current == p)
+					current = null;
+			}
+			Dispatcher.setStatus("");
+			return;
+		}
+		Thread t = new Thread(p, p.runs > 0 ? "KawigiEdit Benchmark" : p.onlyTest >= 0 ? "KawigiEdit Run Test" : "KawigiEdit Run Tests");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	private synchronized void cancel()
+	{
+		cancelled = true;
+		if (proc != null && !proc.isDone())
+			proc.kill();
+		if (procFinished != null)
+			procFinished.countDown();
+	}
+
+	/**
+	 *	Snapshot stage: asks about overwriting external changes and copies the
+	 *	code and settings.  Returns false if the user cancelled.
+	 **/
+	private boolean snapshot()
+	{
+		beginStage("Preparing");
+		ClassDecl cl = ProblemContext.getCurrentClass();
+		EditorLanguage lang = ProblemContext.getLanguage();
+		saveFile = LocalTestAction.getSaveFileObj();
+		if (cl == null || lang == null || saveFile == null)
+			return false;
+		if (!LocalTestAction.confirmSave(saveFile))
+			return false;
+		String source = LocalTestAction.getSolutionSource();
+		text = StringsUtil.toSystemLines(source);
+		workDir = PrefFactory.getPrefs().getWorkingDirectory();
+		compiledDir = BackgroundCompiler.getCompiledDirectory(source);
+		try
+		{
+			testData = LocalTestAction.getTestData();
+		}
+		catch (NumberFormatException ex)
+		{
+			Dispatcher.logln("Can't write test data file: " + ex.getMessage());
+			Dispatcher.setStatus("Malformed test case");
+			return false;
+		}
+		testDataFile = LocalTestAction.getTestDataFileObj(saveFile.getParentFile());
+		// The program runs in the shadow directory if it was compiled there,
+		// so the test data has to be there too.
+		if (compiledDir != null)
+			shadowTestDataFile = LocalTestAction.getTestDataFileObj(compiledDir);
+		compileCommand = lang.getCompileCommand(cl.getName(), workDir.getPath());
+		File runDir = (compiledDir == null) ? workDir : compiledDir;
+		runCommand = lang.getRunCommand(cl.getName(), runDir.getPath());
+		if (onlyTest >= 0)
+			runCommand += " " + onlyTest;
+		outc = Dispatcher.getOutputComponent();
+		comc = Dispatcher.getCompileComponent();
+		logc = Dispatcher.getLogComponent();
+		tabb = Dispatcher.getTabbedPane();
+		endStage("snapshot");
+		return true;
+	}
+
+	/**
+	 *	Runs the background stages.
+	 **/
+	public void run()
+	{
+		try
+		{
+			if (!save() || cancelled)
+				return;
+			if (!compile() || cancelled)
+				return;
+			if (runs > 0)
+				benchmark();
+			else
+				runTests();
+		}
+		finally
+		{
+			synchronized (TestPipeline.class)
+			{
+				if (current == this)
+					current = null;
+			}
+			final String summary = (runs > 0 ? "Benchmark: " : onlyTest >= 0 ? "Run Test " + onlyTest + ": " : "Run Tests: ") + timings + (cancelled ? " (cancelled)" : "");
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					Dispatcher.logln(summary);
+					Dispatcher.getGlobalDispatcher().UIRefresh();
+				}
+			});
+		}
+	}
+
+	/**
+	 *	Save stage.
+	 **/
+	private boolean save()
+	{
+		beginStage("Saving");
+		try
+		{
+			if (testData != null)
+			{
+				LocalTestAction.writeTestData(testDataFile, testData);
+				if (shadowTestDataFile != null)
+					LocalTestAction.writeTestData(shadowTestDataFile, testData);
+			}
+			final boolean written = LocalTestAction.writeSolution(saveFile, text);
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					if (written)
+					{
+						Dispatcher.logln("Saved " + saveFile.getAbsolutePath());
+						Dispatcher.getGlobalDispatcher().runCommand(ActID.actUpdateTestCases);
+					}
+				}
+			});
+		}
+		catch (final IOException ex)
+		{
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					Dispatcher.reportError(ex);
+					Dispatcher.setStatus("Can't save " + saveFile.getName());
+				}
+			});
+			return false;
+		}
+		endStage("save");
+		return true;
+	}
+
+	/**
+	 *	Compile stage.  Skipped if the background compiler already compiled
+	 *	this code or if there's no compile command.
+	 **/
+	private boolean compile()
+	{
+		if (compiledDir != null)
+		{
+			final String msg = "Using background compile in " + compiledDir.getPath();
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					Dispatcher.logln(msg);
+				}
+			});
+			return true;
+		}
+		if (compileCommand.equals(""))
+			return true;
+		beginStage("Compiling");
+		selectTab(comc);
+		int excode = execute(compileCommand, workDir, comc);
+		endStage("compile");
+		if (cancelled)
+			return false;
+		final boolean ok = excode == 0;
+		final String msg = "Compile command finished (exit code = " + excode + ").";
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				Dispatcher.logln(msg);
+				if (ok)
+				{
+					if (comc != null)
+						comc.println("Compiling finished");
+				}
+				else
+				{
+					Dispatcher.setStatus("Compiling errors");
+					if (comc != null)
+						comc.println("Compiling errors");
+					else if (logc != null && tabb != null)
+						tabb.setSelectedComponent(logc);
+				}
+			}
+		});
+		return ok;
+	}
+
+	/**
+	 *	Run and collect stages.
+	 **/
+	private void runTests()
+	{
+		beginStage(onlyTest >= 0 ? "Running test " + onlyTest : "Running tests");
+		selectTab((outc == null) ? comc : outc);
+		final TestVerdict verdict = new TestVerdict((outc == null) ? comc : outc);
+		final int ex = execute(runCommand, (compiledDir == null) ? workDir : compiledDir, verdict);
+		endStage("run");
+		if (cancelled)
+			return;
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				Dispatcher.logln("Run command finished (exit code = " + ex + ").");
+				Dispatcher.logln("Verdict: " + verdict.getSummary());
+				TestCasesAction.showResults(verdict, onlyTest >= 0);
+				Dispatcher.setStatus(verdict.getSummary() + (ex != 0 ? " (exit code " + ex + ")" : ""));
+				if (ex != 0 && tabb != null && comc == null && outc == null && logc != null)
+					tabb.setSelectedComponent(logc);
+			}
+		});
+	}
+
+	/**
+	 *	Benchmark stage: runs the program <code>runs</code> times, optionally
+	 *	pinned to one CPU so that the scheduler doesn't add noise, and shows
+	 *	statistics of the running time of every test.
+	 **/
+	private void benchmark()
+	{
+		beginStage("Benchmarking");
+		final SimpleOutputComponent display = (outc == null) ? comc : outc;
+		selectTab(display);
+		String command = runCommand;
+		String pin = PrefFactory.getPrefs().getBoolean(ActID.actBenchmarkPin.preference, false) ? getPinPrefix() : "";
+		command = pin + command;
+		TestTimings samples = new TestTimings();
+		int done = 0;
+		for (; done < runs && !cancelled; ++done)
+		{
+			Dispatcher.setStatus("Benchmark run " + (done + 1) + " of " + runs + "...");
+			int ex = execute(command, (compiledDir == null) ? workDir : compiledDir, samples);
+			if (ex != 0 && !cancelled)
+			{
+				final String msg = "Benchmark run " + (done + 1) + " failed (exit code = " + ex + "), use Run Tests to see why.";
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						Dispatcher.logln(msg);
+					}
+				});
+				break;
+			}
+		}
+		endStage("benchmark");
+		if (cancelled)
+			return;
+		final String header = "Benchmark: " + done + " runs" + (pin.length() > 0 ? ", " + pin.trim() : "")
+				+ ", times in seconds";
+		final String report = samples.getReport();
+		final String status = "Benchmarked " + samples.getTestCount() + " tests in " + done + " runs";
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if (display != null)
+				{
+					display.clear();
+					display.println(header);
+					display.print(report);
+				}
+				else
+					Dispatcher.logln(header + "\n" + report);
+				Dispatcher.setStatus(status);
+			}
+		});
+	}
+
+	/**
+	 *	Returns the command prefix that pins a program to the last CPU, or
+	 *	an empty string if <code>taskset</code> isn't available.
+	 **/
+	private static String getPinPrefix()
+	{
+		String path = System.getenv("PATH");
+		if (File.separatorChar != '/' || path == null)
+			return "";
+		for (String dir : path.split(File.pathSeparator))
+			if (new File(dir, "taskset").canExecute())
+				return "taskset -c " + (Runtime.getRuntime().availableProcessors() - 1) + " ";
+		return "";
+	}
+
+	/**
+	 *	Runs a command and waits until it's done and all its output is shown.
+	 *	Returns its exit code, or -1 if the pipeline was cancelled.
+	 **/
+	private int execute(final String command, File dir, final ConsoleDisplay display)
+	{
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				Dispatcher.logln("Run: " + command);
+			}
+		});
+		final CountDownLatch finished = new CountDownLatch(1);
+		ProcessContainer pc;
+		try
+		{
+			Process p = Runtime.getRuntime().exec(command, null, dir);
+			// A process that outlives the cancelled pipeline must not write to
+			// the panes that the next pipeline uses
+			ConsoleDisplay gate = (display == null) ? null : new ConsoleDisplay() {
+				public void print(String s) {
+					if (!cancelled)
+						display.print(s);
+				}
+				public void println(String s) {
+					if (!cancelled)
+						display.println(s);
+				}
+				public void clear() {
+					if (!cancelled)
+						display.clear();
+				}
+			};
+			pc = new ProcessContainer(p, gate, false, new Runnable() {
+				public void run() {
+					finished.countDown();
+				}
+			});
+		}
+		catch (final IOException ex)
+		{
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					Dispatcher.reportError(ex);
+				}
+			});
+			return -1;
+		}
+		synchronized (this)
+		{
+			proc = pc;
+			procFinished = finished;
+			if (cancelled)
+			{
+				pc.kill();
+				finished.countDown();
+			}
+		}
+		pc.start();
+		try
+		{
+			finished.await();
+		}
+		catch (InterruptedException ex)
+		{
+		}
+		synchronized (this)
+		{
+			proc = null;
+			procFinished = null;
+		}
+		// Don't wait for the exit code of a process that couldn't be killed
+		if (cancelled)
+			return -1;
+		return pc.endVal();
+	}
+
+	/**
+	 *	Shows the progress of a new stage.
+	 **/
+	private void beginStage(String name)
+	{
+		stageStart = System.nanoTime();
+		Dispatcher.setStatus(name + "...");
+	}
+
+	/**
+	 *	Remembers how long the current stage took.
+	 **/
+	private void endStage(String name)
+	{
+		if (timings.length() > 0)
+			timings.append(", ");
+		timings.append(name).append(' ').append((System.nanoTime() - stageStart) / 1000000).append(" ms");
+	}
+
+	private void selectTab(final JComponent tab)
+	{
+		if (tab == null || tabb == null)
+			return;
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				tabb.setSelectedComponent(tab);
+			}
+		});
+	}
+}
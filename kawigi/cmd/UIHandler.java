@@ -247,6 +247,8 @@ public class UIHandler extends DefaultHandler
 					Dispatcher.setTabbedPane((JTabbedPane)currentComponent);
 				} else if (name.equalsIgnoreCase("Timer")) {
 					Dispatcher.setProblemTimer((ProblemTimer)currentComponent);
+				} else if (name.equalsIgnoreCase("Status")) {
+					Dispatcher.setStatusLabel((JLabel)currentComponent);
 				} else if (name.equalsIgnoreCase("TemplateEditor")) {
 					Dispatcher.setTemplateEditor((EditorPanel)currentComponent);
 				} else {
@@ -6,11 +6,16 @@ import java.awt.event.MouseListener;
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.text.BadLocationException;
 import javax.swing.text.EditorKit;
 import javax.swing.text.Keymap;
+import javax.swing.text.StyledDocument;
 import javax.swing.text.View;
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.CompoundEdit;
 import javax.swing.undo.UndoManager;
 
 import kawigi.cmd.*;
@@ -190,6 +195,48 @@ public class CodePane extends JTextPane implements MouseListener, DocumentListen
 		}
 	}
 
+	/**
+	 *	Replaces several parts of the text as one edit, which is undone and
+	 *	redone at once.  <code>starts[i]</code> to <code>ends[i]</code> is
+	 *	replaced with <code>texts[i]</code>, the parts must be sorted and must
+	 *	not overlap.
+	 *
+	 *	Unlike <code>setText</code>, this leaves the rest of the text alone, so
+	 *	the caret, the scrolling and the undo history stay where they were.
+	 **/
+	public void replaceRanges(int[] starts, int[] ends, String[] texts) throws BadLocationException
+	{
+		if (starts.length == 0)
+			return;
+		final CompoundEdit edit = new CompoundEdit();
+		UndoableEditListener collector = new UndoableEditListener() {
+			public void undoableEditHappened(UndoableEditEvent e) {
+				edit.addEdit(e.getEdit());
+			}
+		};
+		StyledDocument doc = getStyledDocument();
+		doc.removeUndoableEditListener(undo);
+		doc.addUndoableEditListener(collector);
+		try
+		{
+			// From the end, so that the earlier parts don't move
+			for (int i=starts.length-1; i>=0; i--)
+			{
+				if (ends[i] > starts[i])
+					doc.remove(starts[i], ends[i] - starts[i]);
+				if (texts[i].length() > 0)
+					doc.insertString(starts[i], texts[i], null);
+			}
+		}
+		finally
+		{
+			doc.removeUndoableEditListener(collector);
+			doc.addUndoableEditListener(undo);
+			edit.end();
+			undo.addEdit(edit);
+		}
+	}
+
 	/**
 	 *	Listens to mouse events on the text pane, so it knows when to create the
 	 *	popup menu.
@@ -312,6 +359,9 @@ public class CodePane extends JTextPane implements MouseListener, DocumentListen
 		if (!Dispatcher.isAutoCodeEditing()) {
 		    lastEditTime = System.currentTimeMillis();
 		}
+		if (this == Dispatcher.getCodePane()) {
+		    BackgroundCompiler.sourceCodeChanged();
+		}
 	}
 	
 	/**
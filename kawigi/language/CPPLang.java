@@ -2,6 +2,7 @@ package kawigi.language;
 
 import java.io.File;
 
+import kawigi.problem.TestDataFile;
 import kawigi.properties.PrefFactory;
 import kawigi.util.StringsUtil;
 
@@ -29,12 +30,6 @@ public final class CPPLang extends EditorLanguage
 		return inst;
 	}
 
-    /**
-     * Array variable regex may appear as both pNum and tNum
-     * This variable is a quick hack:
-     **/
-	private final String sCombinedArrayPattern = "[tp]";
-
 	/**
 	 * Default constructor.
 	 */
@@ -48,10 +43,11 @@ public final class CPPLang extends EditorLanguage
 		sDefaultFileName = "$PROBLEM$.cpp";
 		sDefaultCompileCommand = "g++ $PROBLEM$.cpp";
 		sDefaultExecuteCommand = '/' == File.separatorChar ? "./a.out" : "$CWD$\\a.exe";
+		nBenchmarkJudgeMillis = 450;
 		sPrintPrefix = "cout << ";
 		sPrintPostfix = "";
 		sPrintlnPrefix = "cout << ";
-		sPrintlnPostfix = " << endl";
+		sPrintlnPostfix = " << '\\n'";
 		sPrintStrAdd = " << ";
 		sObjMethodCall = "->";
 		sDoubleAbsFunc = "fabs";
@@ -60,6 +56,8 @@ public final class CPPLang extends EditorLanguage
 		sDeleteObjOp = "delete ";
 		sStringsAdd = "";
 		sArrayParamVarPrefix = "t";
+		sFormatTimePrefix = "KawigiEdit_FormatTime(";
+		sFormatTimeSuffix = ")";
 	}
 
 	/*
@@ -158,7 +156,19 @@ public final class CPPLang extends EditorLanguage
 		text("#include <vector>").endLine();
         text("#include <ctime>").endLine();
 		text("#include <cmath>").endLine();
+		text("#include <cstdio>").endLine();
+		text("#include <cstdlib>").endLine();
+		if (isCpp11())
+			text("#include <chrono>").endLine();
 		text("using namespace std").endCodeLine();
+		// Formats time for printing, cout can't do it without changing the
+		// format of all doubles printed after it
+		text("string KawigiEdit_FormatTime(double seconds) {").endLine();
+		indentRight();
+			text("char buf[32]").endCodeLine();
+			text("sprintf(buf, \"%.6f\", seconds)").endCodeLine();
+			text("return buf").endCodeLine();
+		indentLeft().text("}").endLine();
 	}
 	
 	/**
@@ -215,7 +225,19 @@ public final class CPPLang extends EditorLanguage
 	}
 
 	/**
-	 * Method for adding code of remembering current time.
+	 * Returns <code>true</code> if generated code may use C++11.
+	 *
+	 * @return      If C++11 is allowed by settings
+	 */
+	private boolean isCpp11()
+	{
+		return PrefFactory.getPrefs().getBoolean(getPropertyCategory() + ".cpp11", true);
+	}
+
+	/**
+	 * Method for adding code of remembering current time. Wall time is taken
+	 * from <code>steady_clock</code> if C++11 is allowed, CPU time (and wall
+	 * time without C++11) - from <code>clock()</code>.
 	 *
 	 * @param varName   Name of variable to remember time in.
 	 *
@@ -223,7 +245,9 @@ public final class CPPLang extends EditorLanguage
 	 */
 	protected void rememberCurTime(String varName)
 	{
-		text("clock_t ").text(varName).text(" = clock()").endCodeLine();
+		if (isCpp11())
+			text("chrono::steady_clock::time_point ").text(varName).text(" = chrono::steady_clock::now()").endCodeLine();
+		text("clock_t ").text(varName).text(sCpuTimeSuffix).text(" = clock()").endCodeLine();
 	}
 
 	/**
@@ -239,10 +263,263 @@ public final class CPPLang extends EditorLanguage
 	 */
 	protected EditorLanguage timeDiff(String varStart, String varEnd)
 	{
-		text("double(").text(varEnd).text(" - ").text(varStart).text(") / CLOCKS_PER_SEC");
+		if (isCpp11())
+			text("chrono::duration<double>(").text(varEnd).text(" - ").text(varStart).text(").count()");
+		else
+			cpuTimeDiff(varStart, varEnd);
+		return this;
+	}
+
+	/**
+	 * Method for adding formula counting CPU time used between two moments
+	 * in seconds (double value).
+	 *
+	 * @param varStart  Variable name of starting moment
+	 * @param varEnd    Variable name of ending moment
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 *
+	 * @see             EditorLanguage#cpuTimeDiff(String, String)
+	 */
+	protected EditorLanguage cpuTimeDiff(String varStart, String varEnd)
+	{
+		text("double(").text(varEnd).text(sCpuTimeSuffix).text(" - ").text(varStart)
+			.text(sCpuTimeSuffix).text(") / CLOCKS_PER_SEC");
 		return this;
 	}
 
+	/**
+	 * Adds headers and functions reading values from test data file. The file
+	 * is read into memory with one call and numbers are copied from there as
+	 * they are, so this relies on little-endian machine with 4-byte int and
+	 * 8-byte long long and double (which is anything TopCoder runs on).
+	 *
+	 * @see             EditorLanguage#testDataReaders()
+	 */
+	protected void testDataReaders()
+	{
+		text("#include <cstdio>").endLine();
+		text("#include <cstdlib>").endLine();
+		text("#include <cstring>").endLine();
+		text("struct KawigiEdit_TestData {").endLine();
+		indentRight();
+			text("vector <char> buf").endCodeLine();
+			text("size_t pos").endCodeLine();
+		indentLeft().text("}").endCodeLine();
+		text("bool KawigiEdit_OpenTestData(KawigiEdit_TestData &in, const char *fileName) {").endLine();
+		indentRight();
+			text("FILE *f = fopen(fileName, \"rb\")").endCodeLine();
+			text("if (!f) return false").endCodeLine();
+			text("fseek(f, 0, SEEK_END)").endCodeLine();
+			text("long size = ftell(f)").endCodeLine();
+			text("fseek(f, 0, SEEK_SET)").endCodeLine();
+			text("in.buf.resize(size > 0 ? size : 1)").endCodeLine();
+			text("size_t got = size > 0 ? fread(&in.buf[0], 1, size, f) : 0").endCodeLine();
+			text("fclose(f)").endCodeLine();
+			text("in.buf.resize(got)").endCodeLine();
+			text("in.pos = 4").endCodeLine();
+			text("return got == size_t(size) && got >= 4 && memcmp(&in.buf[0], \"")
+					.text(TestDataFile.sMagic).text("\", 4) == 0").endCodeLine();
+		indentLeft().text('}').endLine();
+		text("void KawigiEdit_ReadBytes(KawigiEdit_TestData &in, void *res, size_t n) {").endLine();
+		indentRight();
+			text("if (in.buf.size() - in.pos < n) {").endLine();
+			indentRight();
+				text("cerr << \"Unexpected end of test data\" << endl").endCodeLine();
+				text("exit(1)").endCodeLine();
+			indentLeft().text('}').endLine();
+			text("if (n > 0) memcpy(res, &in.buf[in.pos], n)").endCodeLine();
+			text("in.pos += n").endCodeLine();
+		indentLeft().text('}').endLine();
+		for (EditorDataType type : EditorDataType.values()) {
+			funcDefPrefix(type).text(sTestDataReadFuncPrefix).text(type.name())
+					.text("(KawigiEdit_TestData &in) {").endLine();
+			indentRight();
+			if (type.isArrayType()) {
+				EditorDataType elem = type.getPrimitiveType();
+				text(getTypeName(type)).text(" res(").text(sTestDataReadFuncPrefix).text("Integer(in))").endCodeLine();
+				text("for (int i = 0; int(res.size()) > i; ++i) res[i] = ")
+						.text(sTestDataReadFuncPrefix).text(elem.name()).text("(in)").endCodeLine();
+			}
+			else if (type.isString()) {
+				text("int n").endCodeLine();
+				text("KawigiEdit_ReadBytes(in, &n, sizeof(n))").endCodeLine();
+				text("string res(n, ' ')").endCodeLine();
+				text("if (!res.empty()) KawigiEdit_ReadBytes(in, &res[0], res.size())").endCodeLine();
+			}
+			else if (type.isType(EditorDataType.Boolean)) {
+				text("char c").endCodeLine();
+				text("KawigiEdit_ReadBytes(in, &c, 1)").endCodeLine();
+				text("bool res = c != 0").endCodeLine();
+			}
+			else {
+				text(getTypeName(type)).text(" res").endCodeLine();
+				text("KawigiEdit_ReadBytes(in, &res, sizeof(res))").endCodeLine();
+			}
+			text("return res").endCodeLine();
+			indentLeft().text('}').endLine();
+		}
+	}
+
+	/**
+	 * Adds functions of the watchdog. It's the real-time interval timer of
+	 * POSIX systems, when it runs out the process exits from the signal
+	 * handler. Only async-signal-safe calls may be made there, so the message
+	 * is formatted when the watchdog is armed and the handler just writes it
+	 * past <code>cout</code>, which holds nothing of ours at that time. On
+	 * Windows the functions do nothing, and only the process timeout of
+	 * KawigiEdit stops a test running too long.
+	 *
+	 * @see             EditorLanguage#watchdogFunctions()
+	 */
+	protected void watchdogFunctions()
+	{
+		text("#ifndef _WIN32").endLine();
+		text("#include <csignal>").endLine();
+		text("#include <sys/time.h>").endLine();
+		text("#include <unistd.h>").endLine();
+		text("char KawigiEdit_WatchdogMessage[256]").endCodeLine();
+		text("int KawigiEdit_WatchdogLength").endCodeLine();
+		text("void KawigiEdit_WatchdogAlarm(int) {").endLine();
+		indentRight();
+			text("if (write(1, KawigiEdit_WatchdogMessage, KawigiEdit_WatchdogLength) < 0) {}").endLine();
+			text("_exit(1)").endCodeLine();
+		indentLeft().text('}').endLine();
+		text("void KawigiEdit_SetWatchdog(double seconds) {").endLine();
+		indentRight();
+			text("itimerval t").endCodeLine();
+			text("t.it_interval.tv_sec = t.it_interval.tv_usec = 0").endCodeLine();
+			text("t.it_value.tv_sec = long(seconds)").endCodeLine();
+			text("t.it_value.tv_usec = long((seconds - long(seconds)) * 1e6)").endCodeLine();
+			text("setitimer(ITIMER_REAL, &t, 0)").endCodeLine();
+		indentLeft().text('}').endLine();
+		text("#endif").endLine();
+		text("void ").text(sWatchdogStartFuncName).text("(int testNum, double seconds) {").endLine();
+		text("#ifndef _WIN32").endLine();
+		indentRight();
+			text("KawigiEdit_WatchdogLength = snprintf(KawigiEdit_WatchdogMessage, sizeof(KawigiEdit_WatchdogMessage), ")
+					.text("\"Test %d: no answer after %g seconds, testing stopped\\nFAIL the timeout\\n\\nSome of the test cases had errors.\\n\", testNum, seconds)").endCodeLine();
+			text("signal(SIGALRM, KawigiEdit_WatchdogAlarm)").endCodeLine();
+			text("KawigiEdit_SetWatchdog(seconds)").endCodeLine();
+		indentLeft().text("#endif").endLine();
+		text('}').endLine();
+		text("void ").text(sWatchdogStopFuncName).text("() {").endLine();
+		text("#ifndef _WIN32").endLine();
+		indentRight();
+			text("KawigiEdit_SetWatchdog(0)").endCodeLine();
+		indentLeft().text("#endif").endLine();
+		text('}').endLine();
+	}
+
+	/**
+	 * Unties <code>cout</code> from C stdio, so that it's buffered on its
+	 * own. Lines are ended with '\n' instead of <code>endl</code>, so nothing
+	 * is flushed until <code>flushOutput</code>.
+	 *
+	 * @see             EditorLanguage#bufferOutput()
+	 */
+	protected void bufferOutput()
+	{
+		text("ios::sync_with_stdio(false)").endCodeLine();
+	}
+
+	/**
+	 * Adds code flushing <code>cout</code>.
+	 *
+	 * @see             EditorLanguage#flushOutput()
+	 */
+	protected void flushOutput()
+	{
+		text("cout.flush()").endCodeLine();
+	}
+
+	/**
+	 * Adds code reading the number of the only test case to run from
+	 * <code>argv</code>.
+	 *
+	 * @see             EditorLanguage#readOnlyTest()
+	 */
+	protected void readOnlyTest()
+	{
+		text(sOnlyTestVarName).text(" = argc > 1 ? atoi(argv[1]) : -1").endCodeLine();
+	}
+
+	/**
+	 * Adds the length of array variable, converted to <code>int</code> so
+	 * that it can be compared and subtracted safely.
+	 *
+	 * @param arrayName Name of array variable
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 *
+	 * @see             EditorLanguage#arrayLen(String)
+	 */
+	protected EditorLanguage arrayLen(String arrayName)
+	{
+		return text("int(").text(arrayName).text(sArrayLenFunc).text(')');
+	}
+
+	/**
+	 * Adds the length of string variable as <code>int</code>.
+	 *
+	 * @param varName   Name of string variable
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 *
+	 * @see             EditorLanguage#stringLen(String)
+	 */
+	protected EditorLanguage stringLen(String varName)
+	{
+		return arrayLen(varName);
+	}
+
+	/**
+	 * Adds the beginning of string variable.
+	 *
+	 * @param varName   Name of string variable
+	 * @param countName Name of variable with the number of characters taken
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 *
+	 * @see             EditorLanguage#stringHead(String, String)
+	 */
+	protected EditorLanguage stringHead(String varName, String countName)
+	{
+		return text(varName).text(".substr(0, ").text(countName).text(')');
+	}
+
+	/**
+	 * Adds the end of string variable.
+	 *
+	 * @param varName   Name of string variable
+	 * @param countName Name of variable with the number of characters taken
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 *
+	 * @see             EditorLanguage#stringTail(String, String)
+	 */
+	protected EditorLanguage stringTail(String varName, String countName)
+	{
+		return text(varName).text(".substr(").stringLen(varName).text(" - ").text(countName).text(')');
+	}
+
+	/**
+	 * Adds code opening test data file.
+	 *
+	 * @param fileName  Name of test data file
+	 *
+	 * @see             EditorLanguage#openTestData(String)
+	 */
+	protected void openTestData(String fileName)
+	{
+		text("KawigiEdit_TestData ").text(sTestDataVarName).endCodeLine();
+		text("if (!KawigiEdit_OpenTestData(").text(sTestDataVarName).text(", \"").text(fileName).text("\")) {").endLine();
+		indentRight();
+			text("cerr << \"Can't read test cases from ").text(fileName).text("\" << endl").endCodeLine();
+			text("return 1").endCodeLine();
+		indentLeft().text('}').endLine();
+	}
+
 	/**
 	 * Adds header of main procedure.
 	 *
@@ -250,7 +527,7 @@ public final class CPPLang extends EditorLanguage
 	 */
 	protected void mainSubDef()
 	{
-		text("int main() {");
+		text("int main(int argc, char *argv[]) {");
 		super.mainSubDef();
 	}
 
@@ -360,16 +637,20 @@ public final class CPPLang extends EditorLanguage
 		super.escapeSequences(val, type);
 		// Removing the posibility of trigraph interpretation
 		// We don't need any trigraphs at all
-		for (int i = 0; val.length() > i; ++i) {
-			if ('?' == val.charAt(i)) {
-				++i;
-				if (val.length() > i && '?' == val.charAt(i)) {
-					// I deliberately insert one space to make this sequence different
-					// from VB quote escaping
-					val.insert(i, "\" \"");
-				}
+		if (0 > val.indexOf("??"))
+			return;
+		int len = val.length();
+		StringBuilder res = new StringBuilder(len + 16);
+		for (int i = 0; len > i; ++i) {
+			char c = val.charAt(i);
+			if ('?' == c && 0 < i && '?' == val.charAt(i - 1)) {
+				// I deliberately insert one space to make this sequence different
+				// from VB quote escaping
+				res.append("\" \"");
 			}
+			res.append(c);
 		}
+		StringsUtil.reset(val, res);
 	}
 
 	/**
@@ -421,49 +702,60 @@ public final class CPPLang extends EditorLanguage
 	{
 		assert type.isString();
 		// Return double question marks back
-		for (int i = 0; val.length() > i; ++i) {
+		if (0 > val.indexOf("?\" \"?")) {
+			super.unescapeSequences(val, type);
+			return;
+		}
+		int len = val.length();
+		StringBuilder res = new StringBuilder(len);
+		for (int i = 0; len > i; ++i) {
 			char c = val.charAt(i);
+			res.append(c);
 			if ('?' == c) {
-				++i;
 				// In escapeSequences we inserted three characters so here we'll check
-				// all three
-				if (val.length() > i + 3 && '"' == val.charAt(i)
-				        && ' ' == val.charAt(i + 1) && '"' == val.charAt(i + 2)
-						&& '?' == val.charAt(i + 3))
-				{
-					val.deleteCharAt(i);
-					val.deleteCharAt(i);
-					val.deleteCharAt(i);
-					--i;
-				}
+				// all three, and the question mark after them is checked next
+				if (StringsUtil.isStringAt(val, "\" \"?", i + 1))
+					i += 3;
+				else if (len > i + 1)
+					res.append(val.charAt(++i));
 			}  // if ('?' == c)
 		}
+		StringsUtil.reset(val, res);
 		// I deliberately put call to main process here. In such manner we ensure
 		// that we don't change string "?\" \"?"
 		super.unescapeSequences(val, type);
 	}
 
 	/**
-	 * Gets regular expression for finding test case parameter initialization.
+	 * Finds test case parameter initialization in the line of test code.
 	 * C++ needs to support both the previous test case format (Including taking
 	 * care of the empty vector special case). And also code generated taking
-	 * advantage of c++11 support.
+	 * advantage of c++11 support. Arrays in the previous format are initialized
+	 * as "t0[]" and then copied to "p0", this is found by the common code.
 	 *
-	 * @param num       Number of parameter
-	 * @param type      Type of parameter
-	 * @return          Regular expression for finding this parameter in code
+	 * @param code      Test code being parsed
+	 * @param start     Position of the first non-space character of the line
+	 * @param lineEnd   Position of the end of the line
+	 * @param bounds    Array receiving bounds of the value
+	 * @return          Number of parameter or -1
 	 *
-	 * @see             EditorLanguage#getTestParamRegex(int, EditorDataType)
+	 * @see             EditorLanguage#findTestParam(CharSequence, int, int, int[])
 	 */
-	protected String getTestParamRegex(int num, EditorDataType type)
+	protected int findTestParam(CharSequence code, int start, int lineEnd, int[] bounds)
 	{
-		String res = super.getTestParamRegex(num, type);
-		if (type.isArrayType()) {
-            res = sCombinedArrayPattern + num + " *\\[? *\\]? *= *?(\\{.*?\\})"
-                  + sLineEnd + StringsUtil.sCRLFregex;
-
-			res += "|" + sTestParamVarPrefix + num + "\\.clear\\(\\) /\\*(\\{\\})\\*/"
-			            + sLineEnd + StringsUtil.sCRLFregex;
+		int res = super.findTestParam(code, start, lineEnd, bounds);
+		if (0 > res) {
+			// Empty vector: "p0.clear() /*{}*/;"
+			int dot = start;
+			while (lineEnd > dot && '.' != code.charAt(dot))
+				++dot;
+			String clear = ".clear() /*{}*/" + sLineEnd;
+			if (lineEnd > dot && StringsUtil.isStringAt(code, clear, dot)) {
+				res = parseTestParamNum(code, start, dot);
+				bounds[0] = dot + clear.indexOf('{');
+				bounds[1] = bounds[0] + 2;
+				bounds[2] = skipLineEnd(code, dot + clear.length());
+			}
 		}
 		return res;
 	}
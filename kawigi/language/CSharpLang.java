@@ -2,6 +2,8 @@ package kawigi.language;
 
 import java.io.File;
 
+import kawigi.problem.TestDataFile;
+
 
 /**
  * Class introducing language-dependent features for C#.
@@ -39,6 +41,7 @@ public final class CSharpLang extends EditorLanguage
 		sDefaultFileName = "$PROBLEM$.cs";
 		sDefaultCompileCommand = "csc $PROBLEM$.cs";
 		sDefaultExecuteCommand = '/' == File.separatorChar? "mono $PROBLEM$.exe": "$CWD$\\$PROBLEM$.exe";
+		nBenchmarkJudgeMillis = 600;
 	}
 
 	/*
@@ -122,7 +125,8 @@ public final class CSharpLang extends EditorLanguage
 	}
 
 	/**
-	 * Method for adding code of remembering current time.
+	 * Method for adding code of remembering current time. Wall time is taken
+	 * from <code>Stopwatch</code>, CPU time - from total processor time of the process.
 	 *
 	 * @param varName   Name of variable to remember time in.
 	 *
@@ -130,7 +134,9 @@ public final class CSharpLang extends EditorLanguage
 	 */
 	protected void rememberCurTime(String varName)
 	{
-		text("DateTime ").text(varName).text(" = DateTime.Now").endCodeLine();
+		text("long ").text(varName).text(" = System.Diagnostics.Stopwatch.GetTimestamp()").endCodeLine();
+		text("TimeSpan ").text(varName).text(sCpuTimeSuffix)
+			.text(" = System.Diagnostics.Process.GetCurrentProcess().TotalProcessorTime").endCodeLine();
 	}
 
 	/**
@@ -146,7 +152,142 @@ public final class CSharpLang extends EditorLanguage
 	 */
 	protected EditorLanguage timeDiff(String varStart, String varEnd)
 	{
-		return text('(').text(varEnd).text(" - ").text(varStart).text(").TotalSeconds");
+		return text("(double)(").text(varEnd).text(" - ").text(varStart)
+				.text(") / System.Diagnostics.Stopwatch.Frequency");
+	}
+
+	/**
+	 * Method for adding formula counting CPU time used between two moments
+	 * in seconds (double value).
+	 *
+	 * @param varStart  Variable name of starting moment
+	 * @param varEnd    Variable name of ending moment
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 *
+	 * @see             EditorLanguage#cpuTimeDiff(String, String)
+	 */
+	protected EditorLanguage cpuTimeDiff(String varStart, String varEnd)
+	{
+		return text('(').text(varEnd).text(sCpuTimeSuffix).text(" - ").text(varStart)
+				.text(sCpuTimeSuffix).text(").TotalSeconds");
+	}
+
+	/**
+	 * Adds functions reading values from test data file. The file is read
+	 * into memory as a whole and values are taken from there.
+	 *
+	 * @see             EditorLanguage#testDataReaders()
+	 */
+	protected void testDataReaders()
+	{
+		String reader = "System.IO.BinaryReader";
+		text("private static ").text(reader).text(" KawigiEdit_OpenTestData(string fileName) {").endLine();
+		indentRight();
+			text(reader).text(" res = new ").text(reader)
+					.text("(new System.IO.MemoryStream(System.IO.File.ReadAllBytes(fileName)))").endCodeLine();
+			text("if (System.Text.Encoding.ASCII.GetString(res.ReadBytes(4)) != \"").text(TestDataFile.sMagic)
+					.text("\") throw new System.IO.InvalidDataException(fileName + \" is not a test data file\")").endCodeLine();
+			text("return res").endCodeLine();
+		indentLeft().text('}').endLine();
+		for (EditorDataType type : EditorDataType.values()) {
+			funcDefPrefix(type).text(sTestDataReadFuncPrefix).text(type.name()).text('(')
+					.text(reader).text(" r) {").endLine();
+			indentRight();
+			if (type.isArrayType()) {
+				EditorDataType elem = type.getPrimitiveType();
+				text(getTypeName(type)).text(" res = new ").text(getTypeName(elem)).text("[r.ReadInt32()]").endCodeLine();
+				text("for (int i = 0; res.Length > i; ++i) res[i] = ")
+						.text(sTestDataReadFuncPrefix).text(elem.name()).text("(r)").endCodeLine();
+				text("return res").endCodeLine();
+			}
+			else if (type.isString())
+				text("return System.Text.Encoding.UTF8.GetString(r.ReadBytes(r.ReadInt32()))").endCodeLine();
+			else if (type.isType(EditorDataType.Boolean))
+				text("return r.ReadByte() != 0").endCodeLine();
+			else if (type.isType(EditorDataType.Integer))
+				text("return r.ReadInt32()").endCodeLine();
+			else if (type.isType(EditorDataType.Long))
+				text("return r.ReadInt64()").endCodeLine();
+			else
+				text("return r.ReadDouble()").endCodeLine();
+			indentLeft().text('}').endLine();
+		}
+	}
+
+	/**
+	 * Adds functions of the watchdog. It's a thread pool timer, when it runs
+	 * out the process exits without waiting for the solution.
+	 *
+	 * @see             EditorLanguage#watchdogFunctions()
+	 */
+	protected void watchdogFunctions()
+	{
+		text("private static System.Threading.Timer KawigiEdit_Watchdog").endCodeLine();
+		text("private static double KawigiEdit_WatchdogSeconds").endCodeLine();
+		text("private static void KawigiEdit_WatchdogAlarm(object testNum) {").endLine();
+		indentRight();
+			text("Console.WriteLine(\"Test \" + testNum + \": no answer after \" + KawigiEdit_WatchdogSeconds + \" seconds, testing stopped\")").endCodeLine();
+			text("Console.WriteLine(\"FAIL the timeout\")").endCodeLine();
+			text("Console.WriteLine(\"\")").endCodeLine();
+			text("Console.WriteLine(\"Some of the test cases had errors.\")").endCodeLine();
+			text("Console.Out.Flush()").endCodeLine();
+			text("Environment.Exit(1)").endCodeLine();
+		indentLeft().text('}').endLine();
+		text("private static void ").text(sWatchdogStartFuncName).text("(int testNum, double seconds) {").endLine();
+		indentRight();
+			text("KawigiEdit_WatchdogSeconds = seconds").endCodeLine();
+			text("KawigiEdit_Watchdog = new System.Threading.Timer(KawigiEdit_WatchdogAlarm, testNum, (long)(seconds * 1000), System.Threading.Timeout.Infinite)").endCodeLine();
+		indentLeft().text('}').endLine();
+		text("private static void ").text(sWatchdogStopFuncName).text("() {").endLine();
+		indentRight();
+			text("KawigiEdit_Watchdog.Dispose()").endCodeLine();
+		indentLeft().text('}').endLine();
+	}
+
+	/**
+	 * Replaces console output, which is flushed after every write, with
+	 * a writer that isn't.
+	 *
+	 * @see             EditorLanguage#bufferOutput()
+	 */
+	protected void bufferOutput()
+	{
+		text("Console.SetOut(new System.IO.StreamWriter(Console.OpenStandardOutput()))").endCodeLine();
+	}
+
+	/**
+	 * Adds code flushing console output.
+	 *
+	 * @see             EditorLanguage#flushOutput()
+	 */
+	protected void flushOutput()
+	{
+		text("Console.Out.Flush()").endCodeLine();
+	}
+
+	/**
+	 * Adds code reading the number of the only test case to run from
+	 * <code>args</code>.
+	 *
+	 * @see             EditorLanguage#readOnlyTest()
+	 */
+	protected void readOnlyTest()
+	{
+		text(sOnlyTestVarName).text(" = args.Length > 0 ? int.Parse(args[0]) : -1").endCodeLine();
+	}
+
+	/**
+	 * Adds code opening test data file.
+	 *
+	 * @param fileName  Name of test data file
+	 *
+	 * @see             EditorLanguage#openTestData(String)
+	 */
+	protected void openTestData(String fileName)
+	{
+		text("System.IO.BinaryReader ").text(sTestDataVarName)
+				.text(" = KawigiEdit_OpenTestData(\"").text(fileName).text("\")").endCodeLine();
 	}
 
 	/**
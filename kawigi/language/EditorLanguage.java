@@ -9,6 +9,7 @@ import kawigi.cmd.ProblemContext;
 import kawigi.properties.PrefFactory;
 import kawigi.properties.PrefProxy;
 import kawigi.problem.*;
+import kawigi.util.FileLoader;
 import kawigi.util.StringsUtil;
 import kawigi.KawigiEdit;
 
@@ -21,8 +22,13 @@ import kawigi.KawigiEdit;
  * of the class. First there are constants used as variable names in test code.
  * They are followed by constants containing language-specific structures and
  * operators.
+ *
+ * Languages are singletons, but the state of a generation or parsing lives
+ * in instance variables. So every public method that generates or parses
+ * code works on its own copy of the language made by <code>newContext()</code>
+ * and the singletons can be used from any thread, even from several at once.
  */
-public abstract class EditorLanguage
+public abstract class EditorLanguage implements Cloneable
 {
 	/*
 	  ============================================================================
@@ -55,6 +61,11 @@ public abstract class EditorLanguage
      * The name of the boolean variable that will disable the test case if true..
      */
     protected static final String sTestDisabled = "disabled";
+	/**
+	 * Name of the variable in main function that holds the number of the only
+	 * test case to run, or -1 if all test cases are run.
+	 */
+	protected static final String sOnlyTestVarName = "only_test";
 	/**
 	 * Name of function in test code that will run single test case and print
 	 * to the output all information about it.
@@ -96,6 +107,13 @@ public abstract class EditorLanguage
 	 * @see     #sStartTimeVarName
 	 */
 	protected static final String sEndTimeVarName = "endTime";
+	/**
+	 * Suffix added to names of time variables to get names of variables
+	 * holding CPU time of the process at the same moment.
+	 *
+	 * @see     #rememberCurTime(String)
+	 */
+	protected static final String sCpuTimeSuffix = "Cpu";
 	/**
 	 * Name of the variable in test case executor that will hold the result
 	 * of test execution - whether it is right or wrong.
@@ -111,6 +129,86 @@ public abstract class EditorLanguage
      * test was disabled.
      */
     private static final String sMainOneDisabledName = "tests_disabled";
+	/**
+	 * Comment put in test code that reads test cases from the data file.
+	 * Followed by the name of the file. Used at code loading to know that test
+	 * cases should be read from the file.
+	 */
+	private static final String sTestDataComment = "Test cases are read from";
+	/**
+	 * Name of the variable in main function that holds the reader of test
+	 * data file.
+	 */
+	protected static final String sTestDataVarName = "testData";
+	/**
+	 * Name of the variable in main function that holds the number of tests
+	 * in test data file.
+	 */
+	private static final String sTestCountVarName = "testCount";
+	/**
+	 * Prefix of names of functions in test code that read one value from
+	 * test data file. Name of the type in <code>EditorDataType</code> is
+	 * appended to it.
+	 */
+	protected static final String sTestDataReadFuncPrefix = "KawigiEdit_Read";
+	/**
+	 * Name of the constant in test case executor holding the time limit in
+	 * seconds. It's parsed at code loading, so editing its value in the code
+	 * sets the time limit of the problem.
+	 *
+	 * @see     #getTimeLimit(ClassDecl)
+	 */
+	private static final String sTimeLimitVarName = "KawigiEdit_TimeLimit";
+	/**
+	 * Name of the constant in test case executor holding the running time in
+	 * seconds after which test is reported as close to the time limit.
+	 */
+	private static final String sTimeWarningVarName = "KawigiEdit_TimeWarning";
+	/**
+	 * Name of the constant in test case executor holding the factor that
+	 * converts local running time to estimated running time on the judge.
+	 * It's declared only if the factor isn't 1.
+	 *
+	 * @see     #getJudgeTimePercent()
+	 */
+	private static final String sJudgeTimeVarName = "KawigiEdit_JudgeTimeFactor";
+	/**
+	 * Names of functions arming and disarming the watchdog that stops
+	 * testing if a test runs past its deadline.
+	 *
+	 * @see     #watchdogFunctions()
+	 */
+	protected static final String sWatchdogStartFuncName = "KawigiEdit_StartWatchdog";
+	protected static final String sWatchdogStopFuncName = "KawigiEdit_StopWatchdog";
+	/**
+	 * Names of the constants in test case executor holding the number of
+	 * first and last elements (or characters) of large arrays (or strings)
+	 * that are printed when values are abbreviated. They're declared only
+	 * if values are abbreviated.
+	 *
+	 * @see     #isAbbreviated()
+	 */
+	private static final String sPrintHeadVarName = "KawigiEdit_PrintHead";
+	private static final String sPrintTailVarName = "KawigiEdit_PrintTail";
+	/**
+	 * Name of variable in test case executor holding the index of the first
+	 * element of array answer that differs from desired answer.
+	 */
+	private static final String sFirstDiffVarName = "firstDiff";
+	/**
+	 * Time limit in milliseconds used when it isn't set for the language.
+	 */
+	public static final int nDefaultTimeLimit = 2000;
+	/**
+	 * Default percent of time limit after which test is reported as close to
+	 * the time limit.
+	 */
+	public static final int nDefaultTimeWarning = 70;
+	/**
+	 * Default percent of time limit after which test is stopped by the
+	 * watchdog.
+	 */
+	public static final int nDefaultTestDeadline = 300;
     /**
 	 * Maximum length of one line in generated code. In fact it can slightly vary
 	 * (for example it can be 1010 characters), but this is the number which
@@ -128,13 +226,13 @@ public abstract class EditorLanguage
 	 *
 	 * @see     #sTagPostfix
 	 */
-	private static final String sTagPrefix = "<%:";
+	private static final String sTagPrefix = Template.sTagPrefix;
 	/**
 	 * Postfix of the tag that will be replaced by some sensible information.
 	 *
 	 * @see     #sTagPrefix
 	 */
-	private static final String sTagPostfix = "%>";
+	private static final String sTagPostfix = Template.sTagPostfix;
 	/**
 	 * Name of the tag that will be replaced with name of the class in problem.
 	 */
@@ -354,6 +452,13 @@ public abstract class EditorLanguage
 	 * Code line continuation string. Necessary mostly for VB.
 	 */
 	protected String sLineContinued = "";
+	/**
+	 * Strings put in code around time in seconds to format it with the fixed
+	 * number of decimals when it's printed, so that short times aren't
+	 * printed in scientific notation.
+	 */
+	protected String sFormatTimePrefix = "(";
+	protected String sFormatTimeSuffix = ").ToString(\"F6\", System.Globalization.CultureInfo.InvariantCulture)";
 	/**
 	 * The prfix to array variables that will appear in test code before array
 	 * initializers. It is necessary mostly for C++ where vector initialization
@@ -401,6 +506,26 @@ public abstract class EditorLanguage
 	 * Pattern for extracting numbers from test parameters.
 	 */
 	private static final Pattern patNumberVal = Pattern.compile("[0-9.Ee-]+");
+	/**
+	 * Pattern for finding values of time limit constants in test code. It's
+	 * the same for all languages because only the part after the name of the
+	 * constant up to equal sign is different.
+	 *
+	 * @see     #sTimeLimitVarName
+	 * @see     #sTimeWarningVarName
+	 */
+	private static final Pattern patTimeLimit = Pattern.compile(
+			"(" + sTimeLimitVarName + "|" + sTimeWarningVarName + "|" + sJudgeTimeVarName
+			+ ")[^=\\r\\n]*=\\s*([0-9]+(?:\\.[0-9]*)?)");
+	/**
+	 * Pattern for finding values of constants used for abbreviation of
+	 * printed values in test code.
+	 *
+	 * @see     #sPrintHeadVarName
+	 * @see     #sPrintTailVarName
+	 */
+	private static final Pattern patPrintLimit = Pattern.compile(
+			"(" + sPrintHeadVarName + "|" + sPrintTailVarName + ")[^=\\r\\n]*=\\s*([0-9]+)");
 	//============================================================================
 
 	/*
@@ -420,6 +545,13 @@ public abstract class EditorLanguage
 	 * Value depends on current language.
 	 */
 	protected String sDefaultExecuteCommand = "";
+	/**
+	 * Time in milliseconds the reference benchmark of this language takes on
+	 * the judge. Value depends on current language.
+	 *
+	 * @see     #getBenchmarkSource()
+	 */
+	protected int nBenchmarkJudgeMillis = 1000;
 	//============================================================================
 
 	/*
@@ -440,21 +572,13 @@ public abstract class EditorLanguage
 	 *
 	 * @see     #unguardLongLines(StringBuilder)
 	 */
-	private Pattern patUnguardLongLines;
+	private volatile Pattern patUnguardLongLines;
 	/**
-	 * Pattern for finding test case beginning in code. Was put here to avoid
-	 * recreating it.
+	 * Parsed template of the language, loaded at the first use.
 	 *
-	 * @see     #getTestBeginPat()
+	 * @see     #getTemplate()
 	 */
-	private Pattern patTestBegin;
-    /**
-     * Pattern for finding if test case is disabled. Was put here to avoid
-     * recreating it.
-     *
-     * @see     #getDisabledTruePat
-     */
-    private Pattern patDisabledTrue;
+	private volatile Template template;
 	/**
 	 * Class that this generator currently working on.
 	 */
@@ -486,38 +610,14 @@ public abstract class EditorLanguage
 	/**
 	 * Buffer containing whole text of now parsed test code.
 	 */
-	private StringBuilder parsingTests;
-	/**
-	 * Matcher for finding beginning of test case in parsed test code.
-	 *
-	 * @see     #parsingTests
-	 * @see     #matTestEnd
-	 */
-	private Matcher matTestBegin;
-	/**
-	 * Matcher for finding ending of test case in parsed test code.
-	 *
-	 * @see     #parsingTests
-	 * @see     #matTestBegin
-	 */
-	private Matcher matTestEnd;
+	private CharSequence parsingTests;
 	/**
-	 * Matchers for finding parameters of test case in parsed test code.
+	 * Values of parameters of the test case being parsed, the last one is
+	 * for the expected result. Values not found yet are <code>null</code>.
 	 *
 	 * @see     #parsingTests
 	 */
-	private Matcher[] matParams;
-    /**
-     * Matcher to detect sTestDisabled = sTrue. (If the test case is disabled)
-     **/
-    private Matcher matDisabledTrue;
 	private StringBuilder[] parsedParams;
-	/**
-	 * Index of current parsing character in parsed test code.
-	 *
-	 * @see     #parsingTests
-	 */
-	private int curParseInd;
 	//============================================================================
 
 	/*
@@ -792,54 +892,54 @@ public abstract class EditorLanguage
 
 	/**
 	 * Returns the (default or customized) template for the current language.
+	 * Template is loaded and parsed only once, and then it's taken from cache
+	 * until another template file is set or the file changes.
 	 *
-	 * @return          Template string
+	 * @return          Parsed template
 	 **/
-	private StringBuilder getTemplate()
-	{
-		StringBuilder res = new StringBuilder(200);
-		BufferedReader in = null;
-		try {
-			// First let's try template that user set
-			PrefProxy prefs = PrefFactory.getPrefs();
-			String override = prefs.getProperty(getPropertyCategory() + ".override");
-			if (null != override) {
-				try {
-					File f = new File(override);
-					if (f.exists())
-						in = new BufferedReader(new FileReader(f));
-				}
-				catch (FileNotFoundException ex)
-				{
-					//In this case, we're just handling the error by using the resource version.
-				}
+	private Template getTemplate()
+	{
+		// First let's try template that user set
+		PrefProxy prefs = PrefFactory.getPrefs();
+		String override = prefs.getProperty(getPropertyCategory() + ".override");
+		File f = null == override? null: new File(override);
+		if (null != f && !f.exists())
+			f = null;
+		Template res = template;
+		if (null != res && res.isLoadedFrom(f))
+			return res;
+
+		// File can change while we read it, then it will be read once more next time
+		long lastModified = null == f? 0: f.lastModified();
+		long length = null == f? 0: f.length();
+		String text = null;
+		if (null != f) {
+			try {
+				text = FileLoader.load(f);
 			}
-			if (null == in) {
+			catch (IOException ex)
+			{
+				//In this case, we're just handling the error by using the resource version.
+				f = null;
+			}
+		}
+		try {
+			if (null == text) {
 				// So here we are trying to open our default template from resources
-				in = new BufferedReader(new InputStreamReader(
-						this.getClass().getResource("/rc/templates/" + toString() + ".ket"
-													).openStream()));
+				text = FileLoader.load(this.getClass().getResource("/rc/templates/" + toString() + ".ket").openStream());
 			}
-			String line;
-			// Let's read file line by line and append it to the output
-			while (null != (line = in.readLine()))
-				res.append(line).append('\n');
+			// Every line of the template ends with a line break
+			if (text.length() > 0 && text.charAt(text.length() - 1) != '\n')
+				text += '\n';
 		}
 		catch (IOException ex)
 		{
 			// Some io-exception - we can not do anything with it
 			ex.printStackTrace();
+			text = "";
 		}
-		finally
-		{
-			// In any case we need to close our reader if it was opened
-			if (null != in)
-				try {
-					in.close();
-				}
-				catch (IOException ex)
-				{}
-		}
+		res = new Template(f, lastModified, length, text);
+		template = res;
 		return res;
 	}
 
@@ -852,38 +952,52 @@ public abstract class EditorLanguage
 	 **/
 	public final Skeleton getSkeleton(ClassDecl cl)
 	{
-		// First get current template
-		StringBuilder output = getTemplate();
-		// Build the tag searcher over this template
-		String tagRegex = sTagPrefix + "\\s*([a-zA-Z0-9_-]+)\\s*" + sTagPostfix;
-		Matcher matcher = Pattern.compile(tagRegex).matcher(output);
+		// Template is cached in this object, not in the context
+		return newContext().makeSkeleton(cl, getTemplate());
+	}
 
+	/**
+	 * Does the work of <code>getSkeleton</code> on a context of its own.
+	 *
+	 * @param cl        Class definition for this problem
+	 * @param templ     Template for the current language
+	 * @return          Skeleton for the problem solver class
+	 **/
+	private Skeleton makeSkeleton(ClassDecl cl, Template templ)
+	{
+		StringBuilder output = new StringBuilder(templ.getChunk(0).length() + 500);
 		StringBuilder tag = new StringBuilder(50);
 		int caretIndex = 0;
-		int curInd = 0;
-		// Search all tags
-		while (matcher.find(curInd)) {
-			int start = matcher.start(), end = matcher.end();
-			tag.setLength(0);
-			tag.append(output, matcher.start(1), matcher.end(1));
+		// Put all text of the template and values of tags between it
+		for (int i = 0; templ.countTags() > i; ++i) {
+			output.append(templ.getChunk(i));
 			//Ok, one special case here: setting current caret position
-			if (StringsUtil.isEqual(tag, "set-caret")) {
-				caretIndex = start;
-				// Tag must be deleted
-				output.delete(start, end);
-				curInd = start;
-			}
+			if (Template.sSetCaretTagName.equals(templ.getTag(i)))
+				caretIndex = output.length();
 			else {
-				// Evaluate what have to be instead of a tag and replace this value
+				// Evaluate what have to be instead of a tag
+				StringsUtil.reset(tag, templ.getTag(i));
 				evaluateTag(tag, cl);
-				StringsUtil.replace(output, start, end, tag);
-				curInd = start + tag.length();
+				output.append(tag);
 			}
 		}
+		output.append(templ.getChunk(templ.countTags()));
 		// We are done
 		return new Skeleton(output, caretIndex);
 	}
 
+	/**
+	 * Removes all KawigiEdit tags from the code, for instance before it's sent
+	 * to TopCoder.
+	 *
+	 * @param code      Code with tags
+	 * @return          Code without tags
+	 **/
+	public static String removeTags(String code)
+	{
+		return Template.removeTags(code);
+	}
+
 	/**
 	 * Add to source code taken from TopCoder server testing-code tag in place where
 	 * it should be normally.
@@ -921,6 +1035,30 @@ public abstract class EditorLanguage
 	  ============================================================================
 		Now goes code related to test code generation.
 	 */
+	/**
+	 * Makes context for one call of generation or parsing: a copy of this
+	 * language with its own buffers and state. Settings of the language never
+	 * change after construction, so they are shared with the copy. Patterns
+	 * depending only on them are compiled before copying, so that they are
+	 * compiled once for the language and not for every copy.
+	 *
+	 * @return      New context
+	 */
+	private EditorLanguage newContext()
+	{
+		getUnguardLongLinesPat();
+		try {
+			EditorLanguage res = (EditorLanguage)clone();
+			res.sb = new StringBuilder(1000);
+			res.sCurIndent = new StringBuilder(5);
+			return res;
+		}
+		catch (CloneNotSupportedException e) {
+			// Can't happen, we are Cloneable
+			throw new InternalError(e.toString());
+		}
+	}
+
 	/**
 	 * Clears all data stored in class for generating new pack of test code.
 	 */
@@ -1175,7 +1313,7 @@ public abstract class EditorLanguage
 	 * @see     #print(boolean)
 	 * @see     #print()
 	 */
-	private EditorLanguage println()
+	protected final EditorLanguage println()
 	{
 		return print(true);
 	}
@@ -1187,7 +1325,7 @@ public abstract class EditorLanguage
 	 * @return  All methods of <code>EditorLanguage</code> related to test code generation
 	 *          return <code>this</code> to make possible convinient call chains
 	 */
-	private EditorLanguage printAdd()
+	protected final EditorLanguage printAdd()
 	{
 		return text(sPrintStrAdd);
 	}
@@ -1228,7 +1366,7 @@ public abstract class EditorLanguage
 	 * @see #endPrint(boolean)
 	 * @see #endPrint()
 	 */
-	private void endPrintln()
+	protected final void endPrintln()
 	{
 		endPrint(true);
 	}
@@ -1247,10 +1385,27 @@ public abstract class EditorLanguage
 		indentRight();
 	}
 
+	/**
+	 * Starts a loop with integer variable going from 0 to some number
+	 * not inclusive. The loop is ended with <code>iterLastLine</code>.
+	 *
+	 * @param varName       Name of the loop variable (declared by the loop)
+	 * @param countVarName  Name of the variable with number of iterations
+	 *
+	 * @see                 #iterLastLine()
+	 */
+	protected void countLoopFirstLine(String varName, String countVarName)
+	{
+		text("for (int ").text(varName).text(" = 0; ").text(countVarName).text(" > ")
+			.text(varName).text("; ++").text(varName).text(") {").endLine();
+		indentRight();
+	}
+
 	/**
 	 * Ends iteration over some array variable.
 	 *
 	 * @see #iterFirstLine(String)
+	 * @see #countLoopFirstLine(String, String)
 	 */
 	private void iterLastLine()
 	{
@@ -1425,11 +1580,28 @@ public abstract class EditorLanguage
 		text(typeName).text(' ').text(varName).endCodeLine();
 	}
 
+	/**
+	 * Declares the named constant of builtin type.
+	 *
+	 * @param varName   Name of the constant to be declared.
+	 * @param typeName  Type of the constant to be declared.
+	 * @param value     Value of the constant as it's written in code.
+	 */
+	protected void constDeclare(CharSequence varName, CharSequence typeName, CharSequence value)
+	{
+		text("const ").text(typeName).text(' ').text(varName).text(" = ").text(value).endCodeLine();
+	}
+
 	/**
 	 * Abstract method for adding code of remembering current time.
-	 * Necessary for checking running time of test cases.
+	 * Necessary for checking running time of test cases. Wall time must be
+	 * taken from monotonic high-resolution clock and remembered in variable
+	 * <code>varName</code>, CPU time used by the process - in variable
+	 * <code>varName + sCpuTimeSuffix</code>.
 	 *
 	 * @param varName   Name of variable to remember time in.
+	 *
+	 * @see             #sCpuTimeSuffix
 	 */
 	protected abstract void rememberCurTime(String varName);
 
@@ -1444,6 +1616,102 @@ public abstract class EditorLanguage
 	 */
 	protected abstract EditorLanguage timeDiff(String varStart, String varEnd);
 
+	/**
+	 * Abstract method for adding formula counting CPU time used between two
+	 * moments remembered by <code>rememberCurTime</code> in seconds
+	 * (double value).
+	 *
+	 * @param varStart  Variable name of starting moment (without
+	 *                  <code>sCpuTimeSuffix</code>)
+	 * @param varEnd    Variable name of ending moment (without
+	 *                  <code>sCpuTimeSuffix</code>)
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 *
+	 * @see             #timeDiff(String, String)
+	 */
+	protected abstract EditorLanguage cpuTimeDiff(String varStart, String varEnd);
+
+	/**
+	 * Abstract method for adding functions that read values from test data
+	 * file. There must be one function for each type in
+	 * <code>EditorDataType</code> named <code>sTestDataReadFuncPrefix</code>
+	 * plus the name of the type and taking the reader opened by
+	 * <code>openTestData</code> as the only parameter. Values are written in
+	 * the file in the format of <code>TestDataFile</code>.
+	 *
+	 * @see     #readTestData(EditorDataType)
+	 * @see     TestDataFile
+	 */
+	protected abstract void testDataReaders();
+
+	/**
+	 * Abstract method for adding functions of the watchdog guarding each test.
+	 * Function named <code>sWatchdogStartFuncName</code> takes the number of
+	 * the test and the deadline in seconds and arms the watchdog, function
+	 * named <code>sWatchdogStopFuncName</code> takes nothing and disarms it.
+	 * If the deadline passes while the watchdog is armed, it reports that the
+	 * test failed the timeout, prints the final verdict on the tests run so
+	 * far and ends the program. The solution can't be stopped safely in most
+	 * languages, so testing can't go on after that.
+	 *
+	 * @see     #getDeadlineFactor()
+	 */
+	protected abstract void watchdogFunctions();
+
+	/**
+	 * Abstract method for adding code at the start of main procedure that
+	 * makes standard output buffered if it isn't already. Output of testing
+	 * code is then written only when <code>flushOutput</code> says so, i.e.
+	 * before the solution is called and at the end of each test, so tests
+	 * with big values don't spend time on writing them line by line.
+	 *
+	 * @see     #flushOutput()
+	 */
+	protected abstract void bufferOutput();
+
+	/**
+	 * Abstract method for adding code that writes out everything printed
+	 * to buffered standard output.
+	 *
+	 * @see     #bufferOutput()
+	 */
+	protected abstract void flushOutput();
+
+	/**
+	 * Abstract method for adding code that sets <code>sOnlyTestVarName</code>
+	 * in main procedure to the number of test case given as the first command
+	 * line argument of the program, or to -1 if there are no arguments. Then
+	 * only this test case is run, so one test can be checked without running
+	 * all of them.
+	 *
+	 * @see     #sOnlyTestVarName
+	 */
+	protected abstract void readOnlyTest();
+
+	/**
+	 * Abstract method for adding code that declares variable
+	 * <code>sTestDataVarName</code> and opens test data file in it for reading.
+	 *
+	 * @param fileName  Name of test data file
+	 */
+	protected abstract void openTestData(String fileName);
+
+	/**
+	 * Adds expression reading next value of given type from test data file.
+	 *
+	 * @param type      Type of the value
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 *
+	 * @see             #testDataReaders()
+	 */
+	protected EditorLanguage readTestData(EditorDataType type)
+	{
+		return text(sTestDataReadFuncPrefix).text(type.name()).text('(')
+				.text(sTestDataVarName).text(')');
+	}
+
 	/**
 	 * Adds code for calling method <code>methodName</code> in object
 	 * <code>objName</code>.
@@ -1558,10 +1826,16 @@ public abstract class EditorLanguage
 	 * @param isAlone   Flag pointing if this variable will be printed inside of chain
 	 *                  of other printing (<code>false</code>) or must be printed
 	 *                  alone on a separate line (<code>true</code>)
+	 * @param isAbbreviated Flag pointing if only first and last elements of
+	 *                  large arrays (or characters of large strings) have to be
+	 *                  printed
+	 * @param fullCond  Condition under which abbreviated value is printed in
+	 *                  full anyway, or <code>null</code> if there's none
 	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
 	 *                  return <code>this</code> to make possible convinient call chains
 	 */
-	private EditorLanguage printVarValue(String varName, EditorDataType type, boolean isAlone)
+	private EditorLanguage printVarValue(String varName, EditorDataType type, boolean isAlone,
+	                                     boolean isAbbreviated, CharSequence fullCond)
 	{
 		// Major separation: arrays and simple types are printed differently
 		if (type.isArrayType()) {
@@ -1572,6 +1846,14 @@ public abstract class EditorLanguage
 			printAdd().text("\"{\"").endPrint();
 			// And iterate throw all array elements
 			iterFirstLine(varName);
+				// Elements in the middle of large array are skipped
+				if (isAbbreviated) {
+					iff();
+					if (null != fullCond)
+						text(fullCond).or();
+					text("i < ").text(sPrintHeadVarName).or().arrayLen(varName)
+							.text(" - i <= ").text(sPrintTailVarName).then();
+				}
 				// For each element after first we put comma to the output
 				iff().text("i > 0").then();
 					print().text("\",\"").endPrint();
@@ -1579,11 +1861,39 @@ public abstract class EditorLanguage
 				// Then printing value
 				print().printQuoteAdd(type).text(varName).arrayIndex()
 						.printAddQuote(type).endPrint();
+				// And the number of skipped elements in place of the first of them
+				if (isAbbreviated) {
+					elseIf().text('i').text(sEqualSign).text(sPrintHeadVarName).then();
+						iff().text("i > 0").then();
+							print().text("\",\"").endPrint();
+						endIf();
+						print().text("\"...(\"").printAdd().text('(').arrayLen(varName)
+								.text(" - ").text(sPrintHeadVarName).text(" - ").text(sPrintTailVarName)
+								.text(')').printAdd().text("\" more)\"").endPrint();
+					endIf();
+				}
 			iterLastLine();
 			// Then closing curly bracket and if printing alone
 			// then go to the next output line
 			print(isAlone).text("\"}\"");
 		}
+		else if (isAbbreviated && type.isString()) {
+			// Large strings are printed as their beginning and end
+			if (isAlone)
+				print().tabString();
+			printAdd().quoteString().endPrint();
+			iff();
+			if (null != fullCond)
+				text(fullCond).or();
+			stringLen(varName).text(" <= ").text(sPrintHeadVarName)
+					.text(" + ").text(sPrintTailVarName).then();
+				print().text(varName).endPrint();
+			els();
+				print().stringHead(varName, sPrintHeadVarName).printAdd().text("\"...\"")
+						.printAdd().stringTail(varName, sPrintTailVarName).endPrint();
+			endIf();
+			print(isAlone).quoteString();
+		}
 		else {
 			// If printing alone we have to add print operator
 			if (isAlone)
@@ -1699,9 +2009,65 @@ public abstract class EditorLanguage
 		return this;
 	}
 
+	/**
+	 * Adds the length of array variable as an integer value.
+	 *
+	 * @param arrayName Name of array variable
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 */
+	protected EditorLanguage arrayLen(String arrayName)
+	{
+		return text(arrayName).text(sArrayLenFunc);
+	}
+
+	/**
+	 * Adds the length of string variable as an integer value.
+	 *
+	 * @param varName   Name of string variable
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 */
+	protected EditorLanguage stringLen(String varName)
+	{
+		return text(varName).text(".Length");
+	}
+
+	/**
+	 * Adds the beginning of string variable.
+	 *
+	 * @param varName   Name of string variable
+	 * @param countName Name of variable with the number of characters taken,
+	 *                  which is not greater than the length of the string
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 */
+	protected EditorLanguage stringHead(String varName, String countName)
+	{
+		return text(varName).text(".Substring(0, ").text(countName).text(')');
+	}
+
+	/**
+	 * Adds the end of string variable.
+	 *
+	 * @param varName   Name of string variable
+	 * @param countName Name of variable with the number of characters taken,
+	 *                  which is not greater than the length of the string
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 */
+	protected EditorLanguage stringTail(String varName, String countName)
+	{
+		return text(varName).text(".Substring(").stringLen(varName).text(" - ").text(countName).text(')');
+	}
+
 	/**
 	 * Adds code for checking of equality of two variables. If variables are arrays
-	 * then they are checked element by element. Method respects TopCoder double
+	 * then they are checked element by element, and the index of the first
+	 * different element is stored in <code>sFirstDiffVarName</code>, which
+	 * must be initialized with -1. If arrays have different lengths and the
+	 * shorter one is the beginning of the longer one, it's the length of the
+	 * shorter one. Method respects TopCoder double
 	 * values tolerance. In generated code the assumption made that result variable
 	 * already initialized with value <code>true</code>.
 	 *
@@ -1720,13 +2086,18 @@ public abstract class EditorLanguage
 			// For arrays we first check array lengths
 			iff().arrayLensUnequal(varLeft, varRight).then();
 				text(resVarName).text(" = ").text(false).endCodeLine();
-			els();
-				// Then we iterate on all array elements and check them
-				iterFirstLine(varLeft);
-					iff().unequal(varLeft, varRight, type).then();
-						text(resVarName).text(" = ").text(false).endCodeLine();
-					endIf();
-				iterLastLine();
+			endIf();
+			// Then we iterate on all array elements and check them until
+			// the first difference, the end of the shorter array is one too
+			iterFirstLine(varLeft);
+				iff().text(sFirstDiffVarName).text(" < 0").and().text("(i >= ").arrayLen(varRight)
+						.or().unequal(varLeft, varRight, type).text(')').then();
+					text(resVarName).text(" = ").text(false).endCodeLine();
+					text(sFirstDiffVarName).text(" = i").endCodeLine();
+				endIf();
+			iterLastLine();
+			iff().text(sFirstDiffVarName).text(" < 0").and().arrayLensUnequal(varLeft, varRight).then();
+				text(sFirstDiffVarName).text(" = ").arrayLen(varLeft).endCodeLine();
 			endIf();
 		}
 		else {
@@ -1740,15 +2111,23 @@ public abstract class EditorLanguage
 	/**
 	 * Adds code for printing all test input information at the beginning of
 	 * test calling function.
+	 *
+	 * @param isFull    Flag pointing if this is the full input printed again
+	 *                  after the test failed (<code>true</code>) or input
+	 *                  printed before the test (<code>false</code>), which
+	 *                  can be abbreviated
 	 */
-	private void printTestInputInfo()
+	private void printTestInputInfo(boolean isFull)
 	{
 		// Print the test number
-		print().text("\"Test \"").printAdd().text(sTestNumVarName)
+		if (isFull)
+			print().text("\"Full input: [\"");
+		else
+			print().text("\"Test \"").printAdd().text(sTestNumVarName)
 								 .printAdd().text("\": [\"");
 		// Print all parameters coma-separated
 		for (int i = 0; paramTypes.length > i; ++i) {
-			printVarValue(paramVarNames[i], paramTypes[i], false);
+			printVarValue(paramVarNames[i], paramTypes[i], false, !isFull && isAbbreviated(), null);
 			if (paramTypes.length > i + 1)
 				printAdd().text("\",\"");
 		}
@@ -1801,26 +2180,50 @@ public abstract class EditorLanguage
 	private void printTestOutputInfo()
 	{
 		// First print the time that test took to execute
-		println().text("\"Time: \"").printAdd()
+		println().text("\"Time: \"").printAdd().text(sFormatTimePrefix)
 				.timeDiff(sStartTimeVarName, sEndTimeVarName)
-				.printAdd().text("\" seconds\"").endPrintln();
+				.text(sFormatTimeSuffix).printAdd();
+		if (isJudgeTimeScaled())
+			text("\" seconds (on judge about \"").printAdd().text(sFormatTimePrefix)
+					.judgeTimeDiff().text(sFormatTimeSuffix)
+					.printAdd().text("\" seconds, CPU: \"").printAdd();
+		else
+			text("\" seconds (CPU: \"").printAdd();
+		text(sFormatTimePrefix).cpuTimeDiff(sStartTimeVarName, sEndTimeVarName)
+				.text(sFormatTimeSuffix).printAdd().text("\" seconds, limit: \"").printAdd()
+				.text(sTimeLimitVarName).printAdd().text("\" seconds)\"").endPrintln();
+		// Check that returned answer is right before printing it, because
+		// wrong answers are printed in full
+		if (retType.isArrayType()) {
+			varDeclare(sFirstDiffVarName, getTypeName(EditorDataType.Integer));
+			text(sFirstDiffVarName).text(" = -1").endCodeLine();
+		}
+		iff().text(sHasAnswerVarName).then();
+			varsEqual(sAnswerVarName, retValVarName, retType, sCallerResVarName);
+		endIf();
+		boolean isAbbreviated = isAbbreviated();
+		String fullCond = sLogicalNot + sCallerResVarName;
 		// Then write the desired answer of this test
 		iff().text(sHasAnswerVarName).then();
 			println().text("\"Desired answer:\"").endPrintln();
-			printVarValue(retValVarName, retType, true);
+			printVarValue(retValVarName, retType, true, isAbbreviated, fullCond);
 		endIf();
 		// Write answer of problem solver
 		println().text("\"Your answer:\"").endPrintln();
-		printVarValue(sAnswerVarName, retType, true);
+		printVarValue(sAnswerVarName, retType, true, isAbbreviated, fullCond);
 
-		// Now check that returned answer is right
-		iff().text(sHasAnswerVarName).then();
-			varsEqual(sAnswerVarName, retValVarName, retType, sCallerResVarName);
-		endIf();
 		// And print our conclusion about it
 		iff().not().text(sCallerResVarName).then();
 			println().text("\"DOESN'T MATCH!!!!\"").endPrintln();
-		elseIf().timeDiff(sStartTimeVarName, sEndTimeVarName).text(" >= 2").then();
+			if (retType.isArrayType()) {
+				iff().text(sFirstDiffVarName).text(" >= 0").then();
+					println().text("\"First difference at index \"").printAdd()
+							.text(sFirstDiffVarName).endPrintln();
+				endIf();
+			}
+			if (isAbbreviated)
+				printTestInputInfo(true);
+		elseIf().judgeTimeDiff().text(" >= ").text(sTimeLimitVarName).then();
 			println().text("\"FAIL the timeout\"").endPrintln();
 			text(sCallerResVarName).text(" = ").text(false).endCodeLine();
 		elseIf().text(sHasAnswerVarName).then();
@@ -1828,11 +2231,32 @@ public abstract class EditorLanguage
 		els();
 			println().text("\"OK, but is it right?\"").endPrintln();
 		endIf();
+		// Warn if test passed but the solution is too slow for comfort
+		iff().text(sCallerResVarName).then();
+			iff().judgeTimeDiff().text(" >= ").text(sTimeWarningVarName).then();
+				println().text("\"Close to the time limit\"").endPrintln();
+			endIf();
+		endIf();
 
 		// Print empty line to the output for beautiness
 		println().text("\"\"").endPrintln();
 	}
 
+	/**
+	 * Adds formula counting estimated running time of the test on the judge
+	 * in seconds: measured time scaled by the judge time factor.
+	 *
+	 * @return      All methods of <code>EditorLanguage</code> related to test code generation
+	 *              return <code>this</code> to make possible convinient call chains
+	 */
+	private EditorLanguage judgeTimeDiff()
+	{
+		timeDiff(sStartTimeVarName, sEndTimeVarName);
+		if (isJudgeTimeScaled())
+			text(" * ").text(sJudgeTimeVarName);
+		return this;
+	}
+
 	/**
 	 * Adds full code for function that calls individual test case and prints
 	 * to output all information about it.
@@ -1854,13 +2278,21 @@ public abstract class EditorLanguage
 		// Finishing function header
 		funcDefPostfix(EditorDataType.Boolean);
 			// Separate parts of function thrown away to other methods
-			printTestInputInfo();
+			timeLimitConstants();
+			printTestInputInfo(false);
+			// Test input must be seen even if the solution crashes
+			flushOutput();
+			text(sWatchdogStartFuncName).text('(').text(sTestNumVarName).comma()
+					.text(sTimeLimitVarName).text(" * ").text(String.valueOf(getDeadlineFactor()))
+					.text(')').endCodeLine();
 			callProblemSolver();
+			text(sWatchdogStopFuncName).text("()").endCodeLine();
 			// Variable with function result must be declared here or earlier
 			// because it's used in printTestOutputInfo
 			varDeclare(sCallerResVarName, getTypeName(EditorDataType.Boolean));
 			text(sCallerResVarName).text(" = ").text(sTrue).endCodeLine();
 			printTestOutputInfo();
+			flushOutput();
 			// That's all, we can return
 			text("return ").text(sCallerResVarName).endCodeLine();
 		funcEnd();
@@ -1891,7 +2323,7 @@ public abstract class EditorLanguage
 	 *
 	 * @param num   Number of the test
 	 *
-	 * @see         #getTestBeginPat()
+	 * @see         #isTestBeginAt(int, int)
 	 */
 	protected void markTestBegin(int num)
 	{
@@ -1956,7 +2388,8 @@ public abstract class EditorLanguage
 
 	/**
 	 * Escapes all special characters in string constants or string-array constants.
-	 * All changes are made inplace. And all changes are made assuming that
+	 * Escaped constant is made in one pass into a new buffer and then replaces
+	 * the value. And all changes are made assuming that
 	 * elements in string array enclosed in quotes with escaped inner quotes
 	 * and backslashes.<br/>
 	 * Method now works around only quotes and backslashes because
@@ -1972,37 +2405,45 @@ public abstract class EditorLanguage
 	protected void escapeSequences(StringBuilder val, EditorDataType type)
 	{
 		assert type.isString();
+		int len = val.length();
+		StringBuilder res = new StringBuilder(len + len / 8 + 4);
 		boolean isInQuote = false;
-		for (int i = 0; val.length() > i; ++i) {
+		for (int i = 0; len > i; ++i) {
 			char c = val.charAt(i);
-			if ('\\' == c) {
-				// anyway we will skip next character
-				++i;
-				if (val.length() > i) {
-					c = val.charAt(i);
-					// if not in array element or next char is not escaped one
-					// then we need to escape this backslash
-					if (!isInQuote || '"' != c && '\\' != c)
-						val.insert(i, '\\');
-				}
-			}  // if ('\\' == c)
-			else if ('"' == c) {
-				if (type.isArrayType()) {
-					isInQuote = !isInQuote;
-				}
-				else {
-					// if it's not array, then all quotes won't be escaped
-					// and we have to escape them here
-					val.insert(i, '\\');
+			if ('\\' == c && len > i + 1) {
+				res.append(c);
+				char next = val.charAt(i + 1);
+				// if in array element and next char is escaped one
+				// then it's already escaped and we copy it as is,
+				// otherwise we need to escape this backslash
+				if (isInQuote && ('"' == next || '\\' == next)) {
+					res.append(next);
 					++i;
 				}
-			}  // if ('"' == c), if ('\\' == c) else
-		}  // for (int i = 0; val.length() > i; ++i)
+				else
+					res.append('\\');
+			}  // if ('\\' == c && len > i + 1)
+			else {
+				if ('"' == c) {
+					if (type.isArrayType()) {
+						isInQuote = !isInQuote;
+					}
+					else {
+						// if it's not array, then all quotes won't be escaped
+						// and we have to escape them here
+						res.append('\\');
+					}
+				}
+				res.append(c);
+			}  // if ('\\' == c && len > i + 1) else
+		}  // for (int i = 0; len > i; ++i)
+		StringsUtil.reset(val, res);
 	}
 
 	/**
 	 * Makes line wrapping in test case parameters if they are too long.
-	 * All changes are made inplace. Method works only for string and string array
+	 * Wrapped value is made in one pass into a new buffer and then replaces
+	 * the value. Method works only for string and string array
 	 * values. All strings in array and single string have to be enclosed in quotes.
 	 *
 	 * @param val   String parameter value that need to be wrapped
@@ -2011,60 +2452,56 @@ public abstract class EditorLanguage
 	 */
 	private void guardLongLines(StringBuilder val)
 	{
-		if (nMaxCodeLineLength < val.length()) {
-			StringBuilder sbTemp = new StringBuilder(20);
+		int len = val.length();
+		if (nMaxCodeLineLength < len) {
+			// Line wrapping outside of quotes, where string will not be torn and we
+			// need not additional quotes and string concatenation
+			String wrap = sLineContinued + StringsUtil.CRLF + sCurIndent
+			              // Make some additional indentation for beautiness
+			              + "\t\t";
+			// And line wrapping at the middle of the string
+			String quotedWrap = '"' + sStringsAdd + wrap + '"';
+			StringBuilder res = new StringBuilder(len + (len / nMaxCodeLineLength + 1) * quotedWrap.length());
 			boolean isInQuote = false;
 			int curLineStart = 0;
-			for (int i = 0; val.length() > i; ++i) {
+			for (int i = 0; len > i; ++i) {
 				char c = val.charAt(i);
+				res.append(c);
 				// I use a kind of hack here: I know that double quotes won't ever be here
 				// except the case of VB quoting and not in VB backslashes won't
 				// ever be here except the case of backslash or quote escaping.
 				// So in these cases of escaping and quoting I simply pass over
 				// escaped symbol.
-				if ('\\' == c && val.length() > i + 1) {
+				if ('\\' == c && len > i + 1) {
 					c = val.charAt(i + 1);
-					if ('\\' == c || '"' == c)
+					if ('\\' == c || '"' == c) {
+						res.append(c);
 						++i;
+					}
 				}
 				else if ('"' == c) {
-					if (val.length() > i + 1 && '"' == val.charAt(i + 1))
+					if (len > i + 1 && '"' == val.charAt(i + 1)) {
+						res.append('"');
 						++i;
+					}
 					else
 						isInQuote = !isInQuote;
 				}
-				if (nMaxCodeLineLength <= i - curLineStart) {
+				if (nMaxCodeLineLength < res.length() - curLineStart) {
 					// If we are already made our line, we need to go to the next line.
-					// We will collect all that we need to insert and then make single
-					// insertion
-					sbTemp.setLength(0);
-
-					// If we are not in quotes then string will not be torn and we need
-					// not insert additional quotes and string concatenation
-					if (isInQuote)
-						sbTemp.append('"').append(sStringsAdd);
-					sbTemp.append(sLineContinued).append(StringsUtil.CRLF).append(sCurIndent);
-					// Make some additional indentation for beautiness
-					sbTemp.append("\t\t");
-					// Again we need additional quote only if we are at the middle
-					// of the string
-					if (isInQuote)
-						sbTemp.append('"');
-
-					// Now insert this to our value and shift current position
-					val.insert(i + 1, sbTemp);
-					i += sbTemp.length();
+					res.append(isInQuote? quotedWrap: wrap);
 					// And remember position of line beginning
-					curLineStart = i + 1;
-				}  // if (nMaxCodeLineLength <= i - curLineStart)
-			}  // for (int i = 0; val.length() > i; ++i)
-		}  // if (nMaxCodeLineLength < val.length())
+					curLineStart = res.length();
+				}
+			}  // for (int i = 0; len > i; ++i)
+			StringsUtil.reset(val, res);
+		}  // if (nMaxCodeLineLength < len)
 	}
 
 	/**
 	 * Makes some value suitable for inserting in the code. Makes different
-	 * transformations depending on type of the value. All transformations
-	 * are making inplace. All action is strictly opposite to
+	 * transformations depending on type of the value. Each transformation
+	 * takes linear time. All action is strictly opposite to
 	 * <code>extractValFromCode</code>.
 	 *
 	 * @param val   On entering it's value taken from TopCoder problem statement
@@ -2096,13 +2533,16 @@ public abstract class EditorLanguage
 		    String suffix = getNumTypePostfix(type);
 		    if (0 < suffix.length() || 0 < prefix.length()) {
 			    Matcher mat = patNumberVal.matcher(val);
-			    int nextPos = 0;
-			    // we do all inplace without creating new classes
-			    while (mat.find(nextPos)) {
-				    val.insert(mat.end(), suffix);
-				    val.insert(mat.start(), prefix);
-				    nextPos = mat.end() + suffix.length() + prefix.length();
+			    StringBuilder res = new StringBuilder(val.length() + 16);
+			    int lastEnd = 0;
+			    // we copy the value into new buffer adding prefixes and postfixes
+			    while (mat.find()) {
+				    res.append(val, lastEnd, mat.start()).append(prefix)
+				       .append(val, mat.start(), mat.end()).append(suffix);
+				    lastEnd = mat.end();
 			    }
+			    res.append(val, lastEnd, val.length());
+			    StringsUtil.reset(val, res);
 		    }  // if (0 < suffix.length() || 0 < prefix.length())
 		}  // if (type.isString()) else
 
@@ -2175,6 +2615,7 @@ public abstract class EditorLanguage
 		// of all these callings
 		// Function call must be the same as in parsing so we use common variable
         text(sMainResVarName).text(" = (").text(sTestDisabled).or()
+                .skipTest(String.valueOf(testNum)).or()
                 .text(sRunTestFuncName).text('(').text(testNum).comma()
 				.passTestParams().comma().text(t.isWithAnswer())
 				.comma().text(paramVarNames[paramTypes.length])
@@ -2186,19 +2627,72 @@ public abstract class EditorLanguage
 		endLine();
 	}
 
+	/**
+	 * Adds the code that reads test cases from test data file one by one and
+	 * calls each of them. It's the replacement of <code>callTest</code> for
+	 * all test cases when they are not written in the code.
+	 *
+	 * @see     #callTest(int, Test)
+	 * @see     TestDataFile
+	 */
+	private void callTestsFromData()
+	{
+		openTestData(TestDataFile.getFileName(cl.getName()));
+		varDeclare(sHasAnswerVarName, getTypeName(EditorDataType.Boolean));
+		varDeclare(sTestCountVarName, getTypeName(EditorDataType.Integer));
+		text(sTestCountVarName).text(" = ").readTestData(EditorDataType.Integer).endCodeLine();
+		countLoopFirstLine(sTestNumVarName, sTestCountVarName);
+			text(sTestDisabled).text(" = ").readTestData(EditorDataType.Boolean).endCodeLine();
+			text(sHasAnswerVarName).text(" = ").readTestData(EditorDataType.Boolean).endCodeLine();
+			for (int i = 0; paramTypes.length > i; ++i)
+				text(paramVarNames[i]).text(" = ").readTestData(paramTypes[i]).endCodeLine();
+			text(retValVarName).text(" = ").readTestData(retType).endCodeLine();
+			// The same call as in callTest, only with values from the file
+			text(sMainResVarName).text(" = (").text(sTestDisabled).or()
+					.skipTest(sTestNumVarName).or()
+					.text(sRunTestFuncName).text('(').text(sTestNumVarName).comma()
+					.passTestParams().comma().text(sHasAnswerVarName)
+					.comma().text(retValVarName)
+					.text(") )").and().text(sMainResVarName).endCodeLine();
+			text(sMainOneDisabledName).text(" = ")
+				.text(sMainOneDisabledName).or().text(sTestDisabled).endCodeLine();
+		iterLastLine();
+		endLine();
+	}
+
+	/**
+	 * Adds the condition that is true if the test case is not the only one
+	 * to run.
+	 *
+	 * @param testNum   Number of the test case as it's written in code
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 *
+	 * @see             #readOnlyTest()
+	 */
+	private EditorLanguage skipTest(String testNum)
+	{
+		return text('(').text(sOnlyTestVarName).text(" >= 0").and()
+				.text(sOnlyTestVarName).text(sUnequalSign).text(testNum).text(')');
+	}
+
 	/**
 	 * Adds main running function of the test program.
 	 */
 	private void mainSub()
 	{
 		mainSubDef();
+			bufferOutput();
 			// Declaring variable that will collect the worst test result
 			// (it means is all tests correct or some test failed)
 			varDeclare(sMainResVarName, getTypeName(EditorDataType.Boolean));
             varDeclare(sTestDisabled, getTypeName(EditorDataType.Boolean));
             varDeclare(sMainOneDisabledName, getTypeName(EditorDataType.Boolean));
+			varDeclare(sOnlyTestVarName, getTypeName(EditorDataType.Integer));
+			readOnlyTest();
 			text(sMainResVarName).text(" = ").text(sTrue).endCodeLine();
-			text(sMainOneDisabledName).text(" = ").text(sFalse).endCodeLine();
+			// Running one test case is like running all with others disabled
+			text(sMainOneDisabledName).text(" = ").text(sOnlyTestVarName).text(" >= 0").endCodeLine();
 			endLine();
 			// Now declare all variables that will take all parameters of the test
 			for (int i = 0; paramTypes.length > i; ++i)
@@ -2207,8 +2701,12 @@ public abstract class EditorLanguage
 			varDeclare(paramVarNames[paramTypes.length], getTypeName(retType));
 			endLine();
 			// Calling all test cases
-			for (int i = 0; cl.countTests() > i; ++i)
-				callTest(i, cl.getTest(i));
+			if (isTestDataMode())
+				callTestsFromData();
+			else {
+				for (int i = 0; cl.countTests() > i; ++i)
+					callTest(i, cl.getTest(i));
+			}
 			// Check if all is OK.
             iff().text(sMainResVarName).then();
                 iff().text(sMainOneDisabledName).then();
@@ -2219,6 +2717,7 @@ public abstract class EditorLanguage
 			els();
 				println().text("\"Some of the test cases had errors.\"").endPrintln();
 			endIf();
+			flushOutput();
 			// We are done
 		endMainSub();
 	}
@@ -2250,18 +2749,18 @@ public abstract class EditorLanguage
 	 */
 	public final String getTestCode(ClassDecl classProblem)
 	{
-		// First initialize information about our problem solver class.
-		// This information will be used further in different methods.
-		cl = classProblem;
-		paramTypes = cl.getMethod().getParamTypes();
-		retType = cl.getMethod().getReturnType();
+		return newContext().makeTestCode(classProblem);
+	}
 
-		// Precalculate test parameters names for the same purpose
-		paramVarNames = new String[paramTypes.length + 1];
-		for (int i = 0; paramTypes.length >= i; ++i) {
-            paramVarNames[i] = sTestParamVarPrefix + i;
-		}
-		retValVarName = paramVarNames[paramTypes.length];
+	/**
+	 * Does the work of <code>getTestCode</code> on a context of its own.
+	 *
+	 * @param classProblem  Problem class information for test code
+	 * @return              Generated test code
+	 */
+	private String makeTestCode(ClassDecl classProblem)
+	{
+		initClass(classProblem);
 
 		// Full code generation is divided in several procedures
 		// for readability and convinient understanding
@@ -2269,7 +2768,12 @@ public abstract class EditorLanguage
 		// This comment is used for cutting testing code on loading from file
 		comment(sTestRegionStart);
 		comment("Generated by " + KawigiEdit.versionString);
+		if (isTestDataMode())
+			comment(sTestDataComment + " " + TestDataFile.getFileName(cl.getName()));
 		preamble();
+		if (isTestDataMode())
+			testDataReaders();
+		watchdogFunctions();
 		makeTestCaller();
 		mainSub();
 		postamble();
@@ -2280,6 +2784,308 @@ public abstract class EditorLanguage
 
 		return sb.toString();
 	}
+
+	/**
+	 * Generates the code of one test case exactly as it is in the testing code
+	 * made by <code>getTestCode</code>. So when only some test cases change,
+	 * only their code has to be replaced in the testing code.
+	 *
+	 * @param classProblem  Problem class information for test code
+	 * @param testNum       Number of the test case
+	 * @param indent        Indentation of the code of test cases in the testing code
+	 * @return              Code of the test case in whole lines, the first line
+	 *                      begins with the indentation and the last one ends
+	 *                      with a line break
+	 *
+	 * @see                 #findTestBlocks(CharSequence)
+	 */
+	public final String getTestBlock(ClassDecl classProblem, int testNum, CharSequence indent)
+	{
+		return newContext().makeTestBlock(classProblem, testNum, indent);
+	}
+
+	/**
+	 * Does the work of <code>getTestBlock</code> on a context of its own.
+	 *
+	 * @param classProblem  Problem class information for test code
+	 * @param testNum       Number of the test case
+	 * @param indent        Indentation of the code of test cases
+	 * @return              Code of the test case
+	 */
+	private String makeTestBlock(ClassDecl classProblem, int testNum, CharSequence indent)
+	{
+		initClass(classProblem);
+		// The context is new, and clear() would indent it in some languages
+		sCurIndent.append(indent);
+		text(indent);
+		callTest(testNum, cl.getTest(testNum));
+		// The code ends with the indentation of the next line, which isn't ours
+		sb.setLength(sb.length() - sCurIndent.length());
+		return sb.toString();
+	}
+
+	/**
+	 * Initializes information about problem solver class used by different
+	 * methods generating test code.
+	 *
+	 * @param classProblem  Problem class information for test code
+	 */
+	private void initClass(ClassDecl classProblem)
+	{
+		cl = classProblem;
+		paramTypes = cl.getMethod().getParamTypes();
+		retType = cl.getMethod().getReturnType();
+
+		// Precalculate test parameters names for the same purpose
+		paramVarNames = new String[paramTypes.length + 1];
+		for (int i = 0; paramTypes.length >= i; ++i) {
+            paramVarNames[i] = sTestParamVarPrefix + i;
+		}
+		retValVarName = paramVarNames[paramTypes.length];
+	}
+
+	/**
+	 * Returns time limit of the problem in milliseconds. It's the problem's
+	 * own time limit if it has one, or the time limit set for the language.
+	 *
+	 * @param classProblem  Problem class information
+	 * @return              Time limit in milliseconds
+	 */
+	public final int getTimeLimit(ClassDecl classProblem)
+	{
+		if (0 < classProblem.getTimeLimit())
+			return classProblem.getTimeLimit();
+		return getDefaultTimeLimit();
+	}
+
+	/**
+	 * Returns time limit set for this language in milliseconds.
+	 *
+	 * @return      Time limit in milliseconds
+	 */
+	private int getDefaultTimeLimit()
+	{
+		return PrefFactory.getPrefs().getInt(getPropertyCategory() + ".timelimit", nDefaultTimeLimit);
+	}
+
+	/**
+	 * Returns running time in milliseconds after which test is reported as
+	 * close to the time limit.
+	 *
+	 * @param timeLimit     Time limit in milliseconds
+	 * @return              Warning threshold in milliseconds
+	 */
+	private static int getTimeWarning(int timeLimit)
+	{
+		int percent = PrefFactory.getPrefs().getInt(ActID.actTimeWarning.preference, nDefaultTimeWarning);
+		return (int)((long)timeLimit * percent / 100);
+	}
+
+	/**
+	 * Returns estimated running time on the judge as percent of local running
+	 * time. It's set by speed calibration, 100 means that local times are
+	 * taken as they are.
+	 *
+	 * @return      Judge time in percent of local time
+	 */
+	public final int getJudgeTimePercent()
+	{
+		return PrefFactory.getPrefs().getInt(getPropertyCategory() + ".judgetime", 100);
+	}
+
+	/**
+	 * Returns <code>true</code> if test code should print only first and last
+	 * elements of large arrays and characters of large strings, unless the
+	 * test fails.
+	 */
+	private static boolean isAbbreviated()
+	{
+		return PrefFactory.getPrefs().getBoolean(ActID.actAbbreviate.preference, true);
+	}
+
+	/**
+	 * Returns number of first elements of large arrays (or characters of
+	 * large strings) printed when values are abbreviated.
+	 */
+	private static int getPrintHead()
+	{
+		return PrefFactory.getPrefs().getInt(ActID.actAbbreviateHead.preference, 10);
+	}
+
+	/**
+	 * Returns number of last elements of large arrays (or characters of
+	 * large strings) printed when values are abbreviated.
+	 */
+	private static int getPrintTail()
+	{
+		return PrefFactory.getPrefs().getInt(ActID.actAbbreviateTail.preference, 5);
+	}
+
+	/**
+	 * Returns the deadline of a test for the watchdog as a multiple of the
+	 * time limit. The deadline is the time after which the test would fail
+	 * the timeout on the judge with a good margin, so it's converted to
+	 * local running time.
+	 *
+	 * @return      Deadline of a test divided by the time limit
+	 */
+	protected double getDeadlineFactor()
+	{
+		int percent = PrefFactory.getPrefs().getInt(ActID.actTestDeadline.preference, nDefaultTestDeadline);
+		return (double)percent / getJudgeTimePercent();
+	}
+
+	/**
+	 * Returns <code>true</code> if test code should scale measured times to
+	 * estimate running times on the judge.
+	 */
+	private boolean isJudgeTimeScaled()
+	{
+		return 100 != getJudgeTimePercent();
+	}
+
+	/**
+	 * Returns time in milliseconds the reference benchmark of this language
+	 * takes on the judge.
+	 *
+	 * @return      Judge time of the benchmark in milliseconds
+	 */
+	public final int getBenchmarkJudgeMillis()
+	{
+		return nBenchmarkJudgeMillis;
+	}
+
+	/**
+	 * Returns source code of the reference benchmark of this language. It's a
+	 * program with class <code>KawigiEditBenchmark</code> that prints
+	 * "KawigiEdit benchmark: " followed by the time it took in seconds.
+	 *
+	 * @return      Source code of the benchmark
+	 * @throws      IOException if the benchmark can't be read from resources
+	 */
+	public final String getBenchmarkSource() throws IOException
+	{
+		return FileLoader.load(getClass().getResource("/rc/benchmark/" + toString() + ".bench").openStream());
+	}
+
+	/**
+	 * Converts milliseconds to seconds as they are written in code.
+	 */
+	private static String toSeconds(int millis)
+	{
+		return String.valueOf(millis / 1000.0);
+	}
+
+	/**
+	 * Adds declarations of constants with time limit and warning threshold
+	 * at the beginning of test case executor.
+	 */
+	private void timeLimitConstants()
+	{
+		int limit = getTimeLimit(cl);
+		String typeName = getTypeName(EditorDataType.Double);
+		constDeclare(sTimeLimitVarName, typeName, toSeconds(limit));
+		constDeclare(sTimeWarningVarName, typeName, toSeconds(getTimeWarning(limit)));
+		if (isJudgeTimeScaled())
+			constDeclare(sJudgeTimeVarName, typeName, String.valueOf(getJudgeTimePercent() / 100.0));
+		if (isAbbreviated()) {
+			String intName = getTypeName(EditorDataType.Integer);
+			constDeclare(sPrintHeadVarName, intName, String.valueOf(getPrintHead()));
+			constDeclare(sPrintTailVarName, intName, String.valueOf(getPrintTail()));
+		}
+	}
+
+	/**
+	 * Takes the time limit written in test code as the problem's own, so that
+	 * a limit changed by hand in the code stays when the code is regenerated.
+	 * Test code without a time limit leaves the problem's limit as it is.
+	 *
+	 * @param testCode      Test code
+	 * @param classProblem  Problem class information
+	 */
+	public static void readTimeLimit(CharSequence testCode, ClassDecl classProblem)
+	{
+		int limit = parseTimeLimit(testCode)[0];
+		if (0 < limit)
+			classProblem.setTimeLimit(limit);
+	}
+
+	/**
+	 * Checks that time limit constants in test code have the values that
+	 * would be generated now. If they don't, test code should be regenerated.
+	 * The time limit in the code should be read by <code>readTimeLimit</code>
+	 * first, then only the warning threshold and judge time factor are
+	 * checked against it.
+	 *
+	 * @param testCode      Test code
+	 * @param classProblem  Problem class information
+	 * @return              If time limit in test code is up to date
+	 */
+	public final boolean isTimeLimitCurrent(CharSequence testCode, ClassDecl classProblem)
+	{
+		int limit = getTimeLimit(classProblem);
+		int[] vals = parseTimeLimit(testCode);
+		return limit == vals[0] && getTimeWarning(limit) == vals[1]
+				&& getJudgeTimePercent() * 10 == vals[2];
+	}
+
+	/**
+	 * Checks that test code was generated in the testing mode currently set
+	 * for the language (like warm-up mode in Java) and with the current test
+	 * deadline. If it wasn't, test code should be regenerated.
+	 *
+	 * @param testCode      Test code
+	 * @return              If test code is generated in current mode
+	 */
+	public boolean isHarnessModeCurrent(CharSequence testCode)
+	{
+		if (0 > testCode.toString().indexOf(sTimeLimitVarName + " * " + getDeadlineFactor() + ')'))
+			return false;
+		int head = -1, tail = -1;
+		Matcher mat = patPrintLimit.matcher(testCode);
+		while (mat.find()) {
+			if (sPrintHeadVarName.equals(mat.group(1)))
+				head = Integer.parseInt(mat.group(2));
+			else
+				tail = Integer.parseInt(mat.group(2));
+		}
+		if (!isAbbreviated())
+			return 0 > head && 0 > tail;
+		return getPrintHead() == head && getPrintTail() == tail;
+	}
+
+	/**
+	 * Finds values of time limit constants in test code.
+	 *
+	 * @param testCode      Test code
+	 * @return              Time limit and warning threshold in milliseconds
+	 *                      (-1 for the constant that isn't found) and judge
+	 *                      time factor in thousandths (1000 if not found)
+	 */
+	private static int[] parseTimeLimit(CharSequence testCode)
+	{
+		int[] res = {-1, -1, 1000};
+		Matcher mat = patTimeLimit.matcher(testCode);
+		while (mat.find()) {
+			long millis = Math.round(Double.parseDouble(mat.group(2)) * 1000);
+			int ind = sTimeLimitVarName.equals(mat.group(1))? 0: sTimeWarningVarName.equals(mat.group(1))? 1: 2;
+			res[ind] = (int)Math.min(millis, Integer.MAX_VALUE);
+		}
+		return res;
+	}
+
+	/**
+	 * Returns <code>true</code> if generated test code should read test cases
+	 * from test data file instead of having them in the code.
+	 *
+	 * @return      If test data file is used
+	 *
+	 * @see         TestDataFile
+	 */
+	public static boolean isTestDataMode()
+	{
+		return PrefFactory.getPrefs().getBoolean(ActID.actTestDataFile.preference, false);
+	}
 	//============================================================================
 
 	/*
@@ -2324,7 +3130,8 @@ public abstract class EditorLanguage
 	 * made by <code>escapeSequences</code>. Method assumes that in string array
 	 * in output we need all elements to be enclosed in quotes and
 	 * all inner quotes and backslashes to be escaped.
-	 * All changes are made inplace.<br/>
+	 * Unescaped constant is made in one pass into a new buffer and then
+	 * replaces the value.<br/>
 	 * Method now works around only quotes and backslashes because
 	 * I (Pavel Ivanov aka pivanof) didn't see in TopCoder problems any other
 	 * escape-sequences used.
@@ -2338,27 +3145,29 @@ public abstract class EditorLanguage
 	protected void unescapeSequences(StringBuilder val, EditorDataType type)
 	{
 		assert type.isString();
+		int len = val.length();
+		StringBuilder res = new StringBuilder(len);
 		boolean isInQuote = false;
-		for (int i = 0; val.length() > i; ++i) {
+		for (int i = 0; len > i; ++i) {
 			char c = val.charAt(i);
-			if ('\\' == c) {
-				// if we won't skip next char, we'll adjust index later
+			if ('\\' == c && len > i + 1) {
+				// anyway we will skip next character
 				++i;
-				if (val.length() > i) {
-					c = val.charAt(i);
-					if (('"' == c || '\\' == c) && !isInQuote) {
-						// we found backslash or quote escaped in simple string -
-						// let's delete unnecessary backslash
-						--i;
-						val.deleteCharAt(i);
-					}
-				}
-			}  // if ('\\' == c)
-			else if ('"' == c) {
+				char next = val.charAt(i);
+				// if we found backslash or quote escaped in simple string -
+				// let's drop unnecessary backslash
+				if (isInQuote || '"' != next && '\\' != next)
+					res.append(c);
+				res.append(next);
+			}  // if ('\\' == c && len > i + 1)
+			else {
 				// we won't meet quote in other place than on array elements boundaries
-				isInQuote = !isInQuote;
+				if ('"' == c)
+					isInQuote = !isInQuote;
+				res.append(c);
 			}
-		}  // for (int i = 0; val.length() > i; ++i)
+		}  // for (int i = 0; len > i; ++i)
+		StringsUtil.reset(val, res);
 	}
 
 	/**
@@ -2371,9 +3180,32 @@ public abstract class EditorLanguage
 	 */
 	private void unguardLongLines(StringBuilder val)
 	{
-		// First we will form pattern for finding wrappings. And we will do this
-		// only at the first call. We can't do this in constructor 'cause
-		// language-specific constants are not set yet.
+		// We simply copy all that doesn't match with our pattern
+		Matcher mat = getUnguardLongLinesPat().matcher(val);
+		if (!mat.find())
+			return;
+		StringBuilder res = new StringBuilder(val.length());
+		int lastEnd = 0;
+		do {
+			res.append(val, lastEnd, mat.start());
+			lastEnd = mat.end();
+		} while (mat.find());
+		res.append(val, lastEnd, val.length());
+		StringsUtil.reset(val, res);
+	}
+
+	/**
+	 * Gets pattern for finding line wrappings made by <code>guardLongLines</code>.
+	 *
+	 * @return      Pattern to be used for searching wrappings
+	 *
+	 * @see         #patUnguardLongLines
+	 */
+	private Pattern getUnguardLongLinesPat()
+	{
+		// We will form pattern for finding wrappings only at the first call.
+		// We can't do this in constructor 'cause language-specific constants
+		// are not set yet.
 		if (null == patUnguardLongLines) {
 			StringBuilder sbTemp = new StringBuilder(30);
 			// Make string fully conformed to string added in guardLongLines
@@ -2397,47 +3229,48 @@ public abstract class EditorLanguage
 			// We have to use multiline pattern for catching line ends
 			patUnguardLongLines = Pattern.compile(sbTemp.toString(), Pattern.DOTALL);
 		}
-
-		// Now we simply delete all that matches with our pattern
-		Matcher mat = patUnguardLongLines.matcher(val);
-		while (mat.find(0))
-			val.delete(mat.start(), mat.end());
+		return patUnguardLongLines;
 	}
 
 	/**
-	 * Removes all whitespace between elements in array value. All changes are
-	 * made inplace.
+	 * Removes all whitespace between elements in array value. Value without
+	 * whitespace is made in one pass into a new buffer and then replaces it.
 	 *
 	 * @param val           Value to be changed
 	 */
 	private static void removeSpaceInArray(StringBuilder val)
 	{
+		int len = val.length();
+		StringBuilder res = new StringBuilder(len);
 		boolean isInQuote = false;
-		for (int i = 0; val.length() > i; ++i) {
+		for (int i = 0; len > i; ++i) {
 			char c = val.charAt(i);
 			// If it is escaping symbol then we have to skip next quote to
 			// not misinterpret it as element separator
-			if ('\\' == c && val.length() > i + 1 && '"' == val.charAt(i + 1))
-			    ++i;
+			if ('\\' == c && len > i + 1 && '"' == val.charAt(i + 1)) {
+				res.append(c).append('"');
+				++i;
+				// Though outside of quotes it can only start the element
+				isInQuote = true;
+				continue;
+			}
 
 			// If we are not inside quotes then no matter where we are we don't
 			// need any white space
-			if (!isInQuote) {
-				StringsUtil.removeAllNextSpace(val, i);
-				if (val.length() <= i)
-					break;
-				c = val.charAt(i);
-			}
+			if (!isInQuote && (Character.isSpaceChar(c) || Character.isWhitespace(c)))
+				continue;
 
+			res.append(c);
 			if ('"' == c)
 			    isInQuote = !isInQuote;
-		}  // for (int i = 0; val.length() > i; ++i)
+		}  // for (int i = 0; len > i; ++i)
+		StringsUtil.reset(val, res);
 	}
 
 	/**
 	 * Makes some value taken from the code suitable for internal use and
 	 * for showing to end-user. All transformations depend on type of the value
-	 * and all are made inplace. All action is strictly opposite to
+	 * and each takes linear time. All action is strictly opposite to
 	 * <code>prepareValForCode</code>.
 	 *
 	 * @param val   On entering it's value taken from code. On returning it's
@@ -2471,13 +3304,15 @@ public abstract class EditorLanguage
 			Pattern pat = getNumExtractPattern(type);
 			if (null != pat) {
 				Matcher mat = pat.matcher(val);
-				int nextPos = 0;
-				// we do all inplace without creating new classes
-				while (mat.find(nextPos)) {
-					String grp = mat.group(1);
-					val.replace(mat.start(), mat.end(), grp);
-					nextPos = mat.start() + grp.length();
+				StringBuilder res = new StringBuilder(val.length());
+				int lastEnd = 0;
+				// we copy the value into new buffer leaving only numbers
+				while (mat.find()) {
+					res.append(val, lastEnd, mat.start()).append(val, mat.start(1), mat.end(1));
+					lastEnd = mat.end();
 				}
+				res.append(val, lastEnd, val.length());
+				StringsUtil.reset(val, res);
 			}  // if (null != pat)
 		}  // if (isString) else
 
@@ -2487,130 +3322,366 @@ public abstract class EditorLanguage
 	}
 
 	/**
-	 * Gets pattern for finding beginning of test in the code. Closely related
-	 * to code generated by <code>markTestBegin</code>.
+	 * Skips characters from the given set in the code.
 	 *
-	 * @return      Pattern to be used for searching test case beginning.
+	 * @param code      Code to look at
+	 * @param ind       Position to start from
+	 * @param end       Position to stop at
+	 * @param chars     Characters to skip
+	 * @return          Position of the first character not in the set, or
+	 *                  <code>end</code>
+	 */
+	private static int skipChars(CharSequence code, int ind, int end, String chars)
+	{
+		while (end > ind && 0 <= chars.indexOf(code.charAt(ind)))
+			++ind;
+		return ind;
+	}
+
+	/**
+	 * Finds the first line end in the code that directly follows the given
+	 * text.
 	 *
-	 * @see         #markTestBegin(int)
-	 * @see         #patTestBegin
+	 * @param code      Code to search in
+	 * @param tail      Text that must be right before the line end
+	 * @param from      Position to start search from, the text can't start
+	 *                  before it
+	 * @return          Position of the text before the line end, or -1 if
+	 *                  there's no such line end
 	 */
-	private Pattern getTestBeginPat()
+	protected static int indexOfLineEnd(CharSequence code, CharSequence tail, int from)
 	{
-		// Pattern depends only on current language. So we can create ot only once.
-		if (null == patTestBegin) {
-			patTestBegin = Pattern.compile(sLineComment + "\\s*-+\\s*test\\s+\\d+\\s*-+",
-			                               Pattern.DOTALL);
+		for (int ind = StringsUtil.indexOf(code, '\n', from); 0 <= ind;
+		     ind = StringsUtil.indexOf(code, '\n', ind + 1)) {
+			int end = (0 < ind && '\r' == code.charAt(ind - 1))? ind - 1: ind;
+			if (from <= end - tail.length()
+			    && StringsUtil.isStringAt(code, tail, end - tail.length()))
+				return end - tail.length();
 		}
-		return patTestBegin;
-    }
-    
-    /**
-     * Gets pattern for finding the statement that marks the test case as disabled.
-     **/
-    private Pattern getDisabledTruePat()
-    {
-        // Pattern depends only on current language. So we can create ot only once.
-        if (null == patDisabledTrue ) {
-            patDisabledTrue = Pattern.compile( sTestDisabled + "\\s*=\\s*" + sTrue, Pattern.DOTALL );
-        }
-        return patDisabledTrue;
+		return -1;
 	}
 
 	/**
-	 * Gets regular expression for finding test case parameter initialization.
+	 * Skips line end in the code.
 	 *
-	 * @param num       Number of parameter
-	 * @param type      Type of parameter
-	 * @return          Regular expression for finding this parameter in code
+	 * @param code      Code to look at
+	 * @param ind       Position of the line end
+	 * @return          Position of the next line
 	 */
-	protected String getTestParamRegex(int num, EditorDataType type)
+	protected static int skipLineEnd(CharSequence code, int ind)
 	{
-		String res;
-		// Expression slightly different for arrays and non-arrays and
-		// is the same for all languages except C++.
-        if (type.isArrayType()) {
-			res = sArrayParamVarPrefix + num + ".*? = .*?(\\{.*?\\})"
-			      + sLineEnd + StringsUtil.sCRLFregex;
-        } else {
-			res = sTestParamVarPrefix + num + " = (.*?)" + sLineEnd + StringsUtil.sCRLFregex;
-        }
-		return res;
+		if (code.length() > ind && '\r' == code.charAt(ind))
+			++ind;
+		if (code.length() > ind && '\n' == code.charAt(ind))
+			++ind;
+		return ind;
 	}
 
 	/**
-	 * Parses one param in test case call. When parameter successfully parsed
-	 * it is put in <code>parsedParams</code> in newly created
-	 * <code>StringBuilder</code>.
+	 * Checks if the line of parsed test code is the beginning of test.
+	 * Closely related to code generated by <code>markTestBegin</code>.
 	 *
-	 * @param num       Number of parameter that need to be parsed
-	 * @param maxPos    Maximum position in test code where parameter can be
-	 *                  (limited to end of the test case call)
-	 * @return          If parameter parsed successfully then returns
-	 *                  <code>true</code>, in other case returns <code>false</code>.
+	 * @param start     Position of the first non-space character of the line
+	 * @param lineEnd   Position of the end of the line
+	 * @return          If the line begins test case
+	 *
+	 * @see             #markTestBegin(int)
 	 */
-	private boolean parseTestParam(int num, int maxPos)
+	private boolean isTestBeginAt(int start, int lineEnd)
 	{
-		boolean res = false;
-		if (matParams[num].find(curParseInd) && matParams[num].start() < maxPos) {
-			parsedParams[num] = new StringBuilder(100);
-			// Some workaround for C++: its pattern contains 2 parentheses and
-			// one of them will match
-			int grp = 1;
-			if (matParams[num].start(grp) < 0)
-				grp = 2;
-			parsedParams[num].append(parsingTests,
-								matParams[num].start(grp), matParams[num].end(grp));
-			res = true;
-		}
-		return res;
+		return 0 <= parseTestBegin(parsingTests, start, lineEnd);
 	}
 
 	/**
-	 * Parses one test case in test code. Returns <code>true</code> if parsing
-	 * process should be continued because test case parsed successfully or it has
-	 * test case start and test case end but have some errors inside.
+	 * Gets the number of test case from the line that begins it.
+	 *
+	 * @param code      Code to look at
+	 * @param start     Position of the first non-space character of the line
+	 * @param lineEnd   Position of the end of the line
+	 * @return          Number of test case, or -1 if the line doesn't begin
+	 *                  test case
 	 *
-	 * @return      If test parsing process should be continued
+	 * @see             #markTestBegin(int)
 	 */
-	private boolean parseNextTest()
+	private int parseTestBegin(CharSequence code, int start, int lineEnd)
 	{
-		boolean res = false;
-		// For success we need at least test start and test end
-		if (matTestBegin.find(curParseInd)) {
-			// We already can move on current parsing position to not come here again
-			curParseInd = matTestBegin.start() + 1;
-			if (matTestEnd.find(curParseInd)) {
-				int endInd = matTestEnd.start();
+		// It's like "// ----- test 5 -----" with any spaces and number of dashes
+		if (!StringsUtil.isStringAt(code, sLineComment, start))
+			return -1;
+		int ind = skipChars(code, start + sLineComment.length(), lineEnd, " \t");
+		int next = skipChars(code, ind, lineEnd, "-");
+		if (ind == next)
+			return -1;
+		ind = skipChars(code, next, lineEnd, " \t");
+		if (!StringsUtil.isStringAt(code, "test", ind))
+			return -1;
+		next = skipChars(code, ind + 4, lineEnd, " \t");
+		if (ind + 4 == next)
+			return -1;
+		ind = skipChars(code, next, lineEnd, "0123456789");
+		// Too long numbers can't be ours, and they could overflow
+		if (ind == next || 9 < ind - next)
+			return -1;
+		int res = Integer.parseInt(code.subSequence(next, ind).toString());
+		ind = skipChars(code, ind, lineEnd, " \t");
+		return (lineEnd > ind && '-' == code.charAt(ind))? res: -1;
+	}
 
-				// Let's parse test case parameters
-				boolean testValid = true;
-				for (int i = 0; paramTypes.length > i; ++i) {
-					if (!parseTestParam(i, endInd)) {
-						testValid = false;
-						break;
-					}
+	/**
+	 * Gets the number of test case which begins at the line of testing code
+	 * with the given position, i.e. if it's the line like
+	 * "// ----- test 5 -----".
+	 *
+	 * @param code      Testing code
+	 * @param pos       Position in the code
+	 * @return          Number of test case, or -1 if the line doesn't begin
+	 *                  test case
+	 */
+	public int getTestNumberAt(CharSequence code, int pos)
+	{
+		if (0 > pos || code.length() < pos)
+			return -1;
+		int start = (0 < pos)? StringsUtil.lastIndexOf(code, '\n', pos - 1) + 1: 0;
+		int lineEnd = StringsUtil.indexOf(code, '\n', pos);
+		if (0 > lineEnd)
+			lineEnd = code.length();
+		if (start < lineEnd && '\r' == code.charAt(lineEnd - 1))
+			--lineEnd;
+		return parseTestBegin(code, skipChars(code, start, lineEnd, " \t"), lineEnd);
+	}
+
+	/**
+	 * Checks if the line of parsed test code is the statement that marks the
+	 * test case as disabled.
+	 *
+	 * @param start     Position of the first non-space character of the line
+	 * @param lineEnd   Position of the end of the line
+	 * @return          If the line disables test case
+	 */
+	private boolean isDisabledAt(int start, int lineEnd)
+	{
+		if (!StringsUtil.isStringAt(parsingTests, sTestDisabled, start))
+			return false;
+		int ind = skipChars(parsingTests, start + sTestDisabled.length(), lineEnd, " \t");
+		if (lineEnd <= ind || '=' != parsingTests.charAt(ind))
+			return false;
+		ind = skipChars(parsingTests, ind + 1, lineEnd, " \t");
+		return StringsUtil.isStringAt(parsingTests, sTrue, ind);
+	}
+
+	/**
+	 * Gets number of test case parameter from its variable name.
+	 *
+	 * @param code      Code containing variable name
+	 * @param start     Position of variable name
+	 * @param end       Position right after variable name
+	 * @return          Number of parameter (number of parameters for the
+	 *                  expected result) or -1 if it's not a parameter
+	 */
+	protected final int parseTestParamNum(CharSequence code, int start, int end)
+	{
+		int ind;
+		if (StringsUtil.isStringAt(code, sTestParamVarPrefix, start))
+			ind = start + sTestParamVarPrefix.length();
+		else if (StringsUtil.isStringAt(code, sArrayParamVarPrefix, start))
+			ind = start + sArrayParamVarPrefix.length();
+		else
+			return -1;
+		// Too long numbers can't be ours, and they could overflow
+		if (end <= ind || 4 < end - ind)
+			return -1;
+		int res = 0;
+		for (; end > ind; ++ind) {
+			char c = code.charAt(ind);
+			if ('0' > c || '9' < c)
+				return -1;
+			res = res * 10 + (c - '0');
+		}
+		return paramTypes.length >= res? res: -1;
+	}
+
+	/**
+	 * Finds test case parameter initialization in the line of test code.
+	 * Closely related to code generated by <code>initTestParam</code>.
+	 *
+	 * @param code      Test code being parsed
+	 * @param start     Position of the first non-space character of the line
+	 * @param lineEnd   Position of the end of the line
+	 * @param bounds    Array of 3 elements receiving start and end of the
+	 *                  value of parameter and position right after its
+	 *                  initialization (value can take several lines)
+	 * @return          Number of parameter (number of parameters for the
+	 *                  expected result) or -1 if the line doesn't initialize
+	 *                  any parameter
+	 *
+	 * @see             #findTestParamValue(CharSequence, int, EditorDataType, int[])
+	 */
+	protected int findTestParam(CharSequence code, int start, int lineEnd, int[] bounds)
+	{
+		int eq = start;
+		while (lineEnd > eq && '=' != code.charAt(eq))
+			++eq;
+		if (lineEnd <= eq)
+			return -1;
+		// Variable is the last word before '=' (C++ arrays can have "[]" after it)
+		int nameEnd = eq;
+		while (start < nameEnd && 0 <= " \t[]".indexOf(code.charAt(nameEnd - 1)))
+			--nameEnd;
+		int nameStart = nameEnd;
+		while (start < nameStart && (Character.isLetterOrDigit(code.charAt(nameStart - 1))
+		                             || '_' == code.charAt(nameStart - 1)))
+			--nameStart;
+		int num = parseTestParamNum(code, nameStart, nameEnd);
+		if (0 > num)
+			return -1;
+		EditorDataType type = paramTypes.length > num? paramTypes[num]: retType;
+		if (!findTestParamValue(code, skipChars(code, eq + 1, lineEnd, " "), type, bounds))
+			return -1;
+		return num;
+	}
+
+	/**
+	 * Finds the value of test case parameter in its initialization. Array
+	 * values are found with braces around them, other values - up to the
+	 * line end after which statement ends.
+	 *
+	 * @param code      Test code being parsed
+	 * @param start     Position right after '=' and spaces in initialization
+	 * @param type      Type of parameter
+	 * @param bounds    Array of 3 elements receiving start and end of the
+	 *                  value and position right after initialization
+	 * @return          If the value was found
+	 */
+	protected boolean findTestParamValue(CharSequence code, int start, EditorDataType type,
+	                                     int[] bounds)
+	{
+		if (type.isArrayType()) {
+			int open = StringsUtil.indexOf(code, '{', start);
+			if (0 > open)
+				return false;
+			int close = indexOfLineEnd(code, "}" + sLineEnd, open + 1);
+			if (0 > close)
+				return false;
+			bounds[0] = open;
+			bounds[1] = close + 1;
+		}
+		else {
+			int end = indexOfLineEnd(code, sLineEnd, start);
+			if (0 > end)
+				return false;
+			bounds[0] = start;
+			bounds[1] = end;
+		}
+		bounds[2] = skipLineEnd(code, bounds[1] + sLineEnd.length());
+		return true;
+	}
+
+	/**
+	 * Parses all test cases in test code in one pass over it, line by line.
+	 * Test case starts with line made by <code>markTestBegin</code> and ends
+	 * with <code>getTestEndExpr()</code>. Inside there can be initializations
+	 * of parameters, result and disabled flag, everything else is ignored. If
+	 * some parameter is initialized several times, the first value counts. Test
+	 * cases lacking some parameters are skipped, test case with no result
+	 * is added without answer.
+	 */
+	private void parseTests()
+	{
+		String endExpr = getTestEndExpr();
+		int[] bounds = new int[3];
+		boolean isInTest = false;
+		int len = parsingTests.length();
+		int pos = 0;
+		while (len > pos) {
+			int start = StringsUtil.getFirstNonSpaceInd(parsingTests, pos);
+			int lineEnd = StringsUtil.indexOf(parsingTests, '\n', start);
+			if (0 > lineEnd)
+				lineEnd = len;
+			pos = lineEnd + 1;
+			if (!isInTest) {
+				if (isTestBeginAt(start, lineEnd)) {
+					isInTest = true;
+					testCaseDisabled = false;
+					Arrays.fill(parsedParams, null);
 				}
-                // Let's parse disabled 
-                testCaseDisabled = false;
-                if ( matDisabledTrue.find(curParseInd) ) {
-                    testCaseDisabled = (matDisabledTrue.start() < endInd);
-                }
-				if (testValid) {
-					// If all parameters successfully parsed then try to parse
-					// result and add test case to class declaration
-                    if (!parseTestParam(paramTypes.length, endInd)) {
-						parsedParams[paramTypes.length] = null;
-                    }
+			}
+			else if (StringsUtil.isStringAt(parsingTests, endExpr, start)) {
+				isInTest = false;
+				boolean testValid = true;
+				for (int i = 0; paramTypes.length > i; ++i)
+					testValid = testValid && null != parsedParams[i];
+				if (testValid)
 					addTestCase();
+			}
+			else if (isDisabledAt(start, lineEnd))
+				testCaseDisabled = true;
+			else {
+				int num = findTestParam(parsingTests, start, lineEnd, bounds);
+				if (0 <= num) {
+					if (null == parsedParams[num]) {
+						parsedParams[num] = new StringBuilder(bounds[1] - bounds[0] + 10);
+						parsedParams[num].append(parsingTests, bounds[0], bounds[1]);
+					}
+					// Value can take several lines and they shouldn't be parsed
+					pos = Math.max(pos, bounds[2]);
 				}
+			}
+		}
+	}
 
-				// Don't forget to move on current parsing position and success result
-				curParseInd = endInd;
-				res = true;
-			}  // if (matTestEnd.find(curParseInd))
-		}  // if (matTestBegin.find(curParseInd))
-		return res;
+	/**
+	 * Finds the code of every test case in the testing code, in the same way
+	 * as <code>extractTestCases</code> finds test cases. The code of test case
+	 * spans from the line made by <code>markTestBegin</code> to the line with
+	 * <code>getTestEndExpr()</code>, both including.
+	 *
+	 * @param testCode      Testing code
+	 * @return              Positions of the code of test cases: the beginning
+	 *                      of the first line of test i is at index 2*i, and the
+	 *                      end of its last line (after the line break) is at
+	 *                      index 2*i+1
+	 *
+	 * @see                 #getTestBlock(ClassDecl, int, CharSequence)
+	 */
+	public final int[] findTestBlocks(CharSequence testCode)
+	{
+		return newContext().locateTests(testCode);
+	}
+
+	/**
+	 * Does the work of <code>findTestBlocks</code> on a context of its own.
+	 *
+	 * @param testCode      Testing code
+	 * @return              Positions of the code of test cases
+	 */
+	private int[] locateTests(CharSequence testCode)
+	{
+		parsingTests = testCode;
+		String endExpr = getTestEndExpr();
+		int[] res = new int[32];
+		int cnt = 0;
+		int begin = -1;
+		int len = testCode.length();
+		int pos = 0;
+		while (len > pos) {
+			int start = StringsUtil.getFirstNonSpaceInd(testCode, pos);
+			int lineEnd = StringsUtil.indexOf(testCode, '\n', start);
+			if (0 > lineEnd)
+				lineEnd = len;
+			pos = lineEnd + 1;
+			if (0 > begin) {
+				if (isTestBeginAt(start, lineEnd))
+					begin = StringsUtil.lastIndexOf(testCode, '\n', start - 1) + 1;
+			}
+			else if (StringsUtil.isStringAt(testCode, endExpr, start)) {
+				if (res.length == cnt)
+					res = Arrays.copyOf(res, 2 * cnt);
+				res[cnt++] = begin;
+				res[cnt++] = Math.min(pos, len);
+				begin = -1;
+			}
+		}
+		return Arrays.copyOf(res, cnt);
 	}
 
 	/**
@@ -2688,6 +3759,20 @@ public abstract class EditorLanguage
 	 */
 	public final void extractTestCases(StringBuilder code, ClassDecl classProblem,
 	                                   StringBuilder testCode)
+	{
+		newContext().parseTestCases(code, classProblem, testCode);
+	}
+
+	/**
+	 * Does the work of <code>extractTestCases</code> on a context of its own.
+	 *
+	 * @param code              All program code for analyzing
+	 * @param classProblem      Class definition for receiving test cases
+	 * @param testCode          Buffer for receiving test code deleted
+	 *                          from <code>code</code>
+	 */
+	private void parseTestCases(StringBuilder code, ClassDecl classProblem,
+	                            StringBuilder testCode)
 	{
 		// First let's find our test code region
 		int startInd = code.indexOf(sTestRegionStart);
@@ -2711,26 +3796,31 @@ public abstract class EditorLanguage
 
 				// For convenience arrays for params are made one element more
 				// in size - for return parameter too.
-				matParams = new Matcher[paramTypes.length + 1];
 				parsedParams = new StringBuilder[paramTypes.length + 1];
 
-				// Create all Matchers that will be needed during parsing
-                matDisabledTrue = getDisabledTruePat().matcher(parsingTests);
-				matTestBegin = getTestBeginPat().matcher(parsingTests);
-                matTestEnd = Pattern.compile(getTestEndExpr(), Pattern.DOTALL)
-										.matcher(parsingTests);
-				for (int i = 0; paramTypes.length > i; ++i) {
-					matParams[i] = Pattern.compile(getTestParamRegex(i, paramTypes[i]),
-					                               Pattern.DOTALL).matcher(parsingTests);
-				}
-				matParams[paramTypes.length] = Pattern.compile(
-												getTestParamRegex(paramTypes.length, retType),
-				                                Pattern.DOTALL).matcher(parsingTests);
-
 				// Now let's parse tests
-				curParseInd = 0;
-				while (parseNextTest());  // do nothing - all done in parseNextTest()
+				parseTests();
+
+				// Time limit written in the code belongs to the problem even if
+				// it's the same as the language's one now, the default applies
+				// only to code without a time limit
+				readTimeLimit(testCode, cl);
 			}  // if (0 <= endInd)
 		}  // if (0 <= startInd)
 	}
+
+	/**
+	 * Checks if test code extracted by <code>extractTestCases</code> reads
+	 * test cases from test data file. In this case test cases should be read
+	 * by <code>TestDataFile</code> because there are none in the code.
+	 *
+	 * @param testCode      Test code extracted from program code
+	 * @return              If test code reads test data file
+	 *
+	 * @see                 TestDataFile#read(java.nio.ByteBuffer, ClassDecl)
+	 */
+	public static boolean readsTestData(CharSequence testCode)
+	{
+		return 0 <= testCode.toString().indexOf(sTestDataComment);
+	}
 }
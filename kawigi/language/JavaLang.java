@@ -1,5 +1,8 @@
 package kawigi.language;
 
+import kawigi.problem.TestDataFile;
+import kawigi.properties.PrefFactory;
+
 /**
  * Class introducing language-dependent features for Java.
  * Class is made as singleton.
@@ -13,6 +16,25 @@ public final class JavaLang extends EditorLanguage
 	 */
 	private static final JavaLang inst = new JavaLang();
 
+	/**
+	 * Name of function returning total time spent in garbage collection
+	 * in milliseconds. Declared in warm-up mode only.
+	 */
+	private static final String sGcTimeFuncName = "KawigiEdit_GcTime";
+	/**
+	 * Names of constants with number of warm-up runs and timed runs
+	 * of each test in warm-up mode.
+	 */
+	private static final String sWarmUpRunsVarName = "KawigiEdit_WarmUpRuns";
+	private static final String sTimedRunsVarName = "KawigiEdit_TimedRuns";
+	/**
+	 * Names of variables used by warm-up mode only.
+	 */
+	private static final String sColdStartVarName = "coldStart";
+	private static final String sColdEndVarName = "coldEnd";
+	private static final String sGcStartVarName = "gcStart";
+	private static final String sRunVarName = "run";
+
 	/**
 	 * Returns single instance of the class.
 	 *
@@ -36,11 +58,14 @@ public final class JavaLang extends EditorLanguage
 		sDefaultFileName = "$PROBLEM$.java";
 		sDefaultCompileCommand = "javac $PROBLEM$.java";
 		sDefaultExecuteCommand = "java $PROBLEM$";
+		nBenchmarkJudgeMillis = 600;
 		sPrintPrefix = "System.out.print(";
 		sPrintlnPrefix = "System.out.println(";
 		sArrayLenFunc = ".length";
 		sDoubleAbsFunc = "Math.abs";
 		sDoubleMaxFunc = "Math.max";
+		sFormatTimePrefix = "String.format(java.util.Locale.US, \"%.6f\", ";
+		sFormatTimeSuffix = ")";
 	}
 
 	/*
@@ -120,7 +145,23 @@ public final class JavaLang extends EditorLanguage
 	}
 
 	/**
-	 * Method for adding code of remembering current time.
+	 * Declares the named constant of builtin type.
+	 *
+	 * @param varName   Name of the constant to be declared.
+	 * @param typeName  Type of the constant to be declared.
+	 * @param value     Value of the constant as it's written in code.
+	 *
+	 * @see             EditorLanguage#constDeclare(CharSequence, CharSequence, CharSequence)
+	 */
+	protected void constDeclare(CharSequence varName, CharSequence typeName, CharSequence value)
+	{
+		text("final ").text(typeName).text(' ').text(varName).text(" = ").text(value).endCodeLine();
+	}
+
+	/**
+	 * Method for adding code of remembering current time. Wall time is taken
+	 * from <code>System.nanoTime()</code>, CPU time of the current thread -
+	 * from <code>ThreadMXBean</code>.
 	 *
 	 * @param varName   Name of variable to remember time in.
 	 *
@@ -128,7 +169,9 @@ public final class JavaLang extends EditorLanguage
 	 */
 	protected void rememberCurTime(String varName)
 	{
-		text("long ").text(varName).text(" = System.currentTimeMillis()").endCodeLine();
+		text("long ").text(varName).text(" = System.nanoTime()").endCodeLine();
+		text("long ").text(varName).text(sCpuTimeSuffix)
+			.text(" = java.lang.management.ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime()").endCodeLine();
 	}
 
 	/**
@@ -144,7 +187,380 @@ public final class JavaLang extends EditorLanguage
 	 */
 	protected EditorLanguage timeDiff(String varStart, String varEnd)
 	{
-		return text('(').text(varEnd).text(" - ").text(varStart).text(") / 1000.0");
+		return text('(').text(varEnd).text(" - ").text(varStart).text(") / 1e9");
+	}
+
+	/**
+	 * Method for adding formula counting CPU time used between two moments
+	 * in seconds (double value).
+	 *
+	 * @param varStart  Variable name of starting moment
+	 * @param varEnd    Variable name of ending moment
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 *
+	 * @see             EditorLanguage#cpuTimeDiff(String, String)
+	 */
+	protected EditorLanguage cpuTimeDiff(String varStart, String varEnd)
+	{
+		return timeDiff(varStart + sCpuTimeSuffix, varEnd + sCpuTimeSuffix);
+	}
+
+	/**
+	 * Returns true if testing code has to warm up the JIT compiler by running
+	 * each test several times before timing it.
+	 *
+	 * @return          <code>true</code> if warm-up mode is on
+	 */
+	private boolean isWarmUpMode()
+	{
+		return PrefFactory.getPrefs().getBoolean(getPropertyCategory() + ".warmup", false);
+	}
+
+	/**
+	 * Returns number of untimed runs of each test in warm-up mode.
+	 */
+	private int getWarmUpRuns()
+	{
+		return PrefFactory.getPrefs().getInt(getPropertyCategory() + ".warmupruns", 10);
+	}
+
+	/**
+	 * Returns number of timed runs of each test in warm-up mode.
+	 */
+	private int getTimedRuns()
+	{
+		return PrefFactory.getPrefs().getInt(getPropertyCategory() + ".timedruns", 10);
+	}
+
+	/**
+	 * Checks that testing code is generated in the current warm-up mode, i.e.
+	 * that it warms up if and only if warm-up mode is on and that it does it
+	 * the right number of times.
+	 *
+	 * @param testCode  Testing code
+	 * @return          <code>true</code> if testing code doesn't need regeneration
+	 *
+	 * @see             EditorLanguage#isHarnessModeCurrent(CharSequence)
+	 */
+	public boolean isHarnessModeCurrent(CharSequence testCode)
+	{
+		String code = testCode.toString();
+		if (!super.isHarnessModeCurrent(testCode))
+			return false;
+		if (!isWarmUpMode())
+			return 0 > code.indexOf(sWarmUpRunsVarName);
+		return 0 <= code.indexOf(sWarmUpRunsVarName + " = " + getWarmUpRuns() + ";")
+				&& 0 <= code.indexOf(sTimedRunsVarName + " = " + getTimedRuns() + ";");
+	}
+
+	/**
+	 * Adds function counting time spent in garbage collection if warm-up
+	 * mode is on.
+	 *
+	 * @see             EditorLanguage#preamble()
+	 */
+	protected void preamble()
+	{
+		super.preamble();
+		if (!isWarmUpMode())
+			return;
+		text("private static long ").text(sGcTimeFuncName).text("() {").endLine();
+		indentRight();
+			text("long res = 0").endCodeLine();
+			text("for (java.lang.management.GarbageCollectorMXBean gc : java.lang.management.ManagementFactory.getGarbageCollectorMXBeans()) {").endLine();
+			indentRight();
+				// -1 means that the collector doesn't know
+				text("res += Math.max(0, gc.getCollectionTime())").endCodeLine();
+			indentLeft().text('}').endLine();
+			text("return res").endCodeLine();
+		indentLeft().text('}').endLine();
+	}
+
+	/**
+	 * Adds code calling problem solver. In warm-up mode the test is run once
+	 * cold, then several times untimed to let JIT compiler do its work, and
+	 * then several times more to measure steady-state time, which becomes
+	 * the time of the test. Cold time and time spent in garbage collection
+	 * during timed runs are printed separately. Every run gets its own copy
+	 * of array parameters in case the solution modifies them.
+	 *
+	 * @see             EditorLanguage#callProblemSolver()
+	 */
+	protected void callProblemSolver()
+	{
+		if (!isWarmUpMode()) {
+			super.callProblemSolver();
+			return;
+		}
+		CharSequence solverClass = cl.getName();
+		CharSequence method = cl.getMethod().getName();
+		constDeclare(sWarmUpRunsVarName, "int", String.valueOf(getWarmUpRuns()));
+		constDeclare(sTimedRunsVarName, "int", String.valueOf(getTimedRuns()));
+		varDeclare(sSolverVarName, solverClass);
+		varDeclare(sAnswerVarName, getTypeName(cl.getMethod().getReturnType()));
+		// Cold run
+		text(sSolverVarName).text(" = new ").text(solverClass).text("()").endCodeLine();
+		rememberCurTime(sColdStartVarName);
+		text(sAnswerVarName).text(" = ").methodCall(sSolverVarName, method);
+		passTestParamCopies();
+		rememberCurTime(sColdEndVarName);
+		// Warm-up runs
+		countLoopFirstLine(sRunVarName, sWarmUpRunsVarName);
+			text("new ").text(solverClass).text("().").text(method);
+			passTestParamCopies();
+		indentLeft().text('}').endLine();
+		// Timed runs, the time of the test is their average
+		text("long ").text(sGcStartVarName).text(" = ").text(sGcTimeFuncName).text("()").endCodeLine();
+		rememberCurTime(sStartTimeVarName);
+		countLoopFirstLine(sRunVarName, sTimedRunsVarName);
+			text(sSolverVarName).text(" = new ").text(solverClass).text("()").endCodeLine();
+			text(sAnswerVarName).text(" = ").methodCall(sSolverVarName, method);
+			passTestParamCopies();
+		indentLeft().text('}').endLine();
+		text("long ").text(sEndTimeVarName).text(" = ").text(sStartTimeVarName)
+				.text(" + (System.nanoTime() - ").text(sStartTimeVarName).text(") / ")
+				.text(sTimedRunsVarName).endCodeLine();
+		text("long ").text(sEndTimeVarName).text(sCpuTimeSuffix).text(" = ")
+				.text(sStartTimeVarName).text(sCpuTimeSuffix)
+				.text(" + (java.lang.management.ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime() - ")
+				.text(sStartTimeVarName).text(sCpuTimeSuffix).text(") / ")
+				.text(sTimedRunsVarName).endCodeLine();
+		println().text("\"Cold time: \"").printAdd().text(sFormatTimePrefix)
+				.timeDiff(sColdStartVarName, sColdEndVarName).text(sFormatTimeSuffix)
+				.printAdd().text("\" seconds (CPU: \"").printAdd().text(sFormatTimePrefix)
+				.cpuTimeDiff(sColdStartVarName, sColdEndVarName).text(sFormatTimeSuffix)
+				.printAdd().text("\" seconds), steady state after \"").printAdd().text(sWarmUpRunsVarName)
+				.printAdd().text("\" warm-up runs, GC: \"").printAdd().text(sFormatTimePrefix)
+				.text('(').text(sGcTimeFuncName).text("() - ").text(sGcStartVarName).text(") / 1e3")
+				.text(sFormatTimeSuffix).printAdd().text("\" seconds in \"").printAdd().text(sTimedRunsVarName)
+				.printAdd().text("\" runs\"").endPrintln();
+	}
+
+	/**
+	 * Adds parenthesized test parameters like <code>passTestParams</code>,
+	 * but passes copies of arrays, and ends the code line.
+	 */
+	private void passTestParamCopies()
+	{
+		EditorDataType[] types = cl.getMethod().getParamTypes();
+		text('(');
+		for (int i = 0; types.length > i; ++i) {
+			if (0 < i)
+				comma();
+			text(sTestParamVarPrefix).text(i);
+			if (types[i].isArrayType())
+				text(".clone()");
+		}
+		text(')').endCodeLine();
+	}
+
+	/**
+	 * Adds functions reading values from test data file. The file is mapped
+	 * into memory as a whole, and exceptions are rethrown unchecked so that
+	 * main function doesn't have to declare them.
+	 *
+	 * @see             EditorLanguage#testDataReaders()
+	 */
+	protected void testDataReaders()
+	{
+		String buffer = "java.nio.ByteBuffer";
+		text("private static ").text(buffer).text(" KawigiEdit_OpenTestData(String fileName) {").endLine();
+		indentRight();
+			text("try {").endLine();
+			indentRight();
+				text("java.io.RandomAccessFile f = new java.io.RandomAccessFile(fileName, \"r\")").endCodeLine();
+				text("try {").endLine();
+				indentRight();
+					text("java.nio.channels.FileChannel ch = f.getChannel()").endCodeLine();
+					text(buffer).text(" res = ch.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, ch.size())").endCodeLine();
+					text("res.order(java.nio.ByteOrder.LITTLE_ENDIAN)").endCodeLine();
+					text("byte[] magic = new byte[4]").endCodeLine();
+					text("res.get(magic)").endCodeLine();
+					text("if (!\"").text(TestDataFile.sMagic).text("\".equals(new String(magic, \"US-ASCII\"))) throw new RuntimeException(fileName + \" is not a test data file\")").endCodeLine();
+					text("return res").endCodeLine();
+				indentLeft().text("} finally {").endLine();
+				indentRight();
+					text("f.close()").endCodeLine();
+				indentLeft().text('}').endLine();
+			indentLeft().text("} catch (java.io.IOException e) {").endLine();
+			indentRight();
+				text("throw new RuntimeException(\"Can't read test cases from \" + fileName, e)").endCodeLine();
+			indentLeft().text('}').endLine();
+		indentLeft().text('}').endLine();
+		for (EditorDataType type : EditorDataType.values()) {
+			funcDefPrefix(type).text(sTestDataReadFuncPrefix).text(type.name()).text('(')
+					.text(buffer).text(" in) {").endLine();
+			indentRight();
+			if (type.isArrayType()) {
+				EditorDataType elem = type.getPrimitiveType();
+				text(getTypeName(type)).text(" res = new ").text(getTypeName(elem)).text("[in.getInt()]").endCodeLine();
+				text("for (int i = 0; res.length > i; ++i) res[i] = ")
+						.text(sTestDataReadFuncPrefix).text(elem.name()).text("(in)").endCodeLine();
+				text("return res").endCodeLine();
+			}
+			else if (type.isString()) {
+				text("byte[] res = new byte[in.getInt()]").endCodeLine();
+				text("in.get(res)").endCodeLine();
+				text("return new String(res, java.nio.charset.Charset.forName(\"UTF-8\"))").endCodeLine();
+			}
+			else if (type.isType(EditorDataType.Boolean))
+				text("return in.get() != 0").endCodeLine();
+			else if (type.isType(EditorDataType.Integer))
+				text("return in.getInt()").endCodeLine();
+			else if (type.isType(EditorDataType.Long))
+				text("return in.getLong()").endCodeLine();
+			else
+				text("return in.getDouble()").endCodeLine();
+			indentLeft().text('}').endLine();
+		}
+	}
+
+	/**
+	 * Adds functions of the watchdog. It's a task of a daemon timer, when
+	 * it runs out the program is halted without waiting for the solution.
+	 *
+	 * @see             EditorLanguage#watchdogFunctions()
+	 */
+	protected void watchdogFunctions()
+	{
+		text("private static java.util.Timer KawigiEdit_WatchdogTimer = new java.util.Timer(true)").endCodeLine();
+		text("private static java.util.TimerTask KawigiEdit_Watchdog").endCodeLine();
+		text("private static void ").text(sWatchdogStartFuncName).text("(final int testNum, final double seconds) {").endLine();
+		indentRight();
+			text("KawigiEdit_Watchdog = new java.util.TimerTask() {").endLine();
+			indentRight();
+				text("public void run() {").endLine();
+				indentRight();
+					text("System.out.println(\"Test \" + testNum + \": no answer after \" + seconds + \" seconds, testing stopped\")").endCodeLine();
+					text("System.out.println(\"FAIL the timeout\")").endCodeLine();
+					text("System.out.println(\"\")").endCodeLine();
+					text("System.out.println(\"Some of the test cases had errors.\")").endCodeLine();
+					text("System.out.flush()").endCodeLine();
+					text("Runtime.getRuntime().halt(1)").endCodeLine();
+				indentLeft().text('}').endLine();
+			indentLeft().text("}").endCodeLine();
+			text("KawigiEdit_WatchdogTimer.schedule(KawigiEdit_Watchdog, (long)(seconds * 1000))").endCodeLine();
+		indentLeft().text('}').endLine();
+		text("private static void ").text(sWatchdogStopFuncName).text("() {").endLine();
+		indentRight();
+			text("KawigiEdit_Watchdog.cancel()").endCodeLine();
+		indentLeft().text('}').endLine();
+	}
+
+	/**
+	 * Replaces <code>System.out</code> with a print stream without
+	 * autoflush over a buffered stream, so that the solution's own prints
+	 * stay in order with the prints of testing code. The stream is also
+	 * flushed at exit, which matters if the solution throws an exception.
+	 *
+	 * @see             EditorLanguage#bufferOutput()
+	 */
+	protected void bufferOutput()
+	{
+		text("System.setOut(new java.io.PrintStream(new java.io.BufferedOutputStream(")
+				.text("new java.io.FileOutputStream(java.io.FileDescriptor.out), 1 << 16), false))").endCodeLine();
+		text("Runtime.getRuntime().addShutdownHook(new Thread() {").endLine();
+		indentRight();
+			text("public void run() {").endLine();
+			indentRight();
+				flushOutput();
+			indentLeft().text('}').endLine();
+		indentLeft().text("})").endCodeLine();
+	}
+
+	/**
+	 * Adds code flushing <code>System.out</code>.
+	 *
+	 * @see             EditorLanguage#flushOutput()
+	 */
+	protected void flushOutput()
+	{
+		text("System.out.flush()").endCodeLine();
+	}
+
+	/**
+	 * Adds code reading the number of the only test case to run from
+	 * <code>args</code>.
+	 *
+	 * @see             EditorLanguage#readOnlyTest()
+	 */
+	protected void readOnlyTest()
+	{
+		text(sOnlyTestVarName).text(" = args.length > 0 ? Integer.parseInt(args[0]) : -1").endCodeLine();
+	}
+
+	/**
+	 * Returns the deadline of a test as a multiple of the time limit. In
+	 * warm-up mode the test is run many times, and each run gets the time.
+	 *
+	 * @return          Deadline of a test divided by the time limit
+	 *
+	 * @see             EditorLanguage#getDeadlineFactor()
+	 */
+	protected double getDeadlineFactor()
+	{
+		double res = super.getDeadlineFactor();
+		if (isWarmUpMode())
+			res *= 1 + getWarmUpRuns() + getTimedRuns();
+		return res;
+	}
+
+	/**
+	 * Adds the length of string variable.
+	 *
+	 * @param varName   Name of string variable
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 *
+	 * @see             EditorLanguage#stringLen(String)
+	 */
+	protected EditorLanguage stringLen(String varName)
+	{
+		return text(varName).text(".length()");
+	}
+
+	/**
+	 * Adds the beginning of string variable.
+	 *
+	 * @param varName   Name of string variable
+	 * @param countName Name of variable with the number of characters taken
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 *
+	 * @see             EditorLanguage#stringHead(String, String)
+	 */
+	protected EditorLanguage stringHead(String varName, String countName)
+	{
+		return text(varName).text(".substring(0, ").text(countName).text(')');
+	}
+
+	/**
+	 * Adds the end of string variable.
+	 *
+	 * @param varName   Name of string variable
+	 * @param countName Name of variable with the number of characters taken
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 *
+	 * @see             EditorLanguage#stringTail(String, String)
+	 */
+	protected EditorLanguage stringTail(String varName, String countName)
+	{
+		return text(varName).text(".substring(").stringLen(varName).text(" - ").text(countName).text(')');
+	}
+
+	/**
+	 * Adds code opening test data file.
+	 *
+	 * @param fileName  Name of test data file
+	 *
+	 * @see             EditorLanguage#openTestData(String)
+	 */
+	protected void openTestData(String fileName)
+	{
+		text("java.nio.ByteBuffer ").text(sTestDataVarName)
+				.text(" = KawigiEdit_OpenTestData(\"").text(fileName).text("\")").endCodeLine();
 	}
 
 	/**
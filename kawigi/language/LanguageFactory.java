@@ -27,6 +27,18 @@ public final class LanguageFactory
 	 */
 	private LanguageFactory() {}
 
+	/**
+	 * Returns all languages supported by KawigiEdit.
+	 *
+	 * @return      Array of languages
+	 **/
+	public static EditorLanguage[] getLanguages()
+	{
+		return new EditorLanguage[] {JavaLang.getInstance(), CPPLang.getInstance(),
+		                             CSharpLang.getInstance(), VBLang.getInstance(),
+		                             PythonLang.getInstance()};
+	}
+
 	/**
 	 * Returns the EditorLanguage with the given name, or that supports the
 	 * file extension given by name.
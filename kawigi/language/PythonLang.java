@@ -1,5 +1,6 @@
 package kawigi.language;
 
+import kawigi.problem.TestDataFile;
 import kawigi.properties.PrefFactory;
 import kawigi.util.StringsUtil;
 
@@ -42,6 +43,7 @@ public final class PythonLang extends EditorLanguage
         sDefaultFileName = "$PROBLEM$.py";
         sDefaultCompileCommand = "";
         sDefaultExecuteCommand = "python $PROBLEM$.py";
+        nBenchmarkJudgeMillis = 700;
         sPrintPrefix = "sys.stdout.write(str(";
         sPrintPostfix = "))";
         sPrintlnPrefix = "print(str(";
@@ -67,6 +69,8 @@ public final class PythonLang extends EditorLanguage
 
         sTrue = "True";
         sFalse = "False";
+        sFormatTimePrefix = "\"%.6f\" % (";
+        sFormatTimeSuffix = ")";
     }
 
     @Override
@@ -78,26 +82,37 @@ public final class PythonLang extends EditorLanguage
     }
 
 	/**
-	 * Gets regular expression for finding test case parameter initialization.
+	 * Finds the value of test case parameter in its initialization.
 	 * Python uses () instead of {} for arrays.
 	 *
-	 * @param num       Number of parameter
+	 * @param code      Test code being parsed
+	 * @param start     Position right after '=' and spaces in initialization
 	 * @param type      Type of parameter
-	 * @return          Regular expression for finding this parameter in code
+	 * @param bounds    Array receiving bounds of the value
+	 * @return          If the value was found
 	 *
-	 * @see             EditorLanguage#getTestParamRegex(int, EditorDataType)
+	 * @see             EditorLanguage#findTestParamValue(CharSequence, int, EditorDataType, int[])
 	 */
-	protected String getTestParamRegex(int num, EditorDataType type)
+	protected boolean findTestParamValue(CharSequence code, int start, EditorDataType type,
+	                                     int[] bounds)
 	{
-		String res = super.getTestParamRegex(num, type);
-		if (type.isArrayType()) {
-		    // Valid tuple syntax: (1,2,3..., 5): more than one element
-		    // If there is only one lement (2) does not represent a tuple
-		    // Must use (2,).
-            res = sArrayParamVarPrefix + num + ".*? = .*?\\((.*?),?+\\)"
-                  + sLineEnd + StringsUtil.sCRLFregex;
-        }
-		return res;
+		if (!type.isArrayType())
+			return super.findTestParamValue(code, start, type, bounds);
+		int open = StringsUtil.indexOf(code, '(', start);
+		if (0 > open)
+			return false;
+		int close = indexOfLineEnd(code, ")", open + 1);
+		if (0 > close)
+			return false;
+		bounds[0] = open + 1;
+		bounds[1] = close;
+		// Valid tuple syntax: (1,2,3..., 5): more than one element
+		// If there is only one lement (2) does not represent a tuple
+		// Must use (2,).
+		if (bounds[0] < bounds[1] && ',' == code.charAt(bounds[1] - 1))
+			--bounds[1];
+		bounds[2] = skipLineEnd(code, close + 1);
+		return true;
 	}
     
 	/*
@@ -233,6 +248,208 @@ public final class PythonLang extends EditorLanguage
         indentRight();
     }
 
+    /**
+     * Starts a loop with integer variable going from 0 to some number
+     * not inclusive.
+     *
+     * @param varName       Name of the loop variable
+     * @param countVarName  Name of the variable with number of iterations
+     *
+     * @see                 EditorLanguage#countLoopFirstLine(String, String)
+     */
+    protected void countLoopFirstLine(String varName, String countVarName)
+    {
+        text("for ").text(varName).text(" in range(").text(countVarName).text("):").endLine();
+        indentRight();
+    }
+
+    /**
+     * Adds functions reading values from test data file. The file is read
+     * into memory as a whole and values are unpacked from there. The reader is
+     * a list of the data and current position. Arrays are read into tuples
+     * like the ones in generated test cases.
+     *
+     * @see             EditorLanguage#testDataReaders()
+     */
+    protected void testDataReaders()
+    {
+        text("import struct").endLine();
+        text("def KawigiEdit_OpenTestData(fileName):").endLine();
+        indentRight();
+            text("f = open(fileName, \"rb\")").endLine();
+            text("data = f.read()").endLine();
+            text("f.close()").endLine();
+            text("if data[0:4] != b\"").text(TestDataFile.sMagic).text("\":").endLine();
+            indentRight();
+                text("raise IOError(fileName + \" is not a test data file\")").endLine();
+            indentLeft().text("return [data, 4]").endLine();
+        indentLeft().endLine();
+        text("def KawigiEdit_Unpack(f, fmt, size):").endLine();
+        indentRight();
+            text("res = struct.unpack_from(fmt, f[0], f[1])[0]").endLine();
+            text("f[1] += size").endLine();
+            text("return res").endLine();
+        indentLeft().endLine();
+        // Unpacking formats in the order of EditorDataType
+        String[] unpack = {null, "\"<i\", 4", "\"<d\", 8", "\"<q\", 8", "\"<B\", 1"};
+        for (EditorDataType type : EditorDataType.values()) {
+            text("def ").text(sTestDataReadFuncPrefix).text(type.name()).text("(f):").endLine();
+            indentRight();
+            if (type.isArrayType()) {
+                text("return tuple(").text(sTestDataReadFuncPrefix).text(type.getPrimitiveType().name())
+                        .text("(f) for i in range(").text(sTestDataReadFuncPrefix).text("Integer(f)))").endLine();
+            }
+            else if (type.isString()) {
+                text("n = ").text(sTestDataReadFuncPrefix).text("Integer(f)").endLine();
+                text("if len(f[0]) < f[1] + n:").endLine();
+                indentRight();
+                    text("raise EOFError(\"Unexpected end of test data\")").endLine();
+                indentLeft().text("f[1] += n").endLine();
+                text("return f[0][f[1] - n:f[1]].decode(\"utf-8\")").endLine();
+            }
+            else if (type.isType(EditorDataType.Boolean)) {
+                text("return KawigiEdit_Unpack(f, ").text(unpack[type.ordinal()]).text(") != 0").endLine();
+            }
+            else {
+                text("return KawigiEdit_Unpack(f, ").text(unpack[type.ordinal()]).text(')').endLine();
+            }
+            indentLeft().endLine();
+        }
+    }
+
+    /**
+     * Adds functions of the watchdog. It's a daemon timer thread, when it
+     * runs out the process exits without waiting for the solution.
+     *
+     * @see             EditorLanguage#watchdogFunctions()
+     */
+    protected void watchdogFunctions()
+    {
+        text("import os").endLine();
+        text("import threading").endLine();
+        text("KawigiEdit_Watchdog = None").endLine();
+        text("def KawigiEdit_WatchdogAlarm(testNum, seconds):").endLine();
+        indentRight();
+            text("print(\"Test \" + str(testNum) + \": no answer after \" + str(seconds) + \" seconds, testing stopped\")").endLine();
+            text("print(\"FAIL the timeout\")").endLine();
+            text("print(\"\")").endLine();
+            text("print(\"Some of the test cases had errors.\")").endLine();
+            text("sys.stdout.flush()").endLine();
+            text("os._exit(1)").endLine();
+        indentLeft().endLine();
+        text("def ").text(sWatchdogStartFuncName).text("(testNum, seconds):").endLine();
+        indentRight();
+            text("global KawigiEdit_Watchdog").endLine();
+            text("KawigiEdit_Watchdog = threading.Timer(seconds, KawigiEdit_WatchdogAlarm, [testNum, seconds])").endLine();
+            text("KawigiEdit_Watchdog.daemon = True").endLine();
+            text("KawigiEdit_Watchdog.start()").endLine();
+        indentLeft().endLine();
+        text("def ").text(sWatchdogStopFuncName).text("():").endLine();
+        indentRight();
+            text("KawigiEdit_Watchdog.cancel()").endLine();
+        indentLeft().endLine();
+    }
+
+    /**
+     * Adds nothing: standard output of Python is already buffered when it
+     * isn't a terminal, and it never is when tests are run by KawigiEdit.
+     *
+     * @see             EditorLanguage#bufferOutput()
+     */
+    protected void bufferOutput()
+    {}
+
+    /**
+     * Adds code flushing standard output.
+     *
+     * @see             EditorLanguage#flushOutput()
+     */
+    protected void flushOutput()
+    {
+        text("sys.stdout.flush()").endLine();
+    }
+
+    /**
+     * Adds code reading the number of the only test case to run from
+     * <code>sys.argv</code>.
+     *
+     * @see             EditorLanguage#readOnlyTest()
+     */
+    protected void readOnlyTest()
+    {
+        text(sOnlyTestVarName).text(" = int(sys.argv[1]) if len(sys.argv) > 1 else -1").endLine();
+    }
+
+    /**
+     * Adds the length of array variable.
+     *
+     * @param arrayName Name of array variable
+     * @return          All methods of <code>EditorLanguage</code> related to test code generation
+     *                  return <code>this</code> to make possible convinient call chains
+     *
+     * @see             EditorLanguage#arrayLen(String)
+     */
+    protected EditorLanguage arrayLen(String arrayName)
+    {
+        return text("len(").text(arrayName).text(')');
+    }
+
+    /**
+     * Adds the length of string variable.
+     *
+     * @param varName   Name of string variable
+     * @return          All methods of <code>EditorLanguage</code> related to test code generation
+     *                  return <code>this</code> to make possible convinient call chains
+     *
+     * @see             EditorLanguage#stringLen(String)
+     */
+    protected EditorLanguage stringLen(String varName)
+    {
+        return arrayLen(varName);
+    }
+
+    /**
+     * Adds the beginning of string variable.
+     *
+     * @param varName   Name of string variable
+     * @param countName Name of variable with the number of characters taken
+     * @return          All methods of <code>EditorLanguage</code> related to test code generation
+     *                  return <code>this</code> to make possible convinient call chains
+     *
+     * @see             EditorLanguage#stringHead(String, String)
+     */
+    protected EditorLanguage stringHead(String varName, String countName)
+    {
+        return text(varName).text("[:").text(countName).text(']');
+    }
+
+    /**
+     * Adds the end of string variable.
+     *
+     * @param varName   Name of string variable
+     * @param countName Name of variable with the number of characters taken
+     * @return          All methods of <code>EditorLanguage</code> related to test code generation
+     *                  return <code>this</code> to make possible convinient call chains
+     *
+     * @see             EditorLanguage#stringTail(String, String)
+     */
+    protected EditorLanguage stringTail(String varName, String countName)
+    {
+        return text(varName).text('[').stringLen(varName).text(" - ").text(countName).text(":]");
+    }
+
+    /**
+     * Adds code opening test data file.
+     *
+     * @param fileName  Name of test data file
+     *
+     * @see             EditorLanguage#openTestData(String)
+     */
+    protected void openTestData(String fileName)
+    {
+        text(sTestDataVarName).text(" = KawigiEdit_OpenTestData(\"").text(fileName).text("\")").endLine();
+    }
+
     /**
      * Declares the variable. Variable can be any of builtin types or
      * a class of problem-solver object.
@@ -246,7 +463,23 @@ public final class PythonLang extends EditorLanguage
     {}
 
     /**
-     * Method for adding code of remembering current time.
+     * Declares the named constant of builtin type. Python doesn't have
+     * constants, so it's just a variable.
+     *
+     * @param varName   Name of the constant to be declared.
+     * @param typeName  Type of the constant to be declared.
+     * @param value     Value of the constant as it's written in code.
+     *
+     * @see             EditorLanguage#constDeclare(CharSequence, CharSequence, CharSequence)
+     */
+    protected void constDeclare(CharSequence varName, CharSequence typeName, CharSequence value)
+    {
+        text(varName).text(" = ").text(value).endCodeLine();
+    }
+
+    /**
+     * Method for adding code of remembering current time. Wall time is taken
+     * from <code>time.perf_counter()</code>, CPU time - from <code>time.process_time()</code>.
      *
      * @param varName   Name of variable to remember time in.
      *
@@ -254,7 +487,8 @@ public final class PythonLang extends EditorLanguage
      */
     protected void rememberCurTime(String varName)
     {
-        text(varName).text(" = time.clock()").endCodeLine();
+        text(varName).text(" = time.perf_counter()").endCodeLine();
+        text(varName).text(sCpuTimeSuffix).text(" = time.process_time()").endCodeLine();
     }
 
     /**
@@ -274,6 +508,22 @@ public final class PythonLang extends EditorLanguage
         return this;
     }
 
+    /**
+     * Method for adding formula counting CPU time used between two moments
+     * in seconds (double value).
+     *
+     * @param varStart  Variable name of starting moment
+     * @param varEnd    Variable name of ending moment
+     * @return          All methods of <code>EditorLanguage</code> related to test code generation
+     *                  return <code>this</code> to make possible convinient call chains
+     *
+     * @see             EditorLanguage#cpuTimeDiff(String, String)
+     */
+    protected EditorLanguage cpuTimeDiff(String varStart, String varEnd)
+    {
+        return timeDiff(varStart + sCpuTimeSuffix, varEnd + sCpuTimeSuffix);
+    }
+
     /**
      * Adds code for test call of problem solver with remembering of it's working
      * time.
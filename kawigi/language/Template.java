@@ -0,0 +1,197 @@
+package kawigi.language;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * Code template parsed into the literal text and the tags between it, so
+ * that making the skeleton out of it is only concatenation. It also
+ * remembers which template file it was loaded from and how this file
+ * looked, to know when it has to be loaded again.
+ **/
+final class Template
+{
+	/**
+	 * Prefix of the tag in templates.
+	 **/
+	static final String sTagPrefix = "<%:";
+	/**
+	 * Postfix of the tag in templates.
+	 **/
+	static final String sTagPostfix = "%>";
+	/**
+	 * Name of the tag marking the place for the caret.
+	 **/
+	static final String sSetCaretTagName = "set-caret";
+
+	/**
+	 * Template file this template was loaded from, or <code>null</code> for
+	 * the default template.
+	 **/
+	private final File file;
+	/**
+	 * Modification time and length of the template file when it was loaded.
+	 **/
+	private final long lastModified, length;
+	/**
+	 * Literal text of the template: <code>chunks[i]</code> goes before
+	 * <code>tags[i]</code>, and the last one goes after all tags.
+	 **/
+	private final String[] chunks;
+	/**
+	 * Names of tags in the order they appear in the template.
+	 **/
+	private final String[] tags;
+
+	/**
+	 * Parses the template text.
+	 *
+	 * @param file          Template file the text was loaded from, or
+	 *                      <code>null</code>
+	 * @param lastModified  Modification time of the file before loading
+	 * @param length        Length of the file before loading
+	 * @param text          Text of the template
+	 **/
+	Template(File file, long lastModified, long length, String text)
+	{
+		this.file = file;
+		this.lastModified = lastModified;
+		this.length = length;
+		ArrayList<String> chunkList = new ArrayList<String>();
+		ArrayList<String> tagList = new ArrayList<String>();
+		int[] name = new int[2];
+		int last = 0;
+		int ind = text.indexOf(sTagPrefix);
+		while (0 <= ind) {
+			int end = findTagEnd(text, ind, true, name);
+			if (0 > end) {
+				ind = text.indexOf(sTagPrefix, ind + 1);
+				continue;
+			}
+			chunkList.add(text.substring(last, ind));
+			tagList.add(text.substring(name[0], name[1]));
+			last = end;
+			ind = text.indexOf(sTagPrefix, end);
+		}
+		chunkList.add(text.substring(last));
+		chunks = chunkList.toArray(new String[chunkList.size()]);
+		tags = tagList.toArray(new String[tagList.size()]);
+	}
+
+	/**
+	 * Checks if this template was loaded from the given file (or from the
+	 * default one if it's <code>null</code>) and the file didn't change since.
+	 *
+	 * @param f     Template file
+	 * @return      If this template is still up to date
+	 **/
+	boolean isLoadedFrom(File f)
+	{
+		if (null == f || null == file)
+			return f == file;
+		return file.equals(f) && f.lastModified() == lastModified && f.length() == length;
+	}
+
+	/**
+	 * Returns the number of tags in the template.
+	 **/
+	int countTags()
+	{
+		return tags.length;
+	}
+
+	/**
+	 * Returns the literal text going before the tag with the given number,
+	 * or after all tags if the number is <code>countTags()</code>.
+	 **/
+	String getChunk(int num)
+	{
+		return chunks[num];
+	}
+
+	/**
+	 * Returns the name of the tag with the given number as it's written in
+	 * the template.
+	 **/
+	String getTag(int num)
+	{
+		return tags[num];
+	}
+
+	/**
+	 * Removes all tags from the code in one pass.
+	 *
+	 * @param code      Code with tags
+	 * @return          Code without tags
+	 **/
+	static String removeTags(String code)
+	{
+		int ind = code.indexOf(sTagPrefix);
+		if (0 > ind)
+			return code;
+		StringBuilder res = new StringBuilder(code.length());
+		int last = 0;
+		while (0 <= ind) {
+			int end = findTagEnd(code, ind, false, null);
+			if (0 > end) {
+				ind = code.indexOf(sTagPrefix, ind + 1);
+				continue;
+			}
+			res.append(code, last, ind);
+			last = end;
+			ind = code.indexOf(sTagPrefix, end);
+		}
+		res.append(code, last, code.length());
+		return res.toString();
+	}
+
+	/**
+	 * Checks if there is a tag at the given position, like
+	 * <code>&lt;%:class-name%&gt;</code>. Tag name is made of latin letters,
+	 * digits, '_' and '-'.
+	 *
+	 * @param text      Text to look at
+	 * @param start     Position of the tag prefix
+	 * @param withSpace If whitespace is allowed around the tag name
+	 * @param name      Array to receive the bounds of the tag name, or
+	 *                  <code>null</code>
+	 * @return          Position after the tag, or -1 if there's no tag
+	 **/
+	private static int findTagEnd(String text, int start, boolean withSpace, int[] name)
+	{
+		int ind = start + sTagPrefix.length();
+		if (withSpace)
+			ind = skipSpace(text, ind);
+		int nameStart = ind;
+		while (text.length() > ind && isTagNameChar(text.charAt(ind)))
+			++ind;
+		if (nameStart == ind)
+			return -1;
+		int nameEnd = ind;
+		if (withSpace)
+			ind = skipSpace(text, ind);
+		if (!text.startsWith(sTagPostfix, ind))
+			return -1;
+		if (null != name) {
+			name[0] = nameStart;
+			name[1] = nameEnd;
+		}
+		return ind + sTagPostfix.length();
+	}
+
+	private static boolean isTagNameChar(char c)
+	{
+		return 'a' <= c && 'z' >= c || 'A' <= c && 'Z' >= c || '0' <= c && '9' >= c
+		       || '_' == c || '-' == c;
+	}
+
+	/**
+	 * Skips whitespace the way "\s" does in regular expressions.
+	 **/
+	private static int skipSpace(String text, int ind)
+	{
+		while (text.length() > ind && 0 <= " \t\n\u000B\f\r".indexOf(text.charAt(ind)))
+			++ind;
+		return ind;
+	}
+}
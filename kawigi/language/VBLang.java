@@ -2,6 +2,7 @@ package kawigi.language;
 
 import java.io.File;
 
+import kawigi.problem.TestDataFile;
 import kawigi.util.StringsUtil;
 
 
@@ -48,6 +49,7 @@ public final class VBLang extends EditorLanguage
 		sDefaultFileName = "$PROBLEM$.vb";
 		sDefaultCompileCommand = "vbc $PROBLEM$.vb";
 		sDefaultExecuteCommand = '/' == File.separatorChar? "mono $PROBLEM$.exe": "$CWD$\\$PROBLEM$.exe";
+		nBenchmarkJudgeMillis = 700;
 		sLineComment = "'";
 		sPrintStrAdd = " & ";
 		sLineEnd = "";
@@ -240,6 +242,21 @@ public final class VBLang extends EditorLanguage
 		indentRight();
 	}
 
+	/**
+	 * Starts a loop with integer variable going from 0 to some number
+	 * not inclusive.
+	 *
+	 * @param varName       Name of the loop variable (declared by the loop)
+	 * @param countVarName  Name of the variable with number of iterations
+	 *
+	 * @see                 EditorLanguage#countLoopFirstLine(String, String)
+	 */
+	protected void countLoopFirstLine(String varName, String countVarName)
+	{
+		text("For ").text(varName).text(" As Integer = 0 To ").text(countVarName).text(" - 1").endLine();
+		indentRight();
+	}
+
 	/**
 	 * Declares the variable. Variable can be any of builtin types or
 	 * a class of problem-solver object.
@@ -255,7 +272,22 @@ public final class VBLang extends EditorLanguage
 	}
 
 	/**
-	 * Method for adding code of remembering current time.
+	 * Declares the named constant of builtin type.
+	 *
+	 * @param varName   Name of the constant to be declared.
+	 * @param typeName  Type of the constant to be declared.
+	 * @param value     Value of the constant as it's written in code.
+	 *
+	 * @see             EditorLanguage#constDeclare(CharSequence, CharSequence, CharSequence)
+	 */
+	protected void constDeclare(CharSequence varName, CharSequence typeName, CharSequence value)
+	{
+		text("Const ").text(varName).text(" As ").text(typeName).text(" = ").text(value).endCodeLine();
+	}
+
+	/**
+	 * Method for adding code of remembering current time. Wall time is taken
+	 * from <code>Stopwatch</code>, CPU time - from total processor time of the process.
 	 *
 	 * @param varName   Name of variable to remember time in.
 	 *
@@ -263,8 +295,9 @@ public final class VBLang extends EditorLanguage
 	 */
 	protected void rememberCurTime(String varName)
 	{
-		text("Dim ").text(varName).text(" As DateTime").endCodeLine();
-		text(varName).text(" = DateTime.Now").endCodeLine();
+		text("Dim ").text(varName).text(" As Long = System.Diagnostics.Stopwatch.GetTimestamp()").endCodeLine();
+		text("Dim ").text(varName).text(sCpuTimeSuffix)
+			.text(" As TimeSpan = System.Diagnostics.Process.GetCurrentProcess().TotalProcessorTime").endCodeLine();
 	}
 
 	/**
@@ -280,7 +313,148 @@ public final class VBLang extends EditorLanguage
 	 */
 	protected EditorLanguage timeDiff(String varStart, String varEnd)
 	{
-		return text(varEnd).text(".Subtract(").text(varStart).text(").TotalSeconds");
+		return text('(').text(varEnd).text(" - ").text(varStart)
+				.text(") / System.Diagnostics.Stopwatch.Frequency");
+	}
+
+	/**
+	 * Method for adding formula counting CPU time used between two moments
+	 * in seconds (double value).
+	 *
+	 * @param varStart  Variable name of starting moment
+	 * @param varEnd    Variable name of ending moment
+	 * @return          All methods of <code>EditorLanguage</code> related to test code generation
+	 *                  return <code>this</code> to make possible convinient call chains
+	 *
+	 * @see             EditorLanguage#cpuTimeDiff(String, String)
+	 */
+	protected EditorLanguage cpuTimeDiff(String varStart, String varEnd)
+	{
+		return text(varEnd).text(sCpuTimeSuffix).text(".Subtract(").text(varStart)
+				.text(sCpuTimeSuffix).text(").TotalSeconds");
+	}
+
+	/**
+	 * Adds functions reading values from test data file. The file is read
+	 * into memory as a whole and values are taken from there.
+	 *
+	 * @see             EditorLanguage#testDataReaders()
+	 */
+	protected void testDataReaders()
+	{
+		String reader = "System.IO.BinaryReader";
+		text("Function KawigiEdit_OpenTestData(ByVal fileName As String) As ").text(reader).endLine();
+		indentRight();
+			text("Dim res As New ").text(reader)
+					.text("(New System.IO.MemoryStream(System.IO.File.ReadAllBytes(fileName)))").endLine();
+			text("If System.Text.Encoding.ASCII.GetString(res.ReadBytes(4)) <> \"").text(TestDataFile.sMagic)
+					.text("\" Then").endLine();
+			indentRight();
+				text("Throw New System.IO.InvalidDataException(fileName & \" is not a test data file\")").endLine();
+			indentLeft().text(sEndIfStat).endLine();
+			text("Return res").endLine();
+		indentLeft().text(sFuncEnd).endLine();
+		for (EditorDataType type : EditorDataType.values()) {
+			text("Function ").text(sTestDataReadFuncPrefix).text(type.name())
+					.text("(ByVal r As ").text(reader).text(") As ").text(getTypeName(type)).endLine();
+			indentRight();
+			if (type.isArrayType()) {
+				EditorDataType elem = type.getPrimitiveType();
+				text("Dim res(r.ReadInt32() - 1) As ").text(getTypeName(elem)).endLine();
+				text("For i As Integer = 0 To res.Length - 1").endLine();
+				indentRight();
+					text("res(i) = ").text(sTestDataReadFuncPrefix).text(elem.name()).text("(r)").endLine();
+				indentLeft().text(sForEndStat).endLine();
+				text("Return res").endLine();
+			}
+			else if (type.isString())
+				text("Return System.Text.Encoding.UTF8.GetString(r.ReadBytes(r.ReadInt32()))").endLine();
+			else if (type.isType(EditorDataType.Boolean))
+				text("Return r.ReadByte() <> 0").endLine();
+			else if (type.isType(EditorDataType.Integer))
+				text("Return r.ReadInt32()").endLine();
+			else if (type.isType(EditorDataType.Long))
+				text("Return r.ReadInt64()").endLine();
+			else
+				text("Return r.ReadDouble()").endLine();
+			indentLeft().text(sFuncEnd).endLine();
+		}
+	}
+
+	/**
+	 * Adds functions of the watchdog. It's a thread pool timer, when it runs
+	 * out the process exits without waiting for the solution.
+	 *
+	 * @see             EditorLanguage#watchdogFunctions()
+	 */
+	protected void watchdogFunctions()
+	{
+		text("Dim KawigiEdit_Watchdog As System.Threading.Timer").endLine();
+		text("Dim KawigiEdit_WatchdogSeconds As Double").endLine();
+		text("Sub KawigiEdit_WatchdogAlarm(ByVal testNum As Object)").endLine();
+		indentRight();
+			text("Console.WriteLine(\"Test \" & testNum & \": no answer after \" & KawigiEdit_WatchdogSeconds & \" seconds, testing stopped\")").endLine();
+			text("Console.WriteLine(\"FAIL the timeout\")").endLine();
+			text("Console.WriteLine(\"\")").endLine();
+			text("Console.WriteLine(\"Some of the test cases had errors.\")").endLine();
+			text("Console.Out.Flush()").endLine();
+			text("Environment.Exit(1)").endLine();
+		indentLeft().text("End Sub").endLine();
+		text("Sub ").text(sWatchdogStartFuncName).text("(ByVal testNum As Integer, ByVal seconds As Double)").endLine();
+		indentRight();
+			text("KawigiEdit_WatchdogSeconds = seconds").endLine();
+			text("KawigiEdit_Watchdog = New System.Threading.Timer(AddressOf KawigiEdit_WatchdogAlarm, testNum, CLng(seconds * 1000), System.Threading.Timeout.Infinite)").endLine();
+		indentLeft().text("End Sub").endLine();
+		text("Sub ").text(sWatchdogStopFuncName).text("()").endLine();
+		indentRight();
+			text("KawigiEdit_Watchdog.Dispose()").endLine();
+		indentLeft().text("End Sub").endLine();
+	}
+
+	/**
+	 * Replaces console output, which is flushed after every write, with
+	 * a writer that isn't.
+	 *
+	 * @see             EditorLanguage#bufferOutput()
+	 */
+	protected void bufferOutput()
+	{
+		text("Console.SetOut(New System.IO.StreamWriter(Console.OpenStandardOutput()))").endLine();
+	}
+
+	/**
+	 * Adds code flushing console output.
+	 *
+	 * @see             EditorLanguage#flushOutput()
+	 */
+	protected void flushOutput()
+	{
+		text("Console.Out.Flush()").endLine();
+	}
+
+	/**
+	 * Adds code reading the number of the only test case to run from
+	 * <code>args</code>.
+	 *
+	 * @see             EditorLanguage#readOnlyTest()
+	 */
+	protected void readOnlyTest()
+	{
+		text(sOnlyTestVarName).text(" = -1").endLine();
+		text("If args.Length > 0 Then ").text(sOnlyTestVarName).text(" = Integer.Parse(args(0))").endLine();
+	}
+
+	/**
+	 * Adds code opening test data file.
+	 *
+	 * @param fileName  Name of test data file
+	 *
+	 * @see             EditorLanguage#openTestData(String)
+	 */
+	protected void openTestData(String fileName)
+	{
+		text("Dim ").text(sTestDataVarName).text(" As System.IO.BinaryReader = KawigiEdit_OpenTestData(\"")
+				.text(fileName).text("\")").endLine();
 	}
 
 	/**
@@ -290,7 +464,7 @@ public final class VBLang extends EditorLanguage
 	 */
 	protected void mainSubDef()
 	{
-		text("Sub Main()");
+		text("Sub Main(ByVal args() As String)");
 		super.mainSubDef();
 	}
 
@@ -309,19 +483,23 @@ public final class VBLang extends EditorLanguage
 	protected void escapeSequences(StringBuilder val, EditorDataType type)
 	{
 		assert type.isString();
+		int len = val.length();
+		StringBuilder res = new StringBuilder(len + len / 8 + 4);
 		boolean isInQuote = false;
-		for (int i = 0; val.length() > i; ++i) {
+		for (int i = 0; len > i; ++i) {
 			char c = val.charAt(i);
 			if ('\\' == c) {
 				// If we in quotes then this is an array and quotes and backslashes
 				// will be already escaped. So we need to undo this escaping.
-				if (isInQuote && val.length() > i + 1) {
-					if ('"' == val.charAt(i + 1)) {
-						val.setCharAt(i, '"');
+				if (isInQuote && len > i + 1) {
+					char next = val.charAt(i + 1);
+					if ('"' == next) {
+						res.append('"');
+						c = next;
 						++i;
 					}
-					else if ('\\' == val.charAt(i + 1))
-						val.deleteCharAt(i + 1);
+					else if ('\\' == next)
+						++i;
 				}
 			}  // if ('\\' == c)
 			else if ('"' == c) {
@@ -331,11 +509,12 @@ public final class VBLang extends EditorLanguage
 					isInQuote = !isInQuote;
 				}
 				else {
-					val.insert(i, '"');
-					++i;
+					res.append('"');
 				}
 			}  // if ('"' == c), if ('\\' == c) else
-		}  // for (int i = 0; val.length() > i; ++i)
+			res.append(c);
+		}  // for (int i = 0; len > i; ++i)
+		StringsUtil.reset(val, res);
 	}
 	//============================================================================
 
@@ -357,34 +536,31 @@ public final class VBLang extends EditorLanguage
 	protected void unescapeSequences(StringBuilder val, EditorDataType type)
 	{
 		assert type.isString();
+		boolean isArray = type.isArrayType();
+		int len = val.length();
+		StringBuilder res = new StringBuilder(len + 16);
 		boolean isInQuote = false;
-		for (int i = 0; val.length() > i; ++i) {
+		for (int i = 0; len > i; ++i) {
 			char c = val.charAt(i);
 			if ('\\' == c) {
 				// If we met backslash in quotes then it is array and our system needs
 				// it to be escaped
-				if (isInQuote) {
-					val.insert(i, '\\');
-					++i;
-				}
+				if (isInQuote)
+					res.append('\\');
 			}  // if ('\\' == c)
 			else if ('"' == c) {
-				boolean isArray = type.isArrayType();
 				if (isArray && !isInQuote) {
 					// If we met quote in array but not inside quote, then it is
 					// starting of new array element
 					isInQuote = true;
 				}
-				else if (val.length() > i + 1 && '"' == val.charAt(i + 1)) {
+				else if (len > i + 1 && '"' == val.charAt(i + 1)) {
 					// If we have double quotes then it is single quote inside string.
 					// We need to escape quote in array ('cause our system forces
 					// to do so) or leave single quote in simple string
-					if (isInQuote) {
-						val.setCharAt(i, '\\');
-						++i;
-					}
-					else
-						val.deleteCharAt(i);
+					if (isInQuote)
+						res.append('\\');
+					++i;
 				}
 				else if (isArray) {
 					// If this is array and we here then this is an ending
@@ -392,27 +568,39 @@ public final class VBLang extends EditorLanguage
 					isInQuote = false;
 				}
 			}  // if ('"' == c), if ('\\' == c) else
-		}  // for (int i = 0; val.length() > i; ++i)
+			res.append(c);
+		}  // for (int i = 0; len > i; ++i)
+		StringsUtil.reset(val, res);
 	}
 
 	/**
-	 * Gets regular expression for finding test case parameter initialization.
+	 * Finds the value of test case parameter in its initialization.
 	 * For VB it takes care of multiline strings: string constant must not end
 	 * with '_'.
 	 *
-	 * @param num       Number of parameter
+	 * @param code      Test code being parsed
+	 * @param start     Position right after '=' and spaces in initialization
 	 * @param type      Type of parameter
-	 * @return          Regular expression for finding this parameter in code
+	 * @param bounds    Array receiving bounds of the value
+	 * @return          If the value was found
 	 *
-	 * @see             EditorLanguage#getTestParamRegex(int, EditorDataType)
+	 * @see             EditorLanguage#findTestParamValue(CharSequence, int, EditorDataType, int[])
 	 */
-	protected String getTestParamRegex(int num, EditorDataType type)
+	protected boolean findTestParamValue(CharSequence code, int start, EditorDataType type,
+	                                     int[] bounds)
 	{
-		String res;
-		if (type.isString() && !type.isArrayType())
-			res = sTestParamVarPrefix + num + " = (.*?[^_])" + StringsUtil.sCRLFregex;
-		else
-			res = super.getTestParamRegex(num, type);
-		return res;
+		if (!type.isString() || type.isArrayType())
+			return super.findTestParamValue(code, start, type, bounds);
+		for (int ind = StringsUtil.indexOf(code, '\n', start); 0 <= ind;
+		     ind = StringsUtil.indexOf(code, '\n', ind + 1)) {
+			int end = (start < ind && '\r' == code.charAt(ind - 1))? ind - 1: ind;
+			if (start < end && '_' != code.charAt(end - 1)) {
+				bounds[0] = start;
+				bounds[1] = end;
+				bounds[2] = ind + 1;
+				return true;
+			}
+		}
+		return false;
 	}
 }
@@ -1,7 +1,10 @@
 package kawigi.problem;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -34,6 +37,23 @@ public final class ClassDecl
 	 * List of test cases for this problem.
 	 **/
 	private List<Test> tests = new ArrayList<Test>();
+	/**
+	 * Contents of test cases (their typed values) in the same order as
+	 * <code>tests</code>, or <code>null</code> if the index of test cases
+	 * wasn't needed yet. Contents are kept here as they were when the test
+	 * was added, so that the index is right even if the test changes later.
+	 **/
+	private List<List<TestValue>> testKeys;
+	/**
+	 * Index of test cases by their contents: the number of tests with each
+	 * content. It's built at the first lookup and then kept up to date.
+	 **/
+	private Map<List<TestValue>, Integer> testIndex;
+	/**
+	 * Time limit of this problem in milliseconds, or 0 if the default time
+	 * limit of the language should be used.
+	 **/
+	private int timeLimit;
 
 	/**
 	 * Constructs a new ClassDecl with the given name and method. Given objects
@@ -63,6 +83,57 @@ public final class ClassDecl
 	public void addTest(Test t)
 	{
 		tests.add(t);
+		if (null != testKeys) {
+			List<TestValue> key = getTestKey(t);
+			testKeys.add(key);
+			indexTest(key, 1);
+		}
+	}
+
+	/**
+	 * Adds this test to the list of tests unless there's already a test with
+	 * the same parameters and answer. Takes constant time.
+	 *
+	 * @param t     Test to add to the problem
+	 * @return      If the test was added
+	 **/
+	public boolean addNewTest(Test t)
+	{
+		if (hasTest(t))
+			return false;
+		addTest(t);
+		return true;
+	}
+
+	/**
+	 * Adds all tests of another class to the list of tests, except for those
+	 * with the same parameters and answer as some test already in the list.
+	 * Takes constant time per test.
+	 *
+	 * @param other     Class to take tests from, with the same method
+	 * @return          Number of tests added
+	 **/
+	public int addNewTests(ClassDecl other)
+	{
+		int res = 0;
+		for (int i = 0; other.countTests() > i; ++i)
+			if (addNewTest(other.getTest(i)))
+				++res;
+		return res;
+	}
+
+	/**
+	 * Checks if there is a test with the same parameters and answer as the
+	 * given one, by their typed values. Takes constant time except for the
+	 * first call, which builds the index of all tests.
+	 *
+	 * @param t     Test to look for
+	 * @return      If the list of tests has such a test
+	 **/
+	public boolean hasTest(Test t)
+	{
+		buildTestIndex();
+		return testIndex.containsKey(getTestKey(t));
 	}
 
 	/**
@@ -139,6 +210,11 @@ public final class ClassDecl
 	public void setTest(int index, Test t)
 	{
 		tests.set(index, t);
+		if (null != testKeys) {
+			List<TestValue> key = getTestKey(t);
+			indexTest(testKeys.set(index, key), -1);
+			indexTest(key, 1);
+		}
 	}
 
 	/**
@@ -149,6 +225,8 @@ public final class ClassDecl
 	public void removeTest(int index)
 	{
 		tests.remove(index);
+		if (null != testKeys)
+			indexTest(testKeys.remove(index), -1);
 	}
 
 	/**
@@ -157,5 +235,65 @@ public final class ClassDecl
 	public void removeAllTests()
 	{
 		tests.clear();
+		testKeys = null;
+		testIndex = null;
+	}
+
+	/**
+	 * Returns the content of the test, which is the key of the test index.
+	 **/
+	private List<TestValue> getTestKey(Test t)
+	{
+		return Arrays.asList(t.getValues(method));
+	}
+
+	/**
+	 * Builds the index of test cases unless it's built already.
+	 **/
+	private void buildTestIndex()
+	{
+		if (null != testKeys)
+			return;
+		testKeys = new ArrayList<List<TestValue>>(tests.size());
+		testIndex = new HashMap<List<TestValue>, Integer>(2 * tests.size());
+		for (Test t : tests) {
+			List<TestValue> key = getTestKey(t);
+			testKeys.add(key);
+			indexTest(key, 1);
+		}
+	}
+
+	/**
+	 * Changes the number of tests with the given content in the index.
+	 *
+	 * @param key       Content of the test
+	 * @param delta     Number of tests added (or removed, if negative)
+	 **/
+	private void indexTest(List<TestValue> key, int delta)
+	{
+		Integer count = testIndex.get(key);
+		int n = (null == count? 0: count) + delta;
+		if (0 < n)
+			testIndex.put(key, n);
+		else
+			testIndex.remove(key);
+	}
+
+	/**
+	 * Returns the time limit of this problem in milliseconds, or 0 if it
+	 * doesn't have its own time limit.
+	 **/
+	public int getTimeLimit()
+	{
+		return timeLimit;
+	}
+
+	/**
+	 * Sets the time limit of this problem in milliseconds. 0 means that the
+	 * default time limit of the language should be used.
+	 **/
+	public void setTimeLimit(int timeLimit)
+	{
+		this.timeLimit = timeLimit;
 	}
 }
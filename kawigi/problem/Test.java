@@ -1,5 +1,6 @@
 package kawigi.problem;
 
+import kawigi.language.EditorDataType;
 import kawigi.util.StringsUtil;
 
 
@@ -27,6 +28,16 @@ public final class Test implements Cloneable
 	 *  True if and only if the test case is disabled?
 	 **/
 	private boolean disabled;
+	/**
+	 * Typed values of the parameters and the answer parsed by
+	 * <code>getValues</code>, or <code>null</code> if they weren't parsed
+	 * since the last change.
+	 **/
+	private TestValue[] values;
+	/**
+	 * Method <code>values</code> were parsed for.
+	 **/
+	private MethodDecl valuesMethod;
 
 	/**
 	 * Constructs a new Test with the given parameters without answer checking.
@@ -103,6 +114,7 @@ public final class Test implements Cloneable
 	public void setAnswer(StringBuilder answer)
 	{
 		this.answer = null == answer? new StringBuilder(0): answer;
+		values = null;
 	}
 
 	/**
@@ -123,6 +135,7 @@ public final class Test implements Cloneable
 	public void setWithAnswer(boolean needAnswer)
 	{
 		this.needAnswer = needAnswer;
+		values = null;
 	}
 	
 	/**
@@ -152,6 +165,43 @@ public final class Test implements Cloneable
 		return parameters;
 	}
 
+	/**
+	 * Returns typed values of the parameters followed by the typed value of
+	 * the answer, or <code>null</code> in its place if the answer isn't
+	 * checked. Values are parsed at the first call and then returned at once
+	 * until the test changes, so returned array shouldn't be changed.
+	 * Malformed values don't make an error here, they are only marked.
+	 *
+	 * @param method    Method declaration giving types of the values
+	 * @return          Array of typed values
+	 *
+	 * @see             TestValue#valueOf(CharSequence, EditorDataType)
+	 **/
+	public TestValue[] getValues(MethodDecl method)
+	{
+		if (null == values || valuesMethod != method) {
+			EditorDataType[] types = method.getParamTypes();
+			TestValue[] res = new TestValue[types.length + 1];
+			for (int i = 0; types.length > i; ++i)
+				res[i] = TestValue.valueOf(parameters[i], types[i]);
+			if (needAnswer)
+				res[types.length] = TestValue.valueOf(answer, method.getReturnType());
+			valuesMethod = method;
+			values = res;
+		}
+		return values;
+	}
+
+	/**
+	 * Tells that parameters or the answer were changed in place, through
+	 * StringBuilder's returned by <code>getParameters</code> and
+	 * <code>getAnswer</code>, so that their typed values are parsed again.
+	 **/
+	public void valuesChanged()
+	{
+		values = null;
+	}
+
 	/**
 	 * Copies this object into another one.
 	 *
@@ -166,6 +216,7 @@ public final class Test implements Cloneable
 			o.parameters[i] = new StringBuilder(parameters[i]);
 		o.answer = new StringBuilder(answer);
 		o.disabled = disabled;
+		o.values = null;
 		return o;
 	}
 
@@ -0,0 +1,332 @@
+package kawigi.problem;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+import kawigi.language.EditorDataType;
+
+/**
+ * Converts the test cases of a problem to and from the test data file that
+ * the testing code reads at runtime when test cases are not embedded into it.
+ *
+ * The format is binary and the same for all languages, so that even
+ * thousands of large test cases are read by the testing code with one bulk
+ * read (or memory mapping) and no parsing. All numbers are little-endian.
+ * The file starts with the 4 bytes of <code>sMagic</code> and the number of
+ * tests. Then for each test follow its disabled and has-answer flags, all
+ * parameters and the answer. Values are typed by <code>EditorDataType</code>:
+ * <ul>
+ * <li>int - 4 bytes, long - 8 bytes, double - 8 bytes IEEE 754;</li>
+ * <li>boolean - 1 byte, 0 or 1;</li>
+ * <li>String - int length in bytes followed by UTF-8 bytes;</li>
+ * <li>arrays - int number of elements followed by the elements.</li>
+ * </ul>
+ * If a test has no answer, an empty value of the return type is written in
+ * its place.
+ *
+ * After the tests follows the text of every parameter and answer as the
+ * user wrote it (as a String value, the answer is empty if there's none).
+ * The testing code doesn't read it, it's only there so that loading the
+ * solution gives back the same test cases and not values respelled from
+ * their types ("2.0" for "2", "true" for Python "True").
+ **/
+public final class TestDataFile
+{
+	/**
+	 * Extension of the test data file that is put next to the solution.
+	 **/
+	public static final String sExtension = ".tests";
+	/**
+	 * First bytes of the file. The digit is the version of the format.
+	 **/
+	public static final String sMagic = "KET1";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private TestDataFile()
+	{}
+
+	/**
+	 * Returns the name of the test data file for the given class.
+	 *
+	 * @param className     Name of the problem class
+	 * @return              Name of the file, without directory
+	 **/
+	public static String getFileName(CharSequence className)
+	{
+		return className + sExtension;
+	}
+
+	/**
+	 * Makes the content of the test data file for all test cases of the class.
+	 *
+	 * @param cl    Class declaration with test cases
+	 * @return      Content of the test data file
+	 * @throws      NumberFormatException if some number in test cases is
+	 *              malformed (the message tells which one)
+	 **/
+	public static byte[] write(ClassDecl cl)
+	{
+		EditorDataType[] paramTypes = cl.getMethod().getParamTypes();
+		EditorDataType retType = cl.getMethod().getReturnType();
+		Output out = new Output(64 * (cl.countTests() + 1));
+		out.bytes(sMagic.getBytes(UTF8));
+		out.buf.putInt(cl.countTests());
+		for (int i = 0; cl.countTests() > i; ++i) {
+			Test t = cl.getTest(i);
+			out.ensure(2);
+			out.buf.put((byte)(t.isDisabled()? 1: 0));
+			out.buf.put((byte)(t.isWithAnswer()? 1: 0));
+			TestValue[] values = t.getValues(cl.getMethod());
+			try {
+				for (int j = 0; paramTypes.length > j; ++j)
+					writeValue(out, values[j]);
+				writeValue(out, t.isWithAnswer()? values[paramTypes.length]: TestValue.empty(retType));
+			}
+			catch (NumberFormatException e) {
+				throw new NumberFormatException("Test " + i + ": " + e.getMessage());
+			}
+		}
+		for (int i = 0; cl.countTests() > i; ++i) {
+			Test t = cl.getTest(i);
+			for (StringBuilder p : t.getParameters())
+				writeText(out, p);
+			writeText(out, t.isWithAnswer()? t.getAnswer(): "");
+		}
+		byte[] res = new byte[out.buf.position()];
+		out.buf.flip();
+		out.buf.get(res);
+		return res;
+	}
+
+	/**
+	 * Reads test cases from the content of the test data file and adds them
+	 * to the class.
+	 *
+	 * @param data  Content of the test data file
+	 * @param cl    Class declaration to add test cases to
+	 * @return      Number of test cases read, or -1 if the data is malformed
+	 *              (test cases read before the error are added anyway)
+	 **/
+	public static int read(ByteBuffer data, ClassDecl cl)
+	{
+		EditorDataType[] paramTypes = cl.getMethod().getParamTypes();
+		EditorDataType retType = cl.getMethod().getReturnType();
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			byte[] magic = new byte[sMagic.length()];
+			data.get(magic);
+			if (!sMagic.equals(new String(magic, UTF8)))
+				return -1;
+			int count = data.getInt();
+			// Every test takes at least its two flags, check it before
+			// allocating arrays for a damaged count
+			if (0 > count || count > data.remaining() / 2)
+				return -1;
+			boolean[] flags = new boolean[2 * count];
+			TestValue[] values = new TestValue[count * (paramTypes.length + 1)];
+			int read = 0;
+			try {
+				for (int k = 0; count > read; ++read) {
+					flags[2 * read] = 0 != data.get();
+					flags[2 * read + 1] = 0 != data.get();
+					for (int j = 0; paramTypes.length > j; ++j)
+						values[k++] = readValue(data, paramTypes[j]);
+					values[k++] = readValue(data, retType);
+				}
+			}
+			catch (BufferUnderflowException e) {
+				// test cases read before the error are added below
+			}
+			catch (IllegalArgumentException e) {
+				// negative length of string or array, the same as above
+			}
+			// Texts of values follow only if all tests were read
+			boolean hasTexts = count == read && data.hasRemaining();
+			for (int i = 0, k = 0; read > i; ++i) {
+				StringBuilder[] params = new StringBuilder[paramTypes.length];
+				for (int j = 0; paramTypes.length > j; ++j)
+					params[j] = toText(data, hasTexts, values[k++]);
+				StringBuilder answer = toText(data, hasTexts, values[k++]);
+				cl.addTest(params, flags[2 * i + 1]? answer: null, flags[2 * i]);
+			}
+			return count == read? count: -1;
+		}
+		catch (BufferUnderflowException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Gets the text of the value for <code>Test</code>: the text written after
+	 * the tests if it's there and means the same value, otherwise the value
+	 * spelled from its type.
+	 *
+	 * @param in        Content of the data file, at the text of the value
+	 * @param hasTexts  If the data file has texts of values
+	 * @param val       Typed value read from the data file
+	 * @return          Text of the value
+	 **/
+	private static StringBuilder toText(ByteBuffer in, boolean hasTexts, TestValue val)
+	{
+		if (hasTexts && 4 <= in.remaining()) {
+			int len = in.getInt();
+			if (0 <= len && in.remaining() >= len) {
+				byte[] b = new byte[len];
+				in.get(b);
+				String text = new String(b, UTF8);
+				if (val.equals(TestValue.valueOf(text, val.getType())))
+					return new StringBuilder(text);
+			}
+		}
+		return new StringBuilder(val.toString());
+	}
+
+	/**
+	 * Writes the text of the value as a String value.
+	 **/
+	private static void writeText(Output out, CharSequence text)
+	{
+		byte[] b = text.toString().getBytes(UTF8);
+		out.ensure(4);
+		out.buf.putInt(b.length);
+		out.bytes(b);
+	}
+
+	/**
+	 * Writes one value in the data file format.
+	 *
+	 * @param out   Buffer to write to
+	 * @param val   Typed value
+	 * @throws      NumberFormatException if the value is malformed
+	 **/
+	private static void writeValue(Output out, TestValue val)
+	{
+		if (null != val.getError())
+			throw new NumberFormatException(val.getError());
+		EditorDataType type = val.getType();
+		if (type.isArrayType()) {
+			type = type.getPrimitiveType();
+			out.ensure(4);
+			out.buf.putInt(val.size());
+		}
+		for (int i = 0; val.size() > i; ++i) {
+			if (type.isString()) {
+				byte[] b = val.getString(i).getBytes(UTF8);
+				out.ensure(4);
+				out.buf.putInt(b.length);
+				out.bytes(b);
+				continue;
+			}
+			out.ensure(8);
+			if (type.isType(EditorDataType.Boolean))
+				out.buf.put((byte)(val.getBoolean(i)? 1: 0));
+			else if (type.isType(EditorDataType.Integer))
+				out.buf.putInt(val.getInt(i));
+			else if (type.isType(EditorDataType.Long))
+				out.buf.putLong(val.getLong(i));
+			else
+				out.buf.putDouble(val.getDouble(i));
+		}
+	}
+
+	/**
+	 * Reads one value written by <code>writeValue</code>.
+	 *
+	 * @param in    Content of the data file
+	 * @param type  Type of the value
+	 * @return      Typed value
+	 **/
+	private static TestValue readValue(ByteBuffer in, EditorDataType type)
+	{
+		int n = 1;
+		if (type.isArrayType()) {
+			n = in.getInt();
+			if (0 > n)
+				throw new IllegalArgumentException();
+		}
+		EditorDataType elemType = type.isArrayType()? type.getPrimitiveType(): type;
+		// Every element takes at least this many bytes, check it before
+		// allocating arrays for damaged lengths
+		int minSize = elemType.isType(EditorDataType.Boolean)? 1:
+		              elemType.isString() || elemType.isType(EditorDataType.Integer)? 4: 8;
+		if (n > in.remaining() / minSize)
+			throw new BufferUnderflowException();
+		Object res;
+		if (elemType.isString()) {
+			String[] elems = new String[n];
+			for (int i = 0; n > i; ++i) {
+				int len = in.getInt();
+				if (0 > len)
+					throw new IllegalArgumentException();
+				// the same check of a damaged length as above
+				if (len > in.remaining())
+					throw new BufferUnderflowException();
+				byte[] b = new byte[len];
+				in.get(b);
+				elems[i] = new String(b, UTF8).intern();
+			}
+			res = elems;
+		}
+		else if (elemType.isType(EditorDataType.Boolean)) {
+			boolean[] elems = new boolean[n];
+			for (int i = 0; n > i; ++i)
+				elems[i] = 0 != in.get();
+			res = elems;
+		}
+		else if (elemType.isType(EditorDataType.Integer)) {
+			int[] elems = new int[n];
+			in.asIntBuffer().get(elems);
+			in.position(in.position() + 4 * n);
+			res = elems;
+		}
+		else if (elemType.isType(EditorDataType.Long)) {
+			long[] elems = new long[n];
+			in.asLongBuffer().get(elems);
+			in.position(in.position() + 8 * n);
+			res = elems;
+		}
+		else {
+			double[] elems = new double[n];
+			in.asDoubleBuffer().get(elems);
+			in.position(in.position() + 8 * n);
+			res = elems;
+		}
+		return new TestValue(type, res);
+	}
+
+	/**
+	 * Little-endian buffer growing as needed.
+	 **/
+	private static final class Output
+	{
+		ByteBuffer buf;
+
+		Output(int capacity)
+		{
+			buf = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		/**
+		 * Makes sure there is room for <code>n</code> more bytes.
+		 **/
+		void ensure(int n)
+		{
+			if (buf.remaining() < n) {
+				ByteBuffer b = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + n))
+										.order(ByteOrder.LITTLE_ENDIAN);
+				buf.flip();
+				b.put(buf);
+				buf = b;
+			}
+		}
+
+		void bytes(byte[] b)
+		{
+			ensure(b.length);
+			buf.put(b);
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package kawigi.problem;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import kawigi.language.EditorDataType;
+import kawigi.util.StringsUtil;
+
+/**
+ * Reads test cases from text files one by one, so that files with any
+ * number of test cases can be read without loading them at once.
+ *
+ * Values are written one per line the way they are in examples of problem
+ * statements: arrays in braces (they may span several lines), strings in
+ * quotes with quotes and backslashes inside escaped. Array elements and
+ * strings without braces and quotes are also understood. A test case is its
+ * parameters followed by its answer, which may be omitted. In the file with
+ * many test cases they are separated by empty lines.
+ *
+ * Each test case is checked by the rules of <code>TestValue</code> before it
+ * is returned, malformed ones make an error telling the file and the line.
+ **/
+public final class TestReader
+{
+	/**
+	 * Input to read from.
+	 **/
+	private final BufferedReader in;
+	/**
+	 * Name of the input for messages.
+	 **/
+	private final String name;
+	/**
+	 * Method the test cases are for.
+	 **/
+	private final MethodDecl method;
+	/**
+	 * Types of parameters.
+	 **/
+	private final EditorDataType[] paramTypes;
+	/**
+	 * Type of the answer.
+	 **/
+	private final EditorDataType retType;
+	/**
+	 * Number of lines read so far.
+	 **/
+	private int lineNum;
+	/**
+	 * Line number where the last read values start.
+	 **/
+	private int startLine;
+
+	/**
+	 * Creates a reader of test cases.
+	 *
+	 * @param in        Input to read from
+	 * @param name      Name of the input for messages
+	 * @param method    Method the test cases are for
+	 **/
+	public TestReader(Reader in, String name, MethodDecl method)
+	{
+		this.in = in instanceof BufferedReader? (BufferedReader)in: new BufferedReader(in);
+		this.name = name;
+		this.method = method;
+		paramTypes = method.getParamTypes();
+		retType = method.getReturnType();
+	}
+
+	/**
+	 * Opens a UTF-8 text file for reading.
+	 *
+	 * @param f     File to open
+	 * @return      Reader of the file
+	 **/
+	public static Reader open(File f) throws IOException
+	{
+		return new InputStreamReader(new FileInputStream(f), "UTF-8");
+	}
+
+	/**
+	 * Reads the next test case from the input with test cases separated by
+	 * empty lines.
+	 *
+	 * @return      Test case, or <code>null</code> at the end of the input
+	 * @throws      IllegalArgumentException if the test case is malformed,
+	 *              reading can go on with the next one after that
+	 **/
+	public Test readTest() throws IOException
+	{
+		List<String> values = readValues(false);
+		if (null == values)
+			return null;
+		if (paramTypes.length != values.size() && paramTypes.length + 1 != values.size())
+			throw error("expected " + paramTypes.length + " or " + (paramTypes.length + 1)
+			            + " values, found " + values.size());
+		return makeTest(values);
+	}
+
+	/**
+	 * Reads the test case made of an input file with parameters and a file
+	 * with the answer.
+	 *
+	 * @param input     File with parameters
+	 * @param answer    File with the answer, or <code>null</code> if the test
+	 *                  case is without answer
+	 * @param method    Method the test case is for
+	 * @return          Test case
+	 * @throws          IllegalArgumentException if the test case is malformed
+	 **/
+	public static Test readTest(File input, File answer, MethodDecl method) throws IOException
+	{
+		TestReader r = new TestReader(open(input), input.getPath(), method);
+		List<String> values;
+		try {
+			values = r.readValues(true);
+			if (null == values || r.paramTypes.length != values.size())
+				throw r.error("expected " + r.paramTypes.length + " values, found "
+				              + (null == values? 0: values.size()));
+		}
+		finally {
+			r.in.close();
+		}
+		if (null != answer) {
+			TestReader ra = new TestReader(open(answer), answer.getPath(), method);
+			try {
+				List<String> ans = ra.readValues(true);
+				if (null == ans || 1 != ans.size())
+					throw ra.error("expected 1 value, found " + (null == ans? 0: ans.size()));
+				values.add(ans.get(0));
+			}
+			finally {
+				ra.in.close();
+			}
+		}
+		return r.makeTest(values);
+	}
+
+	/**
+	 * Closes the input.
+	 **/
+	public void close() throws IOException
+	{
+		in.close();
+	}
+
+	/**
+	 * Reads values one per line, starting at the first non-empty line.
+	 *
+	 * @param toEnd     If values are read till the end of the input, otherwise
+	 *                  till the next empty line
+	 * @return          Values as they are written, or <code>null</code> if
+	 *                  there are no more values
+	 **/
+	private List<String> readValues(boolean toEnd) throws IOException
+	{
+		String line;
+		do {
+			line = in.readLine();
+			++lineNum;
+		} while (null != line && 0 == line.trim().length());
+		if (null == line)
+			return null;
+		startLine = lineNum;
+		List<String> res = new ArrayList<String>();
+		while (null != line) {
+			String v = line.trim();
+			if (0 < v.length()) {
+				// Array written on several lines goes on till its closing brace
+				StringBuilder sb = null;
+				while (!isComplete(null == sb? v: sb) && null != (line = in.readLine())) {
+					++lineNum;
+					if (null == sb)
+						sb = new StringBuilder(v);
+					sb.append(' ').append(line.trim());
+				}
+				res.add(null == sb? v: sb.toString());
+			}
+			else if (!toEnd)
+				break;
+			line = in.readLine();
+			++lineNum;
+		}
+		return res;
+	}
+
+	/**
+	 * Checks if the value is complete: not an array with the opening brace
+	 * and without the closing one. Braces in strings don't count.
+	 **/
+	private static boolean isComplete(CharSequence v)
+	{
+		if ('{' != v.charAt(0))
+			return true;
+		boolean isInQuote = false;
+		for (int i = 1; v.length() > i; ++i) {
+			char c = v.charAt(i);
+			if (isInQuote) {
+				if ('\\' == c)
+					++i;
+				else if ('"' == c)
+					isInQuote = false;
+			}
+			else if ('"' == c)
+				isInQuote = true;
+			else if ('}' == c)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Makes the test case of the values read and checks it. Typed values of
+	 * the test case are parsed while checking, so they are ready when the
+	 * test case is added to the problem.
+	 *
+	 * @param values    Parameters and maybe the answer as they are written
+	 * @return          Test case
+	 **/
+	private Test makeTest(List<String> values)
+	{
+		StringBuilder[] params = new StringBuilder[paramTypes.length];
+		for (int i = 0; paramTypes.length > i; ++i)
+			params[i] = toTestValue(values.get(i), paramTypes[i]);
+		StringBuilder answer = null;
+		if (paramTypes.length < values.size())
+			answer = toTestValue(values.get(paramTypes.length), retType);
+		Test res = new Test(answer, params);
+		for (TestValue v : res.getValues(method))
+			if (null != v && null != v.getError())
+				throw error(v.getError());
+		return res;
+	}
+
+	/**
+	 * Converts the value as it's written in the file into the form stored in
+	 * <code>Test</code>.
+	 *
+	 * @param v         Value as it's written
+	 * @param type      Type of the value
+	 * @return          Value as it's stored in <code>Test</code>
+	 **/
+	private StringBuilder toTestValue(String v, EditorDataType type)
+	{
+		StringBuilder res = new StringBuilder(v.length());
+		if (type.isArrayType() && v.startsWith("{")) {
+			int end = v.endsWith("}")? v.length() - 1: v.length();
+			res.append(v, 1, end);
+			StringsUtil.trim(res);
+		}
+		else if (type.isString() && !type.isArrayType() && 2 <= v.length()
+		         && v.startsWith("\"") && v.endsWith("\"")) {
+			for (int i = 1; v.length() - 1 > i; ++i) {
+				char c = v.charAt(i);
+				if ('\\' == c && v.length() - 2 > i)
+					c = v.charAt(++i);
+				res.append(c);
+			}
+		}
+		else
+			res.append(v);
+		return res;
+	}
+
+	/**
+	 * Makes the error about the last values read.
+	 **/
+	private IllegalArgumentException error(String message)
+	{
+		return new IllegalArgumentException(name + ":" + startLine + ": " + message);
+	}
+}
@@ -0,0 +1,392 @@
+package kawigi.problem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import kawigi.language.EditorDataType;
+
+/**
+ * Typed value of a parameter or answer of a test case.
+ *
+ * <code>Test</code> keeps values as text, the way the user edits them. This
+ * is the same value parsed once according to its <code>EditorDataType</code>
+ * into an array of primitives or of interned strings (with one element for
+ * non-array types). Values are immutable and compute their hash code once,
+ * so comparing them or looking them up in hash tables doesn't parse or
+ * scan any text.
+ *
+ * Text of values is the same as in <code>Test</code>: elements of number
+ * arrays are separated by commas, elements of string arrays are enclosed in
+ * quotes with quotes and backslashes inside escaped, single strings are
+ * taken as they are. Booleans are "true" or "false" in any case. Empty
+ * numbers are zeros and empty booleans are <code>false</code>.
+ **/
+public final class TestValue
+{
+	/**
+	 * Type of the value.
+	 **/
+	private final EditorDataType type;
+	/**
+	 * Elements of the value: <code>int[]</code>, <code>long[]</code>,
+	 * <code>double[]</code>, <code>boolean[]</code> or <code>String[]</code>
+	 * depending on the primitive type, or <code>null</code> if the text of the
+	 * value is malformed.
+	 **/
+	private final Object elems;
+	/**
+	 * Text of the malformed value, or <code>null</code>.
+	 **/
+	private final String text;
+	/**
+	 * What is wrong with the malformed value, or <code>null</code>.
+	 **/
+	private final String error;
+	private final int hash;
+
+	/**
+	 * Creates the value of the given elements.
+	 *
+	 * @param type      Type of the value
+	 * @param elems     Array of elements of the type (not copied)
+	 **/
+	TestValue(EditorDataType type, Object elems)
+	{
+		this(type, elems, null, null);
+	}
+
+	private TestValue(EditorDataType type, Object elems, String text, String error)
+	{
+		this.type = type;
+		this.elems = elems;
+		this.text = text;
+		this.error = error;
+		int h = type.ordinal();
+		if (elems instanceof int[])
+			h = 31 * h + Arrays.hashCode((int[])elems);
+		else if (elems instanceof long[])
+			h = 31 * h + Arrays.hashCode((long[])elems);
+		else if (elems instanceof double[])
+			h = 31 * h + Arrays.hashCode((double[])elems);
+		else if (elems instanceof boolean[])
+			h = 31 * h + Arrays.hashCode((boolean[])elems);
+		else if (elems instanceof String[])
+			h = 31 * h + Arrays.hashCode((String[])elems);
+		else
+			h = 31 * h + text.hashCode() + 1;
+		hash = h;
+	}
+
+	/**
+	 * Parses the text of the value.
+	 *
+	 * @param text      Text of the value as it's stored in <code>Test</code>
+	 * @param type      Type of the value
+	 * @return          Typed value
+	 * @throws          NumberFormatException if some number is malformed
+	 *                  (the message tells which one)
+	 **/
+	public static TestValue parse(CharSequence text, EditorDataType type)
+	{
+		if (!type.isArrayType())
+			return new TestValue(type, parseScalars(text, false, 1, type));
+		if (type.isString()) {
+			List<String> res = splitStrings(text);
+			return new TestValue(type, res.toArray(new String[res.size()]));
+		}
+		// Count elements first to parse them right into the array
+		int count = 0;
+		for (int i = 0; text.length() >= i; ) {
+			int end = indexOfComma(text, i);
+			if (!isBlank(text, i, end))
+				++count;
+			i = end + 1;
+		}
+		Object res = parseScalars(text, true, count, type.getPrimitiveType());
+		return new TestValue(type, res);
+	}
+
+	/**
+	 * Parses the text of the value. Unlike <code>parse</code> it doesn't fail
+	 * on malformed values: such a value keeps its text, is equal only to
+	 * malformed values with the same text and tells what is wrong with it
+	 * through <code>getError</code>.
+	 *
+	 * @param text      Text of the value as it's stored in <code>Test</code>
+	 * @param type      Type of the value
+	 * @return          Typed value
+	 **/
+	public static TestValue valueOf(CharSequence text, EditorDataType type)
+	{
+		try {
+			return parse(text, type);
+		}
+		catch (NumberFormatException e) {
+			return new TestValue(type, null, text.toString(), e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the empty value of the type: empty string or array, zero or
+	 * <code>false</code>.
+	 *
+	 * @param type      Type of the value
+	 * @return          Empty value
+	 **/
+	public static TestValue empty(EditorDataType type)
+	{
+		return parse("", type);
+	}
+
+	/**
+	 * Parses a number (or boolean, or string), or numbers separated by
+	 * commas.
+	 *
+	 * @param text      Text to parse
+	 * @param isArray   If the text has numbers separated by commas
+	 * @param count     Number of non-empty elements in the text, or 1 for
+	 *                  non-array value which may be empty
+	 * @param type      Primitive type of elements
+	 * @return          Array of elements
+	 **/
+	private static Object parseScalars(CharSequence text, boolean isArray, int count, EditorDataType type)
+	{
+		if (type.isString())
+			return new String[] {text.toString().intern()};
+		int[] ints = type.isType(EditorDataType.Integer)? new int[count]: null;
+		long[] longs = type.isType(EditorDataType.Long)? new long[count]: null;
+		double[] doubles = type.isType(EditorDataType.Double)? new double[count]: null;
+		boolean[] bools = type.isType(EditorDataType.Boolean)? new boolean[count]: null;
+		int n = 0;
+		for (int i = 0; text.length() >= i && count > n; ) {
+			int next = isArray? indexOfComma(text, i): text.length();
+			String v = text.subSequence(i, next).toString().trim();
+			i = next + 1;
+			if (isArray && 0 == v.length())
+				continue;
+			try {
+				if (null != bools) {
+					// Languages spell them differently (Python has "True")
+					if (0 != v.length() && !"true".equalsIgnoreCase(v) && !"false".equalsIgnoreCase(v))
+						throw new NumberFormatException();
+					bools[n] = "true".equalsIgnoreCase(v);
+				}
+				else if (null != ints)
+					ints[n] = 0 == v.length()? 0: Integer.parseInt(v);
+				else if (null != longs)
+					longs[n] = 0 == v.length()? 0: Long.parseLong(v);
+				else
+					doubles[n] = 0 == v.length()? 0: Double.parseDouble(v);
+			}
+			catch (NumberFormatException e) {
+				throw new NumberFormatException("\"" + v + "\" is not a valid " + type.name().toLowerCase());
+			}
+			++n;
+		}
+		if (null != bools)
+			return bools;
+		if (null != ints)
+			return ints;
+		return null != longs? longs: doubles;
+	}
+
+	/**
+	 * Splits string array value into elements. Elements are in quotes with
+	 * quotes and backslashes escaped, everything outside quotes is ignored.
+	 *
+	 * @param text      Text of the value
+	 * @return          List of interned elements without quotes and escapings
+	 **/
+	private static List<String> splitStrings(CharSequence text)
+	{
+		List<String> res = new ArrayList<String>();
+		StringBuilder cur = new StringBuilder();
+		boolean isInQuote = false;
+		for (int i = 0; text.length() > i; ++i) {
+			char c = text.charAt(i);
+			if (isInQuote) {
+				if ('\\' == c && text.length() > i + 1)
+					cur.append(text.charAt(++i));
+				else if ('"' == c) {
+					res.add(cur.toString().intern());
+					cur.setLength(0);
+					isInQuote = false;
+				}
+				else
+					cur.append(c);
+			}
+			else if ('"' == c)
+				isInQuote = true;
+		}
+		return res;
+	}
+
+	private static int indexOfComma(CharSequence text, int start)
+	{
+		for (int i = start; text.length() > i; ++i)
+			if (',' == text.charAt(i))
+				return i;
+		return text.length();
+	}
+
+	private static boolean isBlank(CharSequence text, int start, int end)
+	{
+		for (int i = start; end > i; ++i)
+			if (' ' < text.charAt(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns the type of the value.
+	 **/
+	public EditorDataType getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Returns what is wrong with the value if it's malformed, otherwise
+	 * <code>null</code>.
+	 *
+	 * @see     #valueOf(CharSequence, EditorDataType)
+	 **/
+	public String getError()
+	{
+		return error;
+	}
+
+	/**
+	 * Returns the number of elements of array value, 1 for other values
+	 * and 0 for malformed ones.
+	 **/
+	public int size()
+	{
+		if (elems instanceof int[])
+			return ((int[])elems).length;
+		if (elems instanceof long[])
+			return ((long[])elems).length;
+		if (elems instanceof double[])
+			return ((double[])elems).length;
+		if (elems instanceof boolean[])
+			return ((boolean[])elems).length;
+		return null == elems? 0: ((String[])elems).length;
+	}
+
+	/**
+	 * Returns the element of value of int type.
+	 **/
+	public int getInt(int index)
+	{
+		return ((int[])elems)[index];
+	}
+
+	/**
+	 * Returns the element of value of long type.
+	 **/
+	public long getLong(int index)
+	{
+		return ((long[])elems)[index];
+	}
+
+	/**
+	 * Returns the element of value of double type.
+	 **/
+	public double getDouble(int index)
+	{
+		return ((double[])elems)[index];
+	}
+
+	/**
+	 * Returns the element of value of boolean type.
+	 **/
+	public boolean getBoolean(int index)
+	{
+		return ((boolean[])elems)[index];
+	}
+
+	/**
+	 * Returns the element of value of string type.
+	 **/
+	public String getString(int index)
+	{
+		return ((String[])elems)[index];
+	}
+
+	/**
+	 * Checks if the value is the same as another one: of the same type and
+	 * with equal elements, or malformed with the same text.
+	 *
+	 * @param obj       Object to compare with
+	 * @return          If this value is equal to <code>obj</code>
+	 **/
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (!(obj instanceof TestValue))
+			return false;
+		TestValue o = (TestValue)obj;
+		if (hash != o.hash || type != o.type)
+			return false;
+		if (elems instanceof int[] && o.elems instanceof int[])
+			return Arrays.equals((int[])elems, (int[])o.elems);
+		if (elems instanceof long[] && o.elems instanceof long[])
+			return Arrays.equals((long[])elems, (long[])o.elems);
+		if (elems instanceof double[] && o.elems instanceof double[])
+			return Arrays.equals((double[])elems, (double[])o.elems);
+		if (elems instanceof boolean[] && o.elems instanceof boolean[])
+			return Arrays.equals((boolean[])elems, (boolean[])o.elems);
+		if (elems instanceof String[] && o.elems instanceof String[])
+			return Arrays.equals((String[])elems, (String[])o.elems);
+		return null == elems && null == o.elems && text.equals(o.text);
+	}
+
+	/**
+	 * Returns the hash code computed when the value was made.
+	 **/
+	public int hashCode()
+	{
+		return hash;
+	}
+
+	/**
+	 * Returns the text of the value as it's stored in <code>Test</code>.
+	 * Numbers are written in the shortest form which is parsed back to the
+	 * same value.
+	 **/
+	public String toString()
+	{
+		if (null == elems)
+			return text;
+		StringBuilder res = new StringBuilder();
+		boolean isArray = type.isArrayType();
+		for (int i = 0; size() > i; ++i) {
+			if (0 < i)
+				res.append(", ");
+			if (elems instanceof int[])
+				res.append(getInt(i));
+			else if (elems instanceof long[])
+				res.append(getLong(i));
+			else if (elems instanceof double[])
+				res.append(getDouble(i));
+			else if (elems instanceof boolean[])
+				res.append(getBoolean(i));
+			else if (!isArray)
+				res.append(getString(i));
+			else {
+				String e = getString(i);
+				res.append('"');
+				for (int j = 0; e.length() > j; ++j) {
+					char c = e.charAt(j);
+					if ('"' == c || '\\' == c)
+						res.append('\\');
+					res.append(c);
+				}
+				res.append('"');
+			}
+		}
+		return res.toString();
+	}
+}
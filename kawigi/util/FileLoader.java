@@ -0,0 +1,131 @@
+package kawigi.util;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ *	Reads whole text files (and resources) into strings in linear time.
+ *
+ *	Files are read into a single buffer of their exact size (large files are
+ *	memory-mapped instead) and decoded all at once with an explicit charset.
+ *	Line separators are converted to '\n', like the editors expect.
+ **/
+public final class FileLoader
+{
+	/**
+	 *	Files larger than this are memory-mapped instead of read.
+	 **/
+	private static final long MAP_THRESHOLD = 1 << 20;
+
+	private FileLoader() {}
+
+	/**
+	 *	Reads a file using the platform's default charset, which is also what
+	 *	KawigiEdit writes files with.
+	 *
+	 *	@param f            File to read
+	 *	@return             Content of the file with '\n' line separators
+	 */
+	public static String load(File f) throws IOException
+	{
+		return load(f, Charset.defaultCharset());
+	}
+
+	/**
+	 *	Reads a file using the given charset.
+	 *
+	 *	@param f            File to read
+	 *	@param cs           Charset the file is encoded in
+	 *	@return             Content of the file with '\n' line separators
+	 */
+	public static String load(File f, Charset cs) throws IOException
+	{
+		return normalizeLines(cs.decode(loadBytes(f)));
+	}
+
+	/**
+	 *	Reads a binary file into a buffer positioned at its start.
+	 *
+	 *	@param f            File to read
+	 *	@return             Content of the file
+	 */
+	public static ByteBuffer loadBytes(File f) throws IOException
+	{
+		FileInputStream in = new FileInputStream(f);
+		try
+		{
+			FileChannel ch = in.getChannel();
+			long size = ch.size();
+			if (size > MAP_THRESHOLD)
+				return ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			ByteBuffer buf = ByteBuffer.allocate((int)size);
+			while (buf.hasRemaining() && ch.read(buf) != -1)
+				;
+			buf.flip();
+			return buf;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 *	Reads everything from a stream (like a resource in the jar) using the
+	 *	platform's default charset and closes it.
+	 *
+	 *	@param in           Stream to read
+	 *	@return             Content of the stream with '\n' line separators
+	 */
+	public static String load(InputStream in) throws IOException
+	{
+		return load(in, Charset.defaultCharset());
+	}
+
+	/**
+	 *	Reads everything from a stream using the given charset and closes it.
+	 *
+	 *	@param in           Stream to read
+	 *	@param cs           Charset the stream is encoded in
+	 *	@return             Content of the stream with '\n' line separators
+	 */
+	public static String load(InputStream in, Charset cs) throws IOException
+	{
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), 8192));
+			byte[] buf = new byte[8192];
+			int len;
+			while ((len = in.read(buf)) != -1)
+				out.write(buf, 0, len);
+			return normalizeLines(cs.decode(ByteBuffer.wrap(out.toByteArray())));
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 *	Converts "\r\n" and lone "\r" line separators to '\n' in one pass.
+	 */
+	private static String normalizeLines(CharSequence text)
+	{
+		int len = text.length();
+		StringBuilder res = new StringBuilder(len);
+		for (int i = 0; i < len; ++i)
+		{
+			char c = text.charAt(i);
+			if (c == '\r')
+			{
+				res.append('\n');
+				if (i + 1 < len && text.charAt(i + 1) == '\n')
+					++i;
+			}
+			else
+				res.append(c);
+		}
+		return res.toString();
+	}
+}
@@ -0,0 +1,290 @@
+package kawigi.util;
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ *	Saves text files without needless writes.
+ *
+ *	A save is skipped if the file still has the content (by hash) that was
+ *	last written to it, so that its modification time doesn't change and
+ *	nothing that watches it (compilers, file synchronization, external
+ *	editors) is bothered.  Otherwise the text is written to a temporary file
+ *	in the same directory which then atomically replaces the target, so
+ *	nobody ever sees a half-written file.
+ *
+ *	Saves can also be requested "for later", in which case they are done on a
+ *	background thread, and a burst of such requests results in a single write
+ *	of the last text requested.
+ **/
+public class FileSaver implements Runnable
+{
+	/**
+	 *	How long a deferred save waits for more requests before writing.
+	 **/
+	private static final long COALESCE_DELAY = 200;
+
+	/**
+	 *	File that was last written, and what we know about it after writing.
+	 **/
+	private File lastFile;
+	private byte[] lastHash;
+	private long lastModified;
+	private long lastLength;
+
+	/**
+	 *	Deferred save waiting for the background thread.
+	 **/
+	private File pendingFile;
+	private String pendingText;
+	private Callback pendingCallback;
+	private long pendingTime;
+	/**
+	 *	True while the background thread has a deferred save in its hands.
+	 **/
+	private boolean writing;
+	private Thread thread;
+	/**
+	 *	Lock for the actual writing, so that checking on deferred saves doesn't
+	 *	have to wait for the disk.
+	 **/
+	private final Object writeLock = new Object();
+
+	/**
+	 *	Receives the result of a deferred save on the background thread.
+	 **/
+	public interface Callback
+	{
+		/**
+		 *	Called after the file is saved, or it's found that it didn't need
+		 *	saving.  <code>written</code> tells which of those happened.
+		 **/
+		public void saved(File f, boolean written);
+		/**
+		 *	Called if the save failed.
+		 **/
+		public void failed(File f, IOException ex);
+	}
+
+	/**
+	 *	Saves <code>text</code> to <code>f</code> right away (after any deferred
+	 *	save has finished).
+	 *
+	 *	Returns true if the file was written, false if it already had this
+	 *	content.
+	 **/
+	public boolean save(File f, String text) throws IOException
+	{
+		return save(f, text.getBytes());
+	}
+
+	/**
+	 *	Saves binary <code>data</code> to <code>f</code> right away, like
+	 *	<code>save(File, String)</code>.
+	 **/
+	public boolean save(File f, byte[] data) throws IOException
+	{
+		synchronized (this)
+		{
+			// An explicit save supersedes a deferred one.
+			pendingFile = null;
+			pendingText = null;
+			pendingCallback = null;
+			waitForWrite();
+		}
+		return write(f, data);
+	}
+
+	/**
+	 *	Saves <code>text</code> to <code>f</code> on the background thread.
+	 *
+	 *	If another deferred save is requested before this one starts, only the
+	 *	later one is done (and only its callback is called).
+	 **/
+	public synchronized void saveLater(File f, String text, Callback callback)
+	{
+		pendingFile = f;
+		pendingText = text;
+		pendingCallback = callback;
+		pendingTime = System.currentTimeMillis();
+		if (thread == null)
+		{
+			thread = new Thread(this, "KawigiEdit file saver");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		notifyAll();
+	}
+
+	/**
+	 *	Returns true if a deferred save is waiting or being written.
+	 **/
+	public synchronized boolean isPending()
+	{
+		return pendingFile != null || writing;
+	}
+
+	/**
+	 *	Waits until deferred saves are written.
+	 **/
+	public synchronized void flush()
+	{
+		while (pendingFile != null)
+		{
+			pendingTime = 0;
+			notifyAll();
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException ex)
+			{
+				return;
+			}
+		}
+		waitForWrite();
+	}
+
+	/**
+	 *	Waits while the background thread is writing.
+	 **/
+	private synchronized void waitForWrite()
+	{
+		while (writing)
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException ex)
+			{
+				return;
+			}
+	}
+
+	/**
+	 *	The background thread: waits for deferred saves, lets them coalesce for
+	 *	a moment and writes them.
+	 **/
+	public void run()
+	{
+		while (true)
+		{
+			File f;
+			String text;
+			Callback callback;
+			synchronized (this)
+			{
+				try
+				{
+					while (pendingFile == null)
+						wait();
+					long delay;
+					while (pendingFile != null && (delay = pendingTime + COALESCE_DELAY - System.currentTimeMillis()) > 0)
+						wait(delay);
+				}
+				catch (InterruptedException ex)
+				{
+					return;
+				}
+				if (pendingFile == null)
+					continue;
+				f = pendingFile;
+				text = pendingText;
+				callback = pendingCallback;
+				pendingFile = null;
+				pendingText = null;
+				pendingCallback = null;
+				writing = true;
+			}
+			try
+			{
+				boolean written = write(f, text.getBytes());
+				if (callback != null)
+					callback.saved(f, written);
+			}
+			catch (IOException ex)
+			{
+				if (callback != null)
+					callback.failed(f, ex);
+			}
+			finally
+			{
+				synchronized (this)
+				{
+					writing = false;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 *	Writes the file unless it already has this content.
+	 **/
+	private boolean write(File f, byte[] data) throws IOException
+	{
+		synchronized (writeLock)
+		{
+			return doWrite(f.getAbsoluteFile(), data);
+		}
+	}
+
+	private boolean doWrite(File f, byte[] data) throws IOException
+	{
+		byte[] hash = hash(data);
+		if (f.equals(lastFile) && Arrays.equals(hash, lastHash) && f.exists() && f.lastModified() == lastModified && f.length() == lastLength)
+			return false;
+
+		File tmp = File.createTempFile(f.getName() + ".", ".tmp", f.getParentFile());
+		try
+		{
+			OutputStream out = new FileOutputStream(tmp);
+			try
+			{
+				out.write(data);
+			}
+			finally
+			{
+				out.close();
+			}
+			try
+			{
+				Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException ex)
+			{
+				Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally
+		{
+			tmp.delete();
+		}
+		lastFile = f;
+		lastHash = hash;
+		lastModified = f.lastModified();
+		lastLength = f.length();
+		return true;
+	}
+
+	/**
+	 *	Returns a digest of <code>data</code>.
+	 **/
+	private static byte[] hash(byte[] data)
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-1").digest(data);
+		}
+		catch (NoSuchAlgorithmException ex)
+		{
+			// Every Java platform has SHA-1, but just in case, compare the
+			// whole content instead.
+			return data;
+		}
+	}
+}
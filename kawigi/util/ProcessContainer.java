@@ -145,6 +145,12 @@ public class ProcessContainer implements Runnable
 	 */
 	public void run()
 	{
+		// Let the output threads catch up so everything the process printed
+		// is shown before we report on it.
+		if (stdout != null) {
+			stdout.waitFor(1000);
+			stderr.waitFor(1000);
+		}
 		if (endVal() != 0) {
 		    if (outputComponent != null) {
 		        outputComponent.println("Process terminated with exit code " + endVal());
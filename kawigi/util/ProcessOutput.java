@@ -82,6 +82,22 @@ public class ProcessOutput implements Runnable
 		}
 	}
 	
+	/**
+	 *	Waits up to <code>millis</code> milliseconds for the stream to run out
+	 *	of output.
+	 **/
+	public void waitFor(long millis)
+	{
+		try
+		{
+			if (t != null)
+				t.join(millis);
+		}
+		catch (InterruptedException ex)
+		{
+		}
+	}
+	
 	/**
 	 *	Returns true if this output stream has stopped producing output.
 	 **/
@@ -282,4 +282,30 @@ public final class StringsUtil
 		val.append(fromVal, getFirstNonSpaceInd(fromVal, start),
 						    getLastNonSpaceInd(fromVal, end - 1) + 1);
 	}
+
+	/**
+	 * Converts text to the form it's saved in files: every line ends with the
+	 * line separator of current Operating System and trailing empty lines are
+	 * dropped. Works in one pass over the text.
+	 *
+	 * @param val       Text with lines separated by "\n" or "\r\n"
+	 * @return          Text with lines separated by <code>CRLF</code>
+	 */
+	public static String toSystemLines(CharSequence val)
+	{
+		int end = val.length();
+		while (end > 0 && (val.charAt(end - 1) == '\n' || val.charAt(end - 1) == '\r'))
+			--end;
+		StringBuilder res = new StringBuilder(end + end / 16 + CRLF.length());
+		int lineStart = 0;
+		for (int i = 0; i < end; ++i) {
+			if (val.charAt(i) == '\n') {
+				int lineEnd = (i > lineStart && val.charAt(i - 1) == '\r') ? i - 1 : i;
+				res.append(val, lineStart, lineEnd).append(CRLF);
+				lineStart = i + 1;
+			}
+		}
+		res.append(val, lineStart, end).append(CRLF);
+		return res.toString();
+	}
 }
@@ -0,0 +1,145 @@
+package kawigi.util;
+import java.util.*;
+
+/**
+ *	A ConsoleDisplay that collects the running times of tests printed by the
+ *	generated testing code over several runs of the program, and makes
+ *	statistics of them.
+ *
+ *	Like TestVerdict, it only relies on lines the testing code prints anyway:
+ *	"Test N: ..." starts a test and "Time: X seconds ..." gives its time.
+ **/
+public class TestTimings implements ConsoleDisplay
+{
+	/**
+	 *	Incomplete last line of output seen so far.
+	 **/
+	private StringBuilder line = new StringBuilder();
+	/**
+	 *	Number of the test which output is being read, or -1.
+	 **/
+	private int curTest = -1;
+	/**
+	 *	Times of every test in seconds, in the order of runs.
+	 **/
+	private Map<Integer, List<Double>> times = new TreeMap<Integer, List<Double>>();
+
+	/**
+	 *	Collects times from <code>s</code>.
+	 **/
+	public synchronized void print(String s)
+	{
+		for (int i=0; i<s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c == '\n')
+			{
+				parseLine(line.toString().trim());
+				line.setLength(0);
+			}
+			else
+				line.append(c);
+		}
+	}
+
+	/**
+	 *	Collects times from <code>s</code> and a new line.
+	 **/
+	public void println(String s)
+	{
+		print(s + "\n");
+	}
+
+	/**
+	 *	Forgets everything collected.
+	 **/
+	public synchronized void clear()
+	{
+		line.setLength(0);
+		curTest = -1;
+		times.clear();
+	}
+
+	/**
+	 *	Takes the test number or the time from a line of output.
+	 **/
+	private void parseLine(String s)
+	{
+		try
+		{
+			if (s.startsWith("Test ") && s.indexOf(':') > 0)
+				curTest = Integer.parseInt(s.substring(5, s.indexOf(':')).trim());
+			else if (s.startsWith("Time: ") && curTest >= 0)
+			{
+				int end = s.indexOf(' ', 6);
+				double t = Double.parseDouble(s.substring(6, end < 0 ? s.length() : end));
+				List<Double> l = times.get(curTest);
+				if (l == null)
+					times.put(curTest, l = new ArrayList<Double>());
+				l.add(t);
+				curTest = -1;
+			}
+		}
+		catch (NumberFormatException ex)
+		{
+			// Something the solution printed, not ours
+		}
+	}
+
+	/**
+	 *	Returns the number of tests that have times.
+	 **/
+	public synchronized int getTestCount()
+	{
+		return times.size();
+	}
+
+	/**
+	 *	Returns a table with min, median, 95th percentile and standard
+	 *	deviation of the time of every test, in seconds.  Runs that took
+	 *	unusually long (more than 1.5 interquartile ranges above the third
+	 *	quartile) are counted as outliers, and tests that have them are
+	 *	flagged because their numbers can't be trusted.
+	 **/
+	public synchronized String getReport()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-6s%6s%12s%12s%12s%12s%10s%n", "Test", "Runs", "Min", "Median", "P95", "StdDev", "Outliers"));
+		for (Map.Entry<Integer, List<Double>> e : times.entrySet())
+		{
+			double[] t = new double[e.getValue().size()];
+			for (int i=0; i<t.length; i++)
+				t[i] = e.getValue().get(i);
+			Arrays.sort(t);
+			double mean = 0;
+			for (double x : t)
+				mean += x;
+			mean /= t.length;
+			double var = 0;
+			for (double x : t)
+				var += (x - mean) * (x - mean);
+			double stddev = t.length > 1 ? Math.sqrt(var / (t.length - 1)) : 0;
+			double q3 = percentile(t, 75);
+			double fence = q3 + 1.5 * (q3 - percentile(t, 25));
+			int outliers = 0;
+			for (double x : t)
+				if (x > fence)
+					outliers++;
+			sb.append(String.format("%-6d%6d%12.6f%12.6f%12.6f%12.6f%10s%n", e.getKey(), t.length, t[0],
+					percentile(t, 50), percentile(t, 95), stddev, outliers > 0 ? outliers + " !" : "0"));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 *	Returns the percentile of sorted values, interpolating between the
+	 *	closest ranks.
+	 **/
+	private static double percentile(double[] sorted, double p)
+	{
+		double pos = (sorted.length - 1) * p / 100;
+		int lo = (int)Math.floor(pos);
+		int hi = Math.min(lo + 1, sorted.length - 1);
+		return sorted[lo] + (sorted[hi] - sorted[lo]) * (pos - lo);
+	}
+}
@@ -0,0 +1,265 @@
+package kawigi.util;
+import java.util.*;
+
+/**
+ *	A ConsoleDisplay that forwards everything to another display and counts
+ *	the verdicts printed by the generated testing code on the way.
+ *
+ *	This lets KawigiEdit give a one line summary of a test run without the
+ *	testing code having to report back in any special way.  Like TestTimings,
+ *	it also remembers which test every verdict and time belongs to from the
+ *	"Test N: ..." lines, so that results can be shown next to test cases.
+ **/
+public class TestVerdict implements ConsoleDisplay
+{
+	/**
+	 *	The display that actually shows the output.
+	 **/
+	private ConsoleDisplay display;
+	/**
+	 *	Incomplete last line of output seen so far.
+	 **/
+	private StringBuilder line = new StringBuilder();
+	private int passed, failed, timedOut, unchecked;
+	/**
+	 *	Number of tests that passed but were close to the time limit.  They
+	 *	are counted in the verdicts above too.
+	 **/
+	private int nearLimit;
+	/**
+	 *	Number of the test which output is being read, or -1.
+	 **/
+	private int curTest = -1;
+	/**
+	 *	Verdicts and times in seconds of single tests, by test number.
+	 **/
+	private Map<Integer, String> testVerdicts = new HashMap<Integer, String>();
+	private Map<Integer, Double> testTimes = new HashMap<Integer, Double>();
+
+	/**
+	 *	Creates a new TestVerdict that forwards its output to
+	 *	<code>display</code> (which may be null).
+	 **/
+	public TestVerdict(ConsoleDisplay display)
+	{
+		this.display = display;
+	}
+
+	/**
+	 *	Forwards <code>s</code> and counts the verdicts in it.
+	 **/
+	public synchronized void print(String s)
+	{
+		if (display != null)
+			display.print(s);
+		for (int i=0; i<s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c == '\n')
+			{
+				countLine(line.toString().trim());
+				line.setLength(0);
+			}
+			else
+				line.append(c);
+		}
+	}
+
+	/**
+	 *	Forwards <code>s</code> and a new line and counts the verdicts in it.
+	 **/
+	public void println(String s)
+	{
+		print(s + "\n");
+	}
+
+	/**
+	 *	Clears the display and the counts.
+	 **/
+	public synchronized void clear()
+	{
+		if (display != null)
+			display.clear();
+		line.setLength(0);
+		passed = failed = timedOut = unchecked = nearLimit = 0;
+		curTest = -1;
+		testVerdicts.clear();
+		testTimes.clear();
+	}
+
+	/**
+	 *	Counts a single line of output if it's one of the verdict lines.
+	 **/
+	private void countLine(String s)
+	{
+		if (s.equals("Match :-)"))
+		{
+			passed++;
+			setVerdict("passed");
+		}
+		else if (s.equals("DOESN'T MATCH!!!!"))
+		{
+			failed++;
+			setVerdict("failed");
+		}
+		else if (s.equals("FAIL the timeout"))
+		{
+			timedOut++;
+			setVerdict("timed out");
+		}
+		else if (s.equals("OK, but is it right?"))
+		{
+			unchecked++;
+			setVerdict("unchecked");
+		}
+		else if (s.equals("Close to the time limit"))
+		{
+			nearLimit++;
+			if (testVerdicts.containsKey(curTest))
+				setVerdict(testVerdicts.get(curTest) + ", close to limit");
+		}
+		else if (s.startsWith("Test ") && s.indexOf(':') > 0)
+		{
+			try
+			{
+				curTest = Integer.parseInt(s.substring(5, s.indexOf(':')).trim());
+			}
+			catch (NumberFormatException ex)
+			{
+				// Something the solution printed, not ours
+			}
+		}
+		else if (s.startsWith("Time: ") && curTest >= 0)
+		{
+			int end = s.indexOf(' ', 6);
+			try
+			{
+				testTimes.put(curTest, Double.parseDouble(s.substring(6, end < 0 ? s.length() : end)));
+			}
+			catch (NumberFormatException ex)
+			{
+				// Something the solution printed, not ours
+			}
+		}
+	}
+
+	/**
+	 *	Remembers the verdict of the test which output is being read.
+	 **/
+	private void setVerdict(String verdict)
+	{
+		if (curTest >= 0)
+			testVerdicts.put(curTest, verdict);
+	}
+
+	/**
+	 *	Returns the verdict of the test with the given number ("passed",
+	 *	"failed", "timed out" or "unchecked"), or null if it has none.
+	 **/
+	public synchronized String getVerdict(int test)
+	{
+		return testVerdicts.get(test);
+	}
+
+	/**
+	 *	Returns the running time of the test with the given number in
+	 *	seconds, or -1 if it's unknown.
+	 **/
+	public synchronized double getTime(int test)
+	{
+		Double t = testTimes.get(test);
+		return t == null ? -1 : t;
+	}
+
+	/**
+	 *	Forgets the verdict and time of the test with the given number, e.g.
+	 *	after the test was changed.
+	 **/
+	public synchronized void forgetTest(int test)
+	{
+		testVerdicts.remove(test);
+		testTimes.remove(test);
+	}
+
+	/**
+	 *	Forgets the verdict and time of the test with the given number and
+	 *	moves the results of the later tests one number down, after the test
+	 *	was deleted.
+	 **/
+	public synchronized void removeTest(int test)
+	{
+		testVerdicts = removeKey(testVerdicts, test);
+		testTimes = removeKey(testTimes, test);
+	}
+
+	/**
+	 *	Returns a copy of <code>map</code> without <code>test</code>, with
+	 *	larger keys one less.
+	 **/
+	private static <T> Map<Integer, T> removeKey(Map<Integer, T> map, int test)
+	{
+		Map<Integer, T> res = new HashMap<Integer, T>();
+		for (Map.Entry<Integer, T> e : map.entrySet())
+			if (e.getKey() != test)
+				res.put(e.getKey() > test ? e.getKey() - 1 : e.getKey(), e.getValue());
+		return res;
+	}
+
+	/**
+	 *	Takes the verdicts and times of the tests that have none here from
+	 *	<code>older</code>, so that running a single test keeps the results
+	 *	of the others.  The counts and the summary are not changed.
+	 **/
+	public synchronized void keepResults(TestVerdict older)
+	{
+		synchronized (older)
+		{
+			Set<Integer> tests = new HashSet<Integer>(older.testVerdicts.keySet());
+			tests.addAll(older.testTimes.keySet());
+			for (Integer test : tests)
+				if (!testVerdicts.containsKey(test) && !testTimes.containsKey(test))
+				{
+					if (older.testVerdicts.containsKey(test))
+						testVerdicts.put(test, older.testVerdicts.get(test));
+					if (older.testTimes.containsKey(test))
+						testTimes.put(test, older.testTimes.get(test));
+				}
+		}
+	}
+
+	/**
+	 *	Returns the total number of verdicts seen.
+	 **/
+	public synchronized int getTestCount()
+	{
+		return passed + failed + timedOut + unchecked;
+	}
+
+	/**
+	 *	Returns true if no test failed or timed out.
+	 **/
+	public synchronized boolean isSuccess()
+	{
+		return failed == 0 && timedOut == 0;
+	}
+
+	/**
+	 *	Returns a one line summary of the verdicts seen so far.
+	 **/
+	public synchronized String getSummary()
+	{
+		if (getTestCount() == 0)
+			return "No tests run";
+		StringBuilder sb = new StringBuilder();
+		sb.append(passed).append('/').append(getTestCount()).append(" passed");
+		if (failed > 0)
+			sb.append(", ").append(failed).append(" failed");
+		if (timedOut > 0)
+			sb.append(", ").append(timedOut).append(" timed out");
+		if (unchecked > 0)
+			sb.append(", ").append(unchecked).append(" unchecked");
+		if (nearLimit > 0)
+			sb.append(", ").append(nearLimit).append(" close to time limit");
+		return sb.toString();
+	}
+}
@@ -40,9 +40,21 @@ public class SimpleOutputComponent extends JPanel implements ConsoleDisplay
 	
 	/**
 	 *	Appends <code>s</code> to the end of the output display.
+	 *
+	 *	Processes print from their own threads, so this hands the text over to
+	 *	the event dispatch thread if necessary.
 	 **/
-	public void print(String s)
+	public void print(final String s)
 	{
+		if (!SwingUtilities.isEventDispatchThread())
+		{
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					print(s);
+				}
+			});
+			return;
+		}
 		output.setCaretPosition(output.getDocument().getLength());
 		output.replaceSelection(s);
 	}
@@ -60,6 +72,15 @@ public class SimpleOutputComponent extends JPanel implements ConsoleDisplay
 	 **/
 	public void clear()
 	{
+		if (!SwingUtilities.isEventDispatchThread())
+		{
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					clear();
+				}
+			});
+			return;
+		}
 		output.setText("");
 	}
 }